@@ -1,12 +1,21 @@
 package ru.spbau.shavkunov.vcs;
 
 import org.apache.commons.cli.*;
+import ru.spbau.shavkunov.vcs.data.RestoreMode;
+import ru.spbau.shavkunov.vcs.diff.DiffAlgorithm;
 import ru.spbau.shavkunov.vcs.exceptions.*;
 import ru.spbau.shavkunov.vcs.primitives.Repository;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 
 import static ru.spbau.shavkunov.vcs.utils.Constants.USERNAME;
 
@@ -24,9 +33,16 @@ public class Main {
     private static final String DELETE_BRANCH_COMMAND = "delete_branch";
     private static final String BRANCH_COMMAND = "branch";
     private static final String LOG_COMMAND = "log";
+    private static final String LIMIT_OPTION = "n";
+    private static final String SINCE_OPTION = "since";
     private static final String MERGE_COMMAND = "merge";
     private static final String STATUS_COMMAND = "status";
     private static final String CLEAN_COMMAND = "clean";
+    private static final String REPACK_COMMAND = "repack";
+    private static final String RESTORE_MODE_COMMAND = "restore_mode";
+    private static final String DIFF_COMMAND = "diff";
+    private static final String CACHED_OPTION = "cached";
+    private static final String HISTOGRAM_OPTION = "histogram";
     private static Path rootPath = Paths.get(".");
 
     /**
@@ -43,11 +59,18 @@ public class Main {
         options.addOption(newBranchOption());
         options.addOption(checkoutOption());
         options.addOption(logOption());
+        options.addOption(limitOption());
+        options.addOption(sinceOption());
         options.addOption(mergeOption());
         options.addOption(deleteBranchOption());
         options.addOption(branchOption());
         options.addOption(statusOption());
         options.addOption(cleanOption());
+        options.addOption(repackOption());
+        options.addOption(restoreModeOption());
+        options.addOption(diffOption());
+        options.addOption(cachedOption());
+        options.addOption(histogramOption());
 
         CommandLineParser parser = new DefaultParser();
         boolean isSomeCommandParsed = false;
@@ -108,6 +131,21 @@ public class Main {
                 isSomeCommandParsed = true;
             }
 
+            if (cmd.hasOption(REPACK_COMMAND)) {
+                handleRepack(cmd);
+                isSomeCommandParsed = true;
+            }
+
+            if (cmd.hasOption(RESTORE_MODE_COMMAND)) {
+                handleRestoreMode(cmd);
+                isSomeCommandParsed = true;
+            }
+
+            if (cmd.hasOption(DIFF_COMMAND)) {
+                handleDiff(cmd);
+                isSomeCommandParsed = true;
+            }
+
             if (cmd.hasOption(DELETE_BRANCH_COMMAND)) {
                 handleDeleteBranch(cmd);
                 isSomeCommandParsed = true;
@@ -173,7 +211,9 @@ public class Main {
      * @return команда add как опция в Apache Commons CLI
      */
     private static Option addFileOption() {
-        return new Option(ADD_COMMAND, true, "add file(-s)");
+        Option addOption = new Option(ADD_COMMAND, true, "add file(-s)");
+        addOption.setArgs(Option.UNLIMITED_VALUES);
+        return addOption;
     }
 
     /**
@@ -184,10 +224,8 @@ public class Main {
         String[] addArgs = cmd.getOptionValues(ADD_COMMAND);
         try {
             VcsManager manager = new VcsManager(rootPath);
-            for (String file : addArgs) {
-                manager.addFile(Paths.get(file).normalize());
-            }
-        } catch (IOException | NoRepositoryException | NotRegularFileException e) {
+            manager.addFiles(toPaths(addArgs));
+        } catch (IOException | NoRepositoryException e) {
             e.printStackTrace();
         }
     }
@@ -198,6 +236,7 @@ public class Main {
      */
     private static Option rmFileOption() {
         Option deleteOption = new Option(REMOVE_COMMAND, true, "remove file(-s)");
+        deleteOption.setArgs(Option.UNLIMITED_VALUES);
         return deleteOption;
     }
 
@@ -206,12 +245,10 @@ public class Main {
      * @param cmd CommandLine от Apache CLI, содержащий команду rm
      */
     private static void handleRemove(CommandLine cmd) {
-        String[] removeArgs = cmd.getOptionValues(ADD_COMMAND);
+        String[] removeArgs = cmd.getOptionValues(REMOVE_COMMAND);
         try {
             VcsManager manager = new VcsManager(rootPath);
-            for (String file : removeArgs) {
-                manager.removeFile(Paths.get(file).normalize());
-            }
+            manager.removeFiles(toPaths(removeArgs));
         } catch (IOException | NoRepositoryException | NotRegularFileException e) {
             e.printStackTrace();
         }
@@ -223,7 +260,7 @@ public class Main {
      */
     private static Option resetFileOption() {
         Option resetOption = new Option(RESET_COMMAND, true, "reset file(-s)");
-        resetOption.setArgs(1);
+        resetOption.setArgs(Option.UNLIMITED_VALUES);
         return resetOption;
     }
 
@@ -235,14 +272,26 @@ public class Main {
         String[] resetArgs = cmd.getOptionValues(RESET_COMMAND);
         try {
             VcsManager manager = new VcsManager(rootPath);
-            for (String file : resetArgs) {
-                manager.reset(Paths.get(file).normalize());
-            }
+            manager.reset(toPaths(resetArgs));
         } catch (IOException | ClassNotFoundException | NoRepositoryException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Преобразование аргументов команды в нормализованные пути.
+     * @param args аргументы команды.
+     * @return список путей.
+     */
+    private static List<Path> toPaths(String[] args) {
+        List<Path> paths = new ArrayList<>();
+        for (String file : args) {
+            paths.add(Paths.get(file).normalize());
+        }
+
+        return paths;
+    }
+
     /**
      * Инициализация команды commit
      * @return команда commit как опция в Apache Commons CLI
@@ -383,15 +432,48 @@ public class Main {
         return new Option(LOG_COMMAND, false, "get current log");
     }
 
+    /**
+     * Инициализация ограничения количества коммитов в log
+     * @return ограничение как опция в Apache Commons CLI
+     */
+    private static Option limitOption() {
+        Option limitOption = new Option(LIMIT_OPTION, true, "show only that number of last commits in log");
+        limitOption.setArgs(1);
+        return limitOption;
+    }
+
+    /**
+     * Инициализация ограничения даты коммитов в log
+     * @return ограничение как опция в Apache Commons CLI
+     */
+    private static Option sinceOption() {
+        Option sinceOption = new Option(SINCE_OPTION, true, "show only commits since that date(yyyy-mm-dd) in log");
+        sinceOption.setArgs(1);
+        return sinceOption;
+    }
+
     /**
      * Вызов соответствующих методов VCS, удолетворяющих запрос пользователя.
      * @param cmd CommandLine от Apache CLI, содержащий команду log
      */
     private static void handleLog(CommandLine cmd) {
         try {
+            int limit = Integer.MAX_VALUE;
+            if (cmd.hasOption(LIMIT_OPTION)) {
+                limit = Integer.parseInt(cmd.getOptionValue(LIMIT_OPTION));
+            }
+
+            Date since = null;
+            if (cmd.hasOption(SINCE_OPTION)) {
+                LocalDate date = LocalDate.parse(cmd.getOptionValue(SINCE_OPTION));
+                since = Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant());
+            }
+
             VcsManager manager = new VcsManager(rootPath);
-            manager.getLog().printLog();
-        } catch (IOException | ClassNotFoundException | NoRepositoryException e) {
+            manager.getLog(limit, since).printLog();
+        } catch (NumberFormatException | DateTimeParseException e) {
+            System.out.println("Invalid log limit or date");
+        } catch (IOException | UncheckedIOException | ClassNotFoundException | NoRepositoryException e) {
             e.printStackTrace();
         }
     }
@@ -465,4 +547,103 @@ public class Main {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Инициализация команды repack
+     * @return команда repack как опция в Apache Commons CLI
+     */
+    private static Option repackOption() {
+        return new Option(REPACK_COMMAND, false, "pack repository objects into a single delta-compressed file");
+    }
+
+    /**
+     * Вызов соответствующих методов VCS, удолетворяющих запрос пользователя.
+     * @param cmd CommandLine от Apache CLI, содержащий команду repack
+     */
+    private static void handleRepack(CommandLine cmd) {
+        try {
+            VcsManager manager = new VcsManager(rootPath);
+            manager.repack();
+        } catch (IOException | NoRepositoryException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Инициализация команды restore_mode
+     * @return команда restore_mode как опция в Apache Commons CLI
+     */
+    private static Option restoreModeOption() {
+        Option restoreModeOption = new Option(RESTORE_MODE_COMMAND, true,
+                                              "set how checkout writes files: copy, transfer or link");
+        restoreModeOption.setArgs(1);
+        return restoreModeOption;
+    }
+
+    /**
+     * Вызов соответствующих методов VCS, удолетворяющих запрос пользователя.
+     * @param cmd CommandLine от Apache CLI, содержащий команду restore_mode
+     */
+    private static void handleRestoreMode(CommandLine cmd) {
+        String mode = cmd.getOptionValue(RESTORE_MODE_COMMAND);
+
+        try {
+            VcsManager manager = new VcsManager(rootPath);
+            manager.setRestoreMode(RestoreMode.valueOf(mode.toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Unknown restore mode : " + mode);
+        } catch (IOException | NoRepositoryException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Инициализация команды diff
+     * @return команда diff как опция в Apache Commons CLI
+     */
+    private static Option diffOption() {
+        Option diffOption = new Option(DIFF_COMMAND, true,
+                                       "show changes of working tree against index or between two revisions");
+        diffOption.setArgs(2);
+        diffOption.setOptionalArg(true);
+        return diffOption;
+    }
+
+    /**
+     * Инициализация сравнения index с текущим коммитом в diff
+     * @return сравнение index как опция в Apache Commons CLI
+     */
+    private static Option cachedOption() {
+        return new Option(CACHED_OPTION, false, "show changes of index against current commit in diff");
+    }
+
+    /**
+     * Инициализация выбора гистограммного алгоритма в diff
+     * @return выбор алгоритма как опция в Apache Commons CLI
+     */
+    private static Option histogramOption() {
+        return new Option(HISTOGRAM_OPTION, false, "use histogram algorithm in diff");
+    }
+
+    /**
+     * Вызов соответствующих методов VCS, удолетворяющих запрос пользователя.
+     * @param cmd CommandLine от Apache CLI, содержащий команду diff
+     */
+    private static void handleDiff(CommandLine cmd) {
+        String[] diffArgs = cmd.getOptionValues(DIFF_COMMAND);
+        DiffAlgorithm algorithm = cmd.hasOption(HISTOGRAM_OPTION) ? DiffAlgorithm.HISTOGRAM : DiffAlgorithm.MYERS;
+
+        try {
+            VcsManager manager = new VcsManager(rootPath);
+            if (diffArgs != null && diffArgs.length == 2) {
+                manager.diffCommits(diffArgs[0], diffArgs[1], System.out, algorithm);
+            } else if (cmd.hasOption(CACHED_OPTION)) {
+                manager.diffIndex(System.out, algorithm);
+            } else {
+                manager.diffWorkingTree(System.out, algorithm);
+            }
+        } catch (IOException | NoRevisionExistsException | ClassNotFoundException | NoRepositoryException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -4,18 +4,34 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.spbau.shavkunov.vcs.data.CommitGraph;
+import ru.spbau.shavkunov.vcs.data.RestoreMode;
+import ru.spbau.shavkunov.vcs.diff.DiffAlgorithm;
+import ru.spbau.shavkunov.vcs.diff.DiffFormatter;
+import ru.spbau.shavkunov.vcs.diff.LineText;
 import ru.spbau.shavkunov.vcs.exceptions.*;
-import ru.spbau.shavkunov.vcs.trees.FilesTree;
+import ru.spbau.shavkunov.vcs.trees.MergeConflictPolicy;
+import ru.spbau.shavkunov.vcs.trees.TreeDiff;
 import ru.spbau.shavkunov.vcs.trees.VcsTree;
+import ru.spbau.shavkunov.vcs.utils.CommitWalk;
+import ru.spbau.shavkunov.vcs.utils.Constants;
+import ru.spbau.shavkunov.vcs.utils.HashFilesTask;
+import ru.spbau.shavkunov.vcs.utils.StoreFilesTask;
 import ru.spbau.shavkunov.vcs.utils.VcsLog;
+import ru.spbau.shavkunov.vcs.utils.VcsStatus;
 import ru.spbau.shavkunov.vcs.primitives.*;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 import static ru.spbau.shavkunov.vcs.utils.Constants.*;
@@ -36,23 +52,25 @@ public class VcsManager {
     private @NotNull Repository repository;
 
     /**
-     * Добавленные файлы.
+     * Пул потоков, в котором хешируются, сохраняются и восстанавливаются файлы.
      */
-    private @Nullable ArrayList<String> stagedFiles;
+    private @NotNull ForkJoinPool pool;
 
-    /**
-     * Удаленные файлы.
-     */
-    private @Nullable ArrayList<String> deletedFiles;
+    public VcsManager(@NotNull Path pathToRepo) throws IOException, NoRepositoryException {
+        this(pathToRepo, ForkJoinPool.commonPool());
+    }
 
     /**
-     * Измененные файлы.
+     * Создание менеджера с заданным пулом потоков.
+     * @param pathToRepo путь к репозиторию.
+     * @param pool пул потоков, в котором хешируются, сохраняются и восстанавливаются файлы.
+     * @throws IOException исключение, если возникли проблемы с чтением файлов репозитория.
+     * @throws NoRepositoryException исключение, если по данному пути нет репозитория.
      */
-    private @Nullable ArrayList<String> modifiedFiles;
-
-    public VcsManager(@NotNull Path pathToRepo) throws IOException, NoRepositoryException {
+    public VcsManager(@NotNull Path pathToRepo, @NotNull ForkJoinPool pool) throws IOException, NoRepositoryException {
         logger.debug("---------------------------Manager was created---------------------------");
-        this.repository = new Repository(pathToRepo);
+        this.repository = new Repository(pathToRepo, pool);
+        this.pool = pool;
     }
 
     /**
@@ -65,6 +83,64 @@ public class VcsManager {
         repository.removeFileFromIndex(pathToFile);
     }
 
+    /**
+     * Удаление нескольких файлов из репозитория. Index записывается на диск один раз, после удаления всех файлов.
+     * @param pathsToFiles пути к удаляемым файлам.
+     * @throws NotRegularFileException исключение, если какой-то путь оказался не к файлу.
+     * @throws IOException исключение, если возникли проблемы с файлами или index.
+     */
+    public void removeFiles(@NotNull Collection<Path> pathsToFiles) throws NotRegularFileException, IOException {
+        boolean isCommitted = false;
+        repository.beginIndexUpdate();
+        try {
+            for (Path pathToFile : pathsToFiles) {
+                removeFile(pathToFile);
+            }
+
+            repository.commitIndexUpdate();
+            isCommitted = true;
+        } finally {
+            if (!isCommitted) {
+                repository.abortIndexUpdate();
+            }
+        }
+    }
+
+    /**
+     * Добавление нескольких файлов в репозиторий. Директории обходятся рекурсивно. Файлы хешируются и сохраняются
+     * параллельно в пуле потоков менеджера, а index записывается на диск один раз, после добавления всех файлов.
+     * Символические ссылки на директории при обходе пропускаются.
+     * @param pathsToFiles пути к добавляемым файлам и директориям.
+     * @throws IOException исключение, если возникли проблемы с чтением файлов или записью index, или если один
+     * из путей оказался не файлом. В этом случае index не меняется.
+     */
+    public void addFiles(@NotNull Collection<Path> pathsToFiles) throws IOException {
+        List<ObjectWithName<IndexEntry>> entries = new ArrayList<>();
+        for (Path pathToFile : pathsToFiles) {
+            logger.debug("Adding " + pathToFile);
+            try {
+                entries.addAll(pool.invoke(new StoreFilesTask(pathToFile.normalize(), repository)));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        boolean isCommitted = false;
+        repository.beginIndexUpdate();
+        try {
+            for (ObjectWithName<IndexEntry> entry : entries) {
+                repository.addEntryToIndex(Paths.get(entry.getName()), entry.getContent());
+            }
+
+            repository.commitIndexUpdate();
+            isCommitted = true;
+        } finally {
+            if (!isCommitted) {
+                repository.abortIndexUpdate();
+            }
+        }
+    }
+
     /**
      * Реализация команды add репозитория.
      * @param pathToFile путь к файлу, который нужно добавить.
@@ -72,17 +148,17 @@ public class VcsManager {
      * @throws IOException исключение, если возникли проблемы с чтен ием файла.
      * @return хеш файла, добавленного в репозиторий.
      */
-    public String addFile(@NotNull Path pathToFile) throws NotRegularFileException, IOException {
+    public ObjectId addFile(@NotNull Path pathToFile) throws NotRegularFileException, IOException {
         logger.debug("Adding file " + pathToFile);
         if (Files.isDirectory(pathToFile)) {
             throw new NotRegularFileException();
         }
 
         Path normalizedPath = pathToFile.normalize();
-        Blob blob = new Blob(normalizedPath);
-        repository.storeFile(blob);
+        IndexEntry entry = repository.storeBlob(normalizedPath);
+        repository.addEntryToIndex(normalizedPath, entry);
 
-        return blob.getHash();
+        return entry.getHash();
     }
 
     /**
@@ -97,18 +173,35 @@ public class VcsManager {
         logger.debug("Commiting...");
         VcsTree vcsTree = repository.createTreeFromIndex();
         logger.debug("Created tree : " + vcsTree.getHash());
+        commitTree(author, message, vcsTree, null);
+        logger.debug("Committed file changes");
+    }
+
+    /**
+     * Создание коммита с данным деревом поверх текущего коммита и перемещение на него текущей ссылки.
+     * @param author автор коммита.
+     * @param message сообщение коммита.
+     * @param vcsTree сохраненное дерево файлов коммита.
+     * @param mergedCommit второй родитель коммита слияния, null -- коммит не является слиянием.
+     * @throws IOException исключение, если возникли проблемы с записью коммита или ссылки.
+     */
+    private void commitTree(@NotNull String author, @NotNull String message, @NotNull VcsTree vcsTree,
+                            @Nullable ObjectId mergedCommit) throws IOException {
         Reference ref = repository.getReference();
-        ArrayList<String> parentCommits;
-        if (ref.getCommitHash().equals("")) {
+        ArrayList<ObjectId> parentCommits;
+        if (ref.getCommitHash() == null) {
             parentCommits = new ArrayList<>();
         } else {
             parentCommits = new ArrayList<>(Collections.singletonList(ref.getCommitHash()));
         }
+
+        if (mergedCommit != null) {
+            parentCommits.add(mergedCommit);
+        }
         Commit commit = new Commit(author, message, vcsTree.getHash(), parentCommits);
-        repository.storeObject(commit);
+        repository.storeCommit(commit);
         logger.debug("Commit : " + commit.getHash());
         ref.refreshCommitHash(commit.getHash(), repository);
-        logger.debug("Committed file changes");
     }
 
     /**
@@ -122,10 +215,10 @@ public class VcsManager {
         String currentHead = repository.getCurrentHead();
         if (repository.isBranchExists(currentHead)) {
             Reference currentReference = repository.getReference();
-            String commitHash = currentReference.getCommitHash();
+            ObjectId commitHash = currentReference.getCommitHash();
             repository.createNewBranch(newBranchName, commitHash);
         } else {
-            repository.createNewBranch(newBranchName, currentHead);
+            repository.createNewBranch(newBranchName, ObjectId.fromHex(currentHead));
         }
 
         logger.debug("new branch was created : " + newBranchName);
@@ -139,67 +232,31 @@ public class VcsManager {
      * @throws ClassNotFoundException если возникли проблемы с десериализацией.
      */
     public void checkout(@NotNull String revision) throws IOException, ClassNotFoundException, NoRevisionExistsException {
-        if (!repository.isCommitExists(revision) && !repository.isBranchExists(revision)) {
-            logger.error("Error : no correct commit hash revision or correct branch name provided");
-            throw new NoRevisionExistsException();
-        }
-
+        ObjectId commitHash = resolveRevision(revision);
         logger.debug("Checkout to " + revision);
-        Reference currentReference = repository.getReference();
-        String commitHash = currentReference.getCommitHash();
-        Commit commit = repository.getCommit(commitHash);
-        VcsTree vcsTree = repository.getTree(commit.getTreeHash());
-        logger.debug("Clearing current commit...");
-        cleanCurrentCommit(vcsTree);
-
-        if (repository.isBranchExists(revision)) {
-            Reference newReference = new Reference(revision, repository);
-            String commitHashToRestore = newReference.getCommitHash();
-            restoreCommit(commitHashToRestore);
-            logger.debug("Checkouted to branch " + revision);
-        } else {
-            restoreCommit(revision);
-            logger.debug("Checkouted to revision " + revision);
-        }
-
+        repository.checkoutTree(getTreeOfCurrentCommit(), getTreeOfCommit(commitHash));
         repository.writeHead(revision);
+        logger.debug("Checkouted to " + revision);
     }
 
     /**
-     * Удаление вообще состояния репозитория.
+     * Получение коммита, на который указывает ревизия.
+     * @param revision имя ветки или хеш коммита.
+     * @return хеш коммита или null, если в ветке еще нет коммитов.
      * @throws IOException исключение, если возникли проблемы с чтением файла.
-     * @throws ClassNotFoundException если возникли проблемы с десериализацией.
+     * @throws NoRevisionExistsException исключение, если нет ни такой ветки, ни такого коммита.
      */
-    private void cleanCurrentCommit(@NotNull VcsTree vcsTree) throws IOException, ClassNotFoundException {
-        for (ObjectWithName<Blob> file : vcsTree.getBlobFiles()) {
-            Path fileName = Paths.get(file.getName());
-            fileName.toFile().delete();
-            Path parentDirectory = fileName.getParent();
-            if (parentDirectory == null) {
-                parentDirectory = Paths.get(".");
-            }
-
-            if (parentDirectory.toFile().listFiles().length == 0) {
-                parentDirectory.toFile().delete();
-            }
+    private @Nullable ObjectId resolveRevision(@NotNull String revision) throws IOException, NoRevisionExistsException {
+        if (repository.isBranchExists(revision)) {
+            return new Reference(revision, repository).getCommitHash();
         }
 
-        for (VcsTree subVcsTree : vcsTree.getVcsTreeFiles()) {
-            cleanCurrentCommit(subVcsTree);
+        if (ObjectId.isHex(revision) && repository.isCommitExists(ObjectId.fromHex(revision))) {
+            return ObjectId.fromHex(revision);
         }
-    }
 
-    /**
-     * Восстановление состояния репозитория по коммиту.
-     * @param commitHash в хеше этого коммита находится восстанавливаемое состояние репозитория.
-     * @throws IOException исключение, если возникли проблемы с чтением файла.
-     * @throws ClassNotFoundException если возникли проблемы с десериализацией.
-     */
-    private void restoreCommit(@NotNull String commitHash) throws IOException, ClassNotFoundException {
-        logger.debug("Restoring commit " + commitHash);
-        Commit commit = repository.getCommit(commitHash);
-        VcsTree vcsTree = repository.getTree(commit.getTreeHash());
-        repository.restoreTree(vcsTree);
+        logger.error("Error : no correct commit hash revision or correct branch name provided");
+        throw new NoRevisionExistsException();
     }
 
     /**
@@ -223,45 +280,46 @@ public class VcsManager {
      * @throws ClassNotFoundException если возникли проблемы с десериализацией.
      */
     public @NotNull VcsLog getLog() throws IOException, ClassNotFoundException {
-        logger.debug("Creating vcs log");
-        Reference reference = repository.getReference();
-        String currentCommitHash = reference.getCommitHash();
-        Commit currentCommit = repository.getCommit(currentCommitHash);
-
-        HashSet<String> commitHashes = new HashSet<>();
-        commitHashes.add(currentCommitHash);
-        ArrayList<Commit> commits = new ArrayList<>();
-        commits.add(currentCommit);
-
-        logger.debug("Started dfs walk through graph of commits");
-        dfs(commits, commitHashes, currentCommit);
+        return getLog(Integer.MAX_VALUE, null);
+    }
 
-        logger.debug("Log was created");
-        return new VcsLog(commits);
+    /**
+     * Получение лога, ограниченного числом коммитов и датой.
+     * @param limit максимальное количество коммитов.
+     * @param since коммиты старше этой даты не выводятся, null -- ограничения нет.
+     * @return класс, знающий как выводить сообщения о коммитах.
+     * @throws IOException исключение, если возникли проблемы с чтением файла.
+     * @throws ClassNotFoundException если возникли проблемы с десериализацией.
+     */
+    public @NotNull VcsLog getLog(int limit, @Nullable Date since) throws IOException, ClassNotFoundException {
+        logger.debug("Creating vcs log");
+        return new VcsLog(getHistory(limit, since));
     }
 
     /**
-     * Обход дерева коммитов, породивших конкретный.
-     * @param commits общий список, куда складываются неповторяющиеся коммиты.
-     * @param commitHashes список хешей добавленных коммитов.
-     * @param currentCommit предков этого коммита обходит dfs.
+     * Получение истории текущего коммита от новых коммитов к старым. Коммиты читаются лениво, при обходе.
+     * @param limit максимальное количество коммитов.
+     * @param since коммиты старше этой даты не выводятся, null -- ограничения нет.
+     * @return коммиты истории.
      * @throws IOException исключение, если возникли проблемы с чтением файла.
      * @throws ClassNotFoundException если возникли проблемы с десериализацией.
      */
-    private void dfs(@NotNull ArrayList<Commit> commits, @NotNull HashSet<String> commitHashes,
-                     @NotNull Commit currentCommit) throws IOException, ClassNotFoundException {
-        for (String commitHash : currentCommit.getParentCommits()) {
-            if (!commitHashes.contains(commitHash)) {
-                Commit parentCommit = repository.getCommit(commitHash);
-                commits.add(parentCommit);
-                commitHashes.add(commitHash);
-                dfs(commits, commitHashes, parentCommit);
-            }
+    public @NotNull Iterable<Commit> getHistory(int limit, @Nullable Date since)
+                                                throws IOException, ClassNotFoundException {
+        ObjectId currentCommitHash = repository.getReference().getCommitHash();
+        if (currentCommitHash == null) {
+            return Collections.emptyList();
         }
+
+        CommitGraph graph = repository.getCommitGraph(currentCommitHash);
+        return new CommitWalk(repository, graph, graph.find(currentCommitHash), limit, since);
     }
 
     /**
-     * Реализация команды merge.
+     * Реализация команды merge. Деревья веток сливаются относительно дерева их общего предка, файлы
+     * с конфликтами берутся из вливаемой ветки. Рабочая папка и index меняются только для файлов,
+     * которые отличаются от текущего коммита, а дерево слияния записывается в коммит с двумя родителями.
+     * Если ветка уже влита в текущую, ничего не происходит.
      * @param branchName имя ветку, которую нужно влить в текующую.
      * @throws IOException исключение, если возникли проблемы с чтением файла.
      * @throws ClassNotFoundException если возникли проблемы с десериализацией.
@@ -269,44 +327,171 @@ public class VcsManager {
     public void merge(@NotNull String branchName) throws IOException, ClassNotFoundException, NotRegularFileException {
         logger.debug("Merge " + branchName + " into " + repository.getCurrentHead());
         Reference newReference = new Reference(branchName, repository);
-        String commitHash = newReference.getCommitHash();
+        ObjectId commitHash = newReference.getCommitHash();
         Commit commit = repository.getCommit(commitHash);
         VcsTree branchVcsTree = repository.getTree(commit.getTreeHash());
 
         Reference reference = repository.getReference();
-        String currentCommitHash = reference.getCommitHash();
+        ObjectId currentCommitHash = reference.getCommitHash();
+        ObjectId baseCommitHash = repository.findMergeBase(currentCommitHash, commitHash);
+        logger.debug("Merge base : " + baseCommitHash);
+        if (commitHash.equals(baseCommitHash)) {
+            logger.debug("Branch is already merged");
+            return;
+        }
+
         Commit currentCommit = repository.getCommit(currentCommitHash);
         VcsTree currentVcsTree = repository.getTree(currentCommit.getTreeHash());
+        VcsTree baseVcsTree = null;
+        if (baseCommitHash != null) {
+            baseVcsTree = repository.getTree(repository.getCommit(baseCommitHash).getTreeHash());
+        }
 
-        currentVcsTree.mergeWith(branchVcsTree);
-        repository.createIndexFromTree(currentVcsTree);
-        restoreCommit(commitHash);
-        commitChanges(USERNAME, MERGE_MESSAGE + commitHash);
+        VcsTree mergedVcsTree = repository.mergeTrees(baseVcsTree, currentVcsTree, branchVcsTree,
+                                                      MergeConflictPolicy.THEIRS);
+        repository.checkoutTree(currentVcsTree, mergedVcsTree);
+        commitTree(USERNAME, MERGE_MESSAGE + commitHash, mergedVcsTree, commitHash);
         logger.debug("Created merge commit");
     }
 
     /**
-     * Получение имен файлов из дерева.
-     * @param tree дерево файлов.
-     * @return множество путей к файлам.
+     * Вывод различий между рабочей папкой и index. Файлы, размер и время изменения которых совпадают
+     * с записанными в index, не читаются, а файлы с тем же хешом не сравниваются. Хеш файла считается
+     * потоково, и в память файл читается, только если он отличается и не больше {@link Constants#DIFF_MAX_FILE_SIZE}.
+     * @param output поток, куда записываются различия.
+     * @param algorithm алгоритм сравнения.
+     * @throws IOException исключение, если возникли проблемы с чтением файлов или с записью.
      */
-    private @NotNull Set<String> getFilesNames(@NotNull VcsTree tree) {
-        return tree.getAllFiles()
-                   .stream()
-                   .map(blobObjectWithName -> blobObjectWithName.getName())
-                   .collect(Collectors.toSet());
+    public void diffWorkingTree(@NotNull OutputStream output, @NotNull DiffAlgorithm algorithm) throws IOException {
+        DiffFormatter formatter = new DiffFormatter(output, algorithm, DIFF_CONTEXT_LINES);
+        for (ObjectWithName<IndexEntry> entry : repository.getIndexEntries()) {
+            Path pathToFile = Paths.get(entry.getName());
+            ObjectId hash = entry.getContent().getHash();
+            if (!Files.isRegularFile(pathToFile)) {
+                formatter.format(entry.getName(), readText(hash), null);
+                continue;
+            }
+
+            if (entry.getContent().isUpToDate(pathToFile)) {
+                continue;
+            }
+
+            ObjectId fileHash;
+            try {
+                fileHash = new Blob(pathToFile).getHash();
+            } catch (NotRegularFileException e) {
+                throw new FileSystemException(pathToFile.toString(), null, "Not a regular file");
+            }
+
+            if (!fileHash.equals(hash)) {
+                try (InputStream input = Files.newInputStream(pathToFile)) {
+                    formatter.format(entry.getName(), readText(hash), LineText.read(input, DIFF_MAX_FILE_SIZE));
+                }
+            }
+        }
+    }
+
+    /**
+     * Вывод различий между текущим коммитом и index. Папки, хеш дерева которых в index совпадает
+     * с хешом поддерева коммита, не сравниваются и не читаются.
+     * @param output поток, куда записываются различия.
+     * @param algorithm алгоритм сравнения.
+     * @throws IOException исключение, если возникли проблемы с чтением объектов или с записью.
+     * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
+     */
+    public void diffIndex(@NotNull OutputStream output, @NotNull DiffAlgorithm algorithm)
+                          throws IOException, ClassNotFoundException {
+        HashMap<String, ObjectId> commitFiles = new HashMap<>();
+        HashSet<String> unchangedDirectories = new HashSet<>();
+        collectCommitFiles(getTreeOfCurrentCommit(), Paths.get(""), commitFiles, unchangedDirectories);
+        if (unchangedDirectories.contains("")) {
+            return;
+        }
+
+        TreeMap<String, ObjectId> indexFiles = new TreeMap<>();
+        for (ObjectWithName<IndexEntry> entry : repository.getIndexEntries()) {
+            if (!isInDirectories(Paths.get(entry.getName()), unchangedDirectories)) {
+                indexFiles.put(entry.getName(), entry.getContent().getHash());
+            }
+        }
+
+        diffFiles(new TreeMap<>(commitFiles), indexFiles, new DiffFormatter(output, algorithm, DIFF_CONTEXT_LINES));
+    }
+
+    /**
+     * Вывод различий между двумя ревизиями. Одинаковые поддеревья ревизий не читаются.
+     * @param oldRevision имя ветки или хеш старого коммита.
+     * @param newRevision имя ветки или хеш нового коммита.
+     * @param output поток, куда записываются различия.
+     * @param algorithm алгоритм сравнения.
+     * @throws IOException исключение, если возникли проблемы с чтением объектов или с записью.
+     * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
+     * @throws NoRevisionExistsException исключение, если одной из ревизий не существует.
+     */
+    public void diffCommits(@NotNull String oldRevision, @NotNull String newRevision, @NotNull OutputStream output,
+                            @NotNull DiffAlgorithm algorithm)
+                            throws IOException, ClassNotFoundException, NoRevisionExistsException {
+        VcsTree oldTree = getTreeOfCommit(resolveRevision(oldRevision));
+        VcsTree newTree = getTreeOfCommit(resolveRevision(newRevision));
+        DiffFormatter formatter = new DiffFormatter(output, algorithm, DIFF_CONTEXT_LINES);
+        try {
+            for (TreeDiff.Change change : new TreeDiff(oldTree, newTree)) {
+                ObjectId oldHash = change.getOldHash();
+                ObjectId newHash = change.getNewHash();
+                formatter.format(change.getPath(), oldHash == null ? null : readText(oldHash),
+                                 newHash == null ? null : readText(newHash));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Вывод различий между двумя наборами файлов. Файлы с одинаковыми хешами не читаются.
+     * @param oldFiles старые файлы: путь и хеш содержимого.
+     * @param newFiles новые файлы: путь и хеш содержимого.
+     * @param formatter вывод различий.
+     * @throws IOException исключение, если возникли проблемы с чтением объектов или с записью.
+     */
+    private void diffFiles(@NotNull SortedMap<String, ObjectId> oldFiles, @NotNull SortedMap<String, ObjectId> newFiles,
+                           @NotNull DiffFormatter formatter) throws IOException {
+        TreeSet<String> paths = new TreeSet<>(oldFiles.keySet());
+        paths.addAll(newFiles.keySet());
+        for (String path : paths) {
+            ObjectId oldHash = oldFiles.get(path);
+            ObjectId newHash = newFiles.get(path);
+            if (!Objects.equals(oldHash, newHash)) {
+                formatter.format(path, oldHash == null ? null : readText(oldHash),
+                                 newHash == null ? null : readText(newHash));
+            }
+        }
     }
 
     /**
-     * Получение имен файлов с их хешами.
+     * Чтение содержимого файла из хранилища. Из объекта читается не больше
+     * {@link Constants#DIFF_MAX_FILE_SIZE} байт.
+     * @param hash хеш содержимого.
+     * @return содержимое, разбитое на строки, или текст с отметкой {@link LineText#isTooLarge()}.
+     * @throws IOException исключение, если объекта нет или его не удалось прочитать.
+     */
+    private @NotNull LineText readText(@NotNull ObjectId hash) throws IOException {
+        try (InputStream input = repository.openObject(hash)) {
+            return LineText.read(input, DIFF_MAX_FILE_SIZE);
+        }
+    }
+
+    /**
+     * Получение имен файлов из дерева.
      * @param tree дерево файлов.
-     * @return отображение из пути к файла к его хешу.
+     * @return множество путей к файлам.
+     * @throws IOException исключение, если возникли проблемы с чтением поддеревьев.
+     * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
      */
-    private @NotNull Map<String, String> getPathWithHashes(@NotNull VcsTree tree) {
+    private @NotNull Set<String> getFilesNames(@NotNull VcsTree tree) throws IOException, ClassNotFoundException {
         return tree.getAllFiles()
                    .stream()
-                   .collect(Collectors.toMap(ObjectWithName::getName,
-                                             objectWithName -> objectWithName.getContent().getHash()));
+                   .map(blobObjectWithName -> blobObjectWithName.getName())
+                   .collect(Collectors.toSet());
     }
 
     /**
@@ -318,28 +503,30 @@ public class VcsManager {
      */
     public void status() throws IOException, NotRegularFileException,
                                 ClassNotFoundException, NoRootDirectoryExistsException {
-        printUntrackedFiles();
-        getStatusFiles();
-
-        printList(MODIFIED_MESSAGE, modifiedFiles);
-        printList(STAGED_MESSAGE, stagedFiles);
-        printList(DELETED_MESSAGE, deletedFiles);
+        getStatus().printStatus();
     }
 
     /**
-     * Вывод на экран списка с сообщением.
-     * @param message сообщение перед выводом списка.
-     * @param list список, который нужно вывести(каждый элемент на новой строке)
+     * Получение состояния рабочей папки и index относительно текущего коммита.
+     * @return списки добавленных, удаленных, измененных, пропавших и недобавленных файлов.
+     * @throws IOException исключение, если возникли проблемы с файлом.
+     * @throws NotRegularFileException исключение, если ожидали файл, а получили директорию.
+     * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
+     * @throws NoRootDirectoryExistsException исключение, если не была найдена корневая директория репозитория.
      */
-    private void printList(@NotNull String message, @Nullable ArrayList<String> list) {
-        if (list != null && list.size() > 0) {
-            System.out.println(message);
-            for (String item : list) {
-                System.out.println(item);
-            }
+    public @NotNull VcsStatus getStatus() throws IOException, NotRegularFileException,
+                                                 ClassNotFoundException, NoRootDirectoryExistsException {
+        logger.debug("Getting status information");
+        ArrayList<String> stagedFiles = new ArrayList<>();
+        ArrayList<String> deletedFiles = new ArrayList<>();
+        compareIndexWithCommit(stagedFiles, deletedFiles);
 
-            System.out.println();
-        }
+        ArrayList<String> modifiedFiles = new ArrayList<>();
+        ArrayList<String> missingFiles = new ArrayList<>();
+        compareWorkingTreeWithIndex(modifiedFiles, missingFiles);
+
+        ArrayList<String> untrackedFiles = new ArrayList<>(getUntrackedFiles());
+        return new VcsStatus(stagedFiles, deletedFiles, modifiedFiles, missingFiles, untrackedFiles);
     }
 
     /**
@@ -349,8 +536,22 @@ public class VcsManager {
      * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
      */
     private @NotNull VcsTree getTreeOfCurrentCommit() throws IOException, ClassNotFoundException {
-        Reference reference = repository.getReference();
-        Commit commit = repository.getCommit(reference.getCommitHash());
+        return getTreeOfCommit(repository.getReference().getCommitHash());
+    }
+
+    /**
+     * Получение дерева коммита.
+     * @param commitHash хеш коммита или null, если в ветке еще нет коммитов.
+     * @return дерево коммита или пустое дерево, если коммита нет.
+     * @throws IOException исключение, если возникли проблемы с чтением файлов.
+     * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
+     */
+    private @NotNull VcsTree getTreeOfCommit(@Nullable ObjectId commitHash) throws IOException, ClassNotFoundException {
+        if (commitHash == null) {
+            return new VcsTree(Paths.get(""));
+        }
+
+        Commit commit = repository.getCommit(commitHash);
         return repository.getTree(commit.getTreeHash());
     }
 
@@ -363,10 +564,9 @@ public class VcsManager {
      */
     private @NotNull HashSet<String> getTrackedFiles() throws IOException, ClassNotFoundException,
                                                               NotRegularFileException {
-        VcsTree currentVcsTree = repository.createTreeFromIndex();
         VcsTree commitVcsTree = getTreeOfCurrentCommit();
 
-        Set<String> currentFileNames = getFilesNames(currentVcsTree);
+        Set<String> currentFileNames = repository.getIndexedFiles();
         Set<String> commitVcsTreeFiles = getFilesNames(commitVcsTree);
 
         HashSet<String> union = new HashSet<>();
@@ -378,116 +578,193 @@ public class VcsManager {
     }
 
     /**
-     * Вывод файлов, не находящихся под контролем системы версий.
+     * Получение файлов, не находящихся под контролем системы версий. Папки без отслеживаемых файлов
+     * выводятся целиком, с разделителем на конце.
+     * @return отсортированный список путей к файлам и папкам.
      * @throws NoRootDirectoryExistsException исключение, если не была найдена корневая директория репозитория.
      * @throws IOException исключение, если возникли проблемы с файлом.
      * @throws NotRegularFileException исключение, если ожидали файл, а получили директорию.
      * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
      */
-    private void printUntrackedFiles() throws NoRootDirectoryExistsException, NotRegularFileException,
-                                              IOException, ClassNotFoundException {
-        FilesTree filesTree = new FilesTree(Paths.get("."), getTrackedFiles());
-        System.out.println(UNTRACKED_MESSAGE);
-        filesTree.printTree(0);
-        System.out.println();
+    public @NotNull List<String> getUntrackedFiles() throws NotRegularFileException, IOException,
+                                                            ClassNotFoundException, NoRootDirectoryExistsException {
+        List<String> untrackedFiles = repository.getUntrackedFiles(getTrackedFiles());
+        Collections.sort(untrackedFiles);
+        logger.debug("Untracked files : " + untrackedFiles);
+        return untrackedFiles;
     }
 
     /**
-     * Получение файлов, не находящихся под контролем системы версий.
-     * @return множество путей к файлам.
-     * @throws NoRootDirectoryExistsException исключение, если не была найдена корневая директория репозитория.
-     * @throws IOException исключение, если возникли проблемы с файлом.
-     * @throws NotRegularFileException исключение, если ожидали файл, а получили директорию.
+     * Сравнение index с текущим коммитом по хешам файлов. Папки, хеш дерева которых в index совпадает
+     * с хешом поддерева коммита, не сравниваются и не читаются.
+     * @param stagedFiles список, куда добавляются файлы, добавленные в index или измененные в нем.
+     * @param deletedFiles список, куда добавляются файлы коммита, удаленные из index.
+     * @throws IOException исключение, если возникли проблемы с чтением деревьев.
      * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
      */
-    public @NotNull HashSet<String> getUntrackedFiles() throws NotRegularFileException, IOException,
-                                                               ClassNotFoundException, NoRootDirectoryExistsException {
-        FilesTree filesTree = repository.getFilesTree(getTrackedFiles());
-        logger.debug("Untracked files : " + filesTree.getAllFiles());
-        return filesTree.getAllFiles();
+    private void compareIndexWithCommit(@NotNull ArrayList<String> stagedFiles,
+                                        @NotNull ArrayList<String> deletedFiles)
+                                        throws IOException, ClassNotFoundException {
+        HashMap<String, ObjectId> commitFiles = new HashMap<>();
+        HashSet<String> unchangedDirectories = new HashSet<>();
+        collectCommitFiles(getTreeOfCurrentCommit(), Paths.get(""), commitFiles, unchangedDirectories);
+        if (unchangedDirectories.contains("")) {
+            return;
+        }
+
+        for (ObjectWithName<IndexEntry> entry : repository.getIndexEntries()) {
+            if (isInDirectories(Paths.get(entry.getName()), unchangedDirectories)) {
+                continue;
+            }
+
+            ObjectId commitHash = commitFiles.remove(entry.getName());
+            if (!entry.getContent().getHash().equals(commitHash)) {
+                stagedFiles.add(entry.getName());
+            }
+        }
+
+        deletedFiles.addAll(commitFiles.keySet());
+        Collections.sort(stagedFiles);
+        Collections.sort(deletedFiles);
+        logger.debug("Staged files : " + stagedFiles);
+        logger.debug("Deleted files : " + deletedFiles);
     }
 
     /**
-     * Получение файлов, по которым можно выдать результаты команды status.
-     * @throws IOException исключение, если возникли проблемы с файлом.
-     * @throws NotRegularFileException исключение, если ожидали файл, а получили директорию.
+     * Сбор хешей файлов поддерева коммита. Папки, хеш дерева которых в index совпадает с хешом поддерева,
+     * не обходятся, а запоминаются как неизмененные.
+     * @param tree поддерево коммита.
+     * @param directory путь к папке поддерева.
+     * @param commitFiles пути к файлам с хешами их содержимого.
+     * @param unchangedDirectories папки, которые одинаковы в index и в коммите.
+     * @throws IOException исключение, если возникли проблемы с чтением поддеревьев.
      * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
      */
-    private void getStatusFiles() throws IOException, ClassNotFoundException, NotRegularFileException {
-        logger.debug("Getting status information");
-        VcsTree currentVcsTree = repository.createTreeFromIndex();
-        VcsTree commitVcsTree = getTreeOfCurrentCommit();
+    private void collectCommitFiles(@NotNull VcsTree tree, @NotNull Path directory,
+                                    @NotNull HashMap<String, ObjectId> commitFiles,
+                                    @NotNull HashSet<String> unchangedDirectories)
+                                    throws IOException, ClassNotFoundException {
+        ObjectId indexTreeHash = repository.getIndexTreeHash(directory.toString());
+        if (indexTreeHash != null && indexTreeHash.equals(tree.getHash())) {
+            unchangedDirectories.add(directory.toString());
+            return;
+        }
 
-        Map<String, String> currentMap = getPathWithHashes(currentVcsTree);
-        Map<String, String> commitMap = getPathWithHashes(commitVcsTree);
-        modifiedFiles = new ArrayList<>();
-        deletedFiles = new ArrayList<>();
-        stagedFiles = new ArrayList<>();
+        for (ObjectWithName<Blob> file : tree.getBlobFiles()) {
+            commitFiles.put(file.getName(), file.getContent().getHash());
+        }
 
-        for (String path : currentMap.keySet()) {
-            if (commitMap.containsKey(path)) {
-                modifiedFiles.add(path);
-            } else {
-                stagedFiles.add(path);
+        for (VcsTree subtree : tree.getVcsTreeFiles()) {
+            collectCommitFiles(subtree, directory.resolve(subtree.getPrefix()), commitFiles, unchangedDirectories);
+        }
+    }
+
+    /**
+     * Проверка, что файл лежит в одной из папок или в ее подпапке.
+     * @param pathToFile путь к файлу.
+     * @param directories пути к папкам.
+     * @return true, если одна из родительских папок файла есть в множестве, иначе false.
+     */
+    private static boolean isInDirectories(@NotNull Path pathToFile, @NotNull Set<String> directories) {
+        for (Path directory = pathToFile.getParent(); directory != null; directory = directory.getParent()) {
+            if (directories.contains(directory.toString())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Сравнение рабочей папки с index. Сначала сравниваются размер и время изменения файлов, и только
+     * файлы, у которых они отличаются от index, хешируются параллельно в пуле потоков. Если содержимое
+     * такого файла не изменилось, его запись в index обновляется, чтобы в следующий раз его не хешировать.
+     * @param modifiedFiles список, куда добавляются файлы, содержимое которых отличается от index.
+     * @param missingFiles список, куда добавляются файлы index, которых нет в рабочей папке.
+     * @throws IOException исключение, если возникли проблемы с чтением файлов или записью index.
+     */
+    private void compareWorkingTreeWithIndex(@NotNull ArrayList<String> modifiedFiles,
+                                             @NotNull ArrayList<String> missingFiles) throws IOException {
+        HashMap<String, ObjectId> suspiciousFiles = new HashMap<>();
+        List<ObjectWithName<IndexEntry>> suspiciousEntries = new ArrayList<>();
+        for (ObjectWithName<IndexEntry> entry : repository.getIndexEntries()) {
+            if (!entry.getContent().isUpToDate(Paths.get(entry.getName()))) {
+                suspiciousFiles.put(entry.getName(), entry.getContent().getHash());
+                suspiciousEntries.add(entry);
             }
         }
 
-        for (String path : commitMap.keySet()) {
-            if (!currentMap.containsKey(path)) {
-                deletedFiles.add(path);
+        if (suspiciousEntries.isEmpty()) {
+            return;
+        }
+
+        List<ObjectWithName<IndexEntry>> currentEntries;
+        try {
+            currentEntries = pool.invoke(new HashFilesTask(suspiciousEntries, 0, suspiciousEntries.size()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        List<ObjectWithName<IndexEntry>> refreshedEntries = new ArrayList<>();
+        for (ObjectWithName<IndexEntry> entry : currentEntries) {
+            ObjectId indexHash = suspiciousFiles.remove(entry.getName());
+            if (indexHash.equals(entry.getContent().getHash())) {
+                refreshedEntries.add(entry);
+            } else {
+                modifiedFiles.add(entry.getName());
             }
         }
 
-        logger.debug("Modified files :" + modifiedFiles);
-        logger.debug("Deleted files : " + deletedFiles);
-        logger.debug("Staged files : " + stagedFiles);
+        missingFiles.addAll(suspiciousFiles.keySet());
+        if (!refreshedEntries.isEmpty()) {
+            repository.refreshIndexEntries(refreshedEntries);
+        }
+
+        Collections.sort(modifiedFiles);
+        Collections.sort(missingFiles);
+        logger.debug("Modified files : " + modifiedFiles);
+        logger.debug("Missing files : " + missingFiles);
     }
 
     /**
-     * Получение добавленных файлов.
-     * @return множество путей к файлам.
+     * Получение файлов, которые добавлены в index или изменены в нем по сравнению с текущим коммитом.
+     * @return список путей к файлам.
      * @throws IOException исключение, если возникли проблемы с файлом.
      * @throws NotRegularFileException исключение, если ожидали файл, а получили директорию.
      * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
      */
     public @NotNull ArrayList<String> getStagedFiles() throws NotRegularFileException, IOException,
                                                               ClassNotFoundException {
-        if (stagedFiles == null) {
-            getStatusFiles();
-        }
-
+        ArrayList<String> stagedFiles = new ArrayList<>();
+        compareIndexWithCommit(stagedFiles, new ArrayList<>());
         return stagedFiles;
     }
 
     /**
-     * Получение удаленных файлов.
-     * @return множество путей к файлам.
+     * Получение файлов текущего коммита, удаленных из index.
+     * @return список путей к файлам.
      * @throws IOException исключение, если возникли проблемы с файлом.
      * @throws NotRegularFileException исключение, если ожидали файл, а получили директорию.
      * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
      */
     public @NotNull ArrayList<String> getDeletedFiles() throws NotRegularFileException, IOException,
                                                                ClassNotFoundException {
-        if (deletedFiles == null) {
-            getStatusFiles();
-        }
-
+        ArrayList<String> deletedFiles = new ArrayList<>();
+        compareIndexWithCommit(new ArrayList<>(), deletedFiles);
         return deletedFiles;
     }
 
     /**
-     * Получение изменных файлов.
-     * @return множество путей к файлам.
+     * Получение файлов, содержимое которых в рабочей папке отличается от index.
+     * @return список путей к файлам.
      * @throws IOException исключение, если возникли проблемы с файлом.
      * @throws NotRegularFileException исключение, если ожидали файл, а получили директорию.
      * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
      */
     public @NotNull ArrayList<String> getModifiedFiles() throws NotRegularFileException, IOException,
                                                                 ClassNotFoundException {
-        if (modifiedFiles == null) {
-            getStatusFiles();
-        }
-
+        ArrayList<String> modifiedFiles = new ArrayList<>();
+        compareWorkingTreeWithIndex(modifiedFiles, new ArrayList<>());
         return modifiedFiles;
     }
 
@@ -501,7 +778,7 @@ public class VcsManager {
         logger.debug("Reseting file " + pathToFile);
         VcsTree commitVcsTree = getTreeOfCurrentCommit();
 
-        String fileHash = commitVcsTree.getFileHash(pathToFile);
+        ObjectId fileHash = commitVcsTree.getFileHash(pathToFile);
         if (fileHash != null) {
             repository.restoreFile(pathToFile, fileHash);
             logger.debug("File was restored");
@@ -511,6 +788,46 @@ public class VcsManager {
         }
     }
 
+    /**
+     * Восстановление нескольких файлов до состояния коммита. Index записывается на диск один раз.
+     * @param pathsToFiles пути к файлам.
+     * @throws IOException исключение, если возникли проблемы с файлами или какого-то файла нет в коммите.
+     * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
+     */
+    public void reset(@NotNull Collection<Path> pathsToFiles) throws IOException, ClassNotFoundException {
+        boolean isCommitted = false;
+        repository.beginIndexUpdate();
+        try {
+            for (Path pathToFile : pathsToFiles) {
+                reset(pathToFile);
+            }
+
+            repository.commitIndexUpdate();
+            isCommitted = true;
+        } finally {
+            if (!isCommitted) {
+                repository.abortIndexUpdate();
+            }
+        }
+    }
+
+    /**
+     * Реализация команды restore_mode. Выбор способа, которым checkout и merge записывают файлы.
+     * @param mode способ восстановления файлов.
+     * @throws IOException исключение, если возникли проблемы с записью настройки.
+     */
+    public void setRestoreMode(@NotNull RestoreMode mode) throws IOException {
+        repository.setRestoreMode(mode);
+    }
+
+    /**
+     * Реализация команды repack. Сборка всех объектов репозитория в один pack-файл с дельта-кодированием.
+     * @throws IOException исключение, если возникли проблемы с файлами объектов.
+     */
+    public void repack() throws IOException {
+        repository.repack();
+    }
+
     /**
      * Реализация команды clean. Удаление всех файлов, не находящихся под контролем системы версий.
      * @throws NoRootDirectoryExistsException исключение, если не была найдена корневая директория репозитория.
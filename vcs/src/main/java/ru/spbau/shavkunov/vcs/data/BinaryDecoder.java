@@ -0,0 +1,132 @@
+package ru.spbau.shavkunov.vcs.data;
+
+import org.jetbrains.annotations.NotNull;
+import ru.spbau.shavkunov.vcs.primitives.ObjectId;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Чтение объектов, записанных {@link BinaryEncoder}, прямо из массива байт.
+ */
+public class BinaryDecoder {
+    /**
+     * Содержимое объекта.
+     */
+    private @NotNull byte[] content;
+
+    /**
+     * Текущая позиция чтения.
+     */
+    private int position;
+
+    /**
+     * Создание декодировщика.
+     * @param content содержимое объекта.
+     */
+    public BinaryDecoder(@NotNull byte[] content) {
+        this.content = content;
+    }
+
+    /**
+     * Чтение байта версии формата.
+     * @param expected версия, которую умеет читать вызывающий код.
+     * @throws IOException исключение, если версия другая.
+     */
+    public void readVersion(int expected) throws IOException {
+        int version = readByte();
+        if (version != expected) {
+            throw new IOException("Unsupported object version " + version);
+        }
+    }
+
+    /**
+     * Чтение байта.
+     * @return прочитанный байт.
+     * @throws IOException исключение, если содержимое закончилось.
+     */
+    private int readByte() throws IOException {
+        if (position >= content.length) {
+            throw new IOException("Object is truncated");
+        }
+
+        return content[position++] & 0xFF;
+    }
+
+    /**
+     * Чтение числа, записанного в формате Varint.
+     * @return прочитанное число.
+     * @throws IOException исключение, если содержимое закончилось или число записано неверно.
+     */
+    public long readVarint() throws IOException {
+        ByteArrayInputStream input = new ByteArrayInputStream(content, position, content.length - position);
+        long value;
+        try {
+            value = Varint.read(input);
+        } catch (EOFException e) {
+            throw new IOException("Object is truncated", e);
+        }
+
+        position = content.length - input.available();
+        return value;
+    }
+
+    /**
+     * Чтение длины, которая должна уместиться в оставшемся содержимом.
+     * @return прочитанная длина.
+     * @throws IOException исключение, если длина отрицательна или больше оставшегося содержимого.
+     */
+    public int readLength() throws IOException {
+        long length = readVarint();
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("Malformed length " + length);
+        }
+
+        if (length > content.length - position) {
+            throw new IOException("Object is truncated");
+        }
+
+        return (int) length;
+    }
+
+    /**
+     * Чтение строки.
+     * @return прочитанная строка.
+     * @throws IOException исключение, если содержимое закончилось.
+     */
+    public @NotNull String readString() throws IOException {
+        int length = readLength();
+        String value = new String(content, position, length, StandardCharsets.UTF_8);
+        position += length;
+
+        return value;
+    }
+
+    /**
+     * Чтение хеша.
+     * @return прочитанный хеш.
+     * @throws IOException исключение, если содержимое закончилось.
+     */
+    public @NotNull ObjectId readHash() throws IOException {
+        if (content.length - position < ObjectId.SIZE) {
+            throw new IOException("Object is truncated");
+        }
+
+        ObjectId hash = ObjectId.fromBytes(content, position);
+        position += ObjectId.SIZE;
+
+        return hash;
+    }
+
+    /**
+     * Проверка, что объект прочитан полностью.
+     * @throws IOException исключение, если после объекта остались лишние байты.
+     */
+    public void finish() throws IOException {
+        if (position != content.length) {
+            throw new IOException("Unexpected data after object");
+        }
+    }
+}
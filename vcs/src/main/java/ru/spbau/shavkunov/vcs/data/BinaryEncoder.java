@@ -0,0 +1,75 @@
+package ru.spbau.shavkunov.vcs.data;
+
+import org.jetbrains.annotations.NotNull;
+import ru.spbau.shavkunov.vcs.primitives.ObjectId;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Запись объектов VCS в компактном двоичном формате: числа переменной длины, хеши в виде 20 байт
+ * и строки в UTF-8 с длиной перед ними.
+ */
+public class BinaryEncoder {
+    /**
+     * Записанное содержимое.
+     */
+    private @NotNull ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    /**
+     * Создание кодировщика. Первым записывается байт версии формата.
+     * @param version версия формата объекта.
+     */
+    public BinaryEncoder(int version) {
+        output.write(version);
+    }
+
+    /**
+     * Запись неотрицательного числа.
+     * @param value число.
+     * @return этот же кодировщик.
+     */
+    public @NotNull BinaryEncoder writeVarint(long value) {
+        try {
+            Varint.write(output, value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return this;
+    }
+
+    /**
+     * Запись строки.
+     * @param value строка.
+     * @return этот же кодировщик.
+     */
+    public @NotNull BinaryEncoder writeString(@NotNull String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        output.write(bytes, 0, bytes.length);
+
+        return this;
+    }
+
+    /**
+     * Запись хеша в виде байт.
+     * @param hash хеш.
+     * @return этот же кодировщик.
+     */
+    public @NotNull BinaryEncoder writeHash(@NotNull ObjectId hash) {
+        byte[] bytes = hash.toBytes();
+        output.write(bytes, 0, bytes.length);
+
+        return this;
+    }
+
+    /**
+     * Получение записанного содержимого.
+     * @return содержимое объекта.
+     */
+    public @NotNull byte[] toByteArray() {
+        return output.toByteArray();
+    }
+}
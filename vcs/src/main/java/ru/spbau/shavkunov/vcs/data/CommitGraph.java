@@ -0,0 +1,478 @@
+package ru.spbau.shavkunov.vcs.data;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.spbau.shavkunov.vcs.primitives.ObjectId;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Файл графа коммитов, по которому история обходится без чтения самих коммитов. Коммиты в файле
+ * пронумерованы в порядке возрастания хешей, и родители коммита хранятся как номера.
+ *
+ * Формат: сигнатура, версия, число коммитов, таблица из 256 чисел(сколько хешей начинается с байта
+ * не больше данного), отсортированные хеши коммитов, записи коммитов и номера родителей. Запись коммита
+ * состоит из хеша дерева, времени создания в миллисекундах, номера поколения(длины самой длинной цепочки
+ * предков, включая сам коммит), позиции первого родителя в списке номеров и количества родителей.
+ *
+ * Новые коммиты не переписывают файл, а дописываются в журнал. Запись журнала состоит из хеша коммита,
+ * хеша дерева, времени, номера поколения, количества родителей и хешей родителей. Коммиты журнала
+ * нумеруются после коммитов файла в порядке добавления.
+ */
+public class CommitGraph {
+    /**
+     * Сигнатура файла.
+     */
+    private static final byte[] SIGNATURE = {'V', 'C', 'G', 'R'};
+
+    /**
+     * Версия формата.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Размер заголовка в байтах.
+     */
+    private static final int HEADER_SIZE = 12;
+
+    /**
+     * Смещение отсортированных хешей.
+     */
+    private static final int HASHES_OFFSET = HEADER_SIZE + 256 * 4;
+
+    /**
+     * Размер записи коммита: хеш дерева, время, поколение, позиция и количество родителей.
+     */
+    private static final int RECORD_SIZE = ObjectId.SIZE + 8 + 4 + 4 + 4;
+
+    /**
+     * Размер записи журнала без хешей родителей: хеш коммита, хеш дерева, время, поколение и количество родителей.
+     */
+    private static final int LOG_ENTRY_SIZE = 2 * ObjectId.SIZE + 8 + 4 + 4;
+
+    /**
+     * Содержимое файла.
+     */
+    private @NotNull ByteBuffer buffer;
+
+    /**
+     * Количество коммитов в файле графа.
+     */
+    private int size;
+
+    /**
+     * Коммиты из журнала в порядке добавления.
+     */
+    private final @NotNull ArrayList<Entry> appended = new ArrayList<>();
+
+    /**
+     * Номера коммитов из журнала по их хешам.
+     */
+    private final @NotNull HashMap<ObjectId, Integer> appendedPositions = new HashMap<>();
+
+    /**
+     * Смещение записей коммитов.
+     */
+    private int recordsOffset;
+
+    /**
+     * Смещение номеров родителей.
+     */
+    private int parentsOffset;
+
+    /**
+     * Данные одного коммита для записи в граф.
+     */
+    public static class Entry {
+        private @NotNull ObjectId hash;
+        private @NotNull ObjectId treeHash;
+        private long time;
+        private int generation;
+        private @NotNull List<ObjectId> parents;
+
+        /**
+         * Создание записи коммита.
+         * @param hash хеш коммита.
+         * @param treeHash хеш дерева коммита.
+         * @param time время создания коммита в миллисекундах.
+         * @param generation номер поколения коммита.
+         * @param parents хеши родителей коммита.
+         */
+        public Entry(@NotNull ObjectId hash, @NotNull ObjectId treeHash, long time, int generation,
+                     @NotNull List<ObjectId> parents) {
+            this.hash = hash;
+            this.treeHash = treeHash;
+            this.time = time;
+            this.generation = generation;
+            this.parents = parents;
+        }
+
+        /**
+         * Получение хеша коммита.
+         * @return хеш коммита.
+         */
+        public @NotNull ObjectId getHash() {
+            return hash;
+        }
+
+        /**
+         * Получение номера поколения коммита.
+         * @return номер поколения.
+         */
+        public int getGeneration() {
+            return generation;
+        }
+    }
+
+    /**
+     * Чтение графа коммитов.
+     * @param buffer содержимое файла.
+     * @throws IOException исключение, если файл поврежден или имеет неизвестную версию.
+     */
+    private CommitGraph(@NotNull ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        byte[] signature = new byte[SIGNATURE.length];
+        buffer.duplicate().get(signature);
+        if (!Arrays.equals(signature, SIGNATURE) || buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported commit graph");
+        }
+
+        size = buffer.getInt(8);
+        recordsOffset = HASHES_OFFSET + size * ObjectId.SIZE;
+        parentsOffset = recordsOffset + size * RECORD_SIZE;
+        if (buffer.capacity() < parentsOffset || (buffer.capacity() - parentsOffset) % 4 != 0) {
+            throw new IOException("Commit graph is corrupted");
+        }
+    }
+
+    /**
+     * Открытие файла графа коммитов вместе с журналом. Недописанная или поврежденная часть журнала
+     * пропускается: эти коммиты будут добавлены заново при следующем обновлении графа.
+     * @param pathToGraph путь к файлу.
+     * @param pathToLog путь к журналу.
+     * @return прочитанный граф.
+     * @throws IOException исключение, если возникли проблемы с чтением файла.
+     */
+    public static @NotNull CommitGraph open(@NotNull Path pathToGraph, @NotNull Path pathToLog) throws IOException {
+        CommitGraph graph;
+        try (FileChannel channel = FileChannel.open(pathToGraph, StandardOpenOption.READ)) {
+            graph = new CommitGraph(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+
+        if (Files.isRegularFile(pathToLog)) {
+            ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(pathToLog));
+            Entry entry = readLogEntry(log);
+            while (entry != null && graph.tryAdd(entry)) {
+                entry = readLogEntry(log);
+            }
+        }
+
+        return graph;
+    }
+
+    /**
+     * Получение количества коммитов.
+     * @return количество коммитов в графе.
+     */
+    public int size() {
+        return size + appended.size();
+    }
+
+    /**
+     * Получение количества коммитов, которые находятся в журнале, а не в файле графа.
+     * @return количество коммитов журнала.
+     */
+    public int getAppendedCount() {
+        return appended.size();
+    }
+
+    /**
+     * Поиск коммита по хешу.
+     * @param hash хеш коммита.
+     * @return номер коммита или -1, если его нет в графе.
+     */
+    public int find(@NotNull ObjectId hash) {
+        int first = hash.getFirstByte();
+        int left = first == 0 ? 0 : buffer.getInt(HEADER_SIZE + 4 * (first - 1));
+        int right = buffer.getInt(HEADER_SIZE + 4 * first) - 1;
+        while (left <= right) {
+            int middle = (left + right) >>> 1;
+            int comparison = hash.compareTo(buffer, HASHES_OFFSET + middle * ObjectId.SIZE);
+            if (comparison > 0) {
+                left = middle + 1;
+            } else if (comparison < 0) {
+                right = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        Integer position = appendedPositions.get(hash);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Получение хеша коммита.
+     * @param position номер коммита.
+     * @return хеш коммита.
+     */
+    public @NotNull ObjectId getHash(int position) {
+        if (position >= size) {
+            return appended.get(position - size).hash;
+        }
+
+        return ObjectId.fromBuffer(buffer, HASHES_OFFSET + position * ObjectId.SIZE);
+    }
+
+    /**
+     * Получение хеша дерева коммита.
+     * @param position номер коммита.
+     * @return хеш дерева.
+     */
+    public @NotNull ObjectId getTreeHash(int position) {
+        if (position >= size) {
+            return appended.get(position - size).treeHash;
+        }
+
+        return ObjectId.fromBuffer(buffer, recordsOffset + position * RECORD_SIZE);
+    }
+
+    /**
+     * Получение времени создания коммита.
+     * @param position номер коммита.
+     * @return время в миллисекундах.
+     */
+    public long getTime(int position) {
+        if (position >= size) {
+            return appended.get(position - size).time;
+        }
+
+        return buffer.getLong(recordsOffset + position * RECORD_SIZE + ObjectId.SIZE);
+    }
+
+    /**
+     * Получение номера поколения коммита. У коммита без родителей поколение равно 1, у остальных
+     * оно на единицу больше максимального поколения родителей.
+     * @param position номер коммита.
+     * @return номер поколения.
+     */
+    public int getGeneration(int position) {
+        if (position >= size) {
+            return appended.get(position - size).generation;
+        }
+
+        return buffer.getInt(recordsOffset + position * RECORD_SIZE + ObjectId.SIZE + 8);
+    }
+
+    /**
+     * Получение номеров родителей коммита.
+     * @param position номер коммита.
+     * @return номера родителей в порядке, в котором они записаны в коммите.
+     */
+    public @NotNull int[] getParents(int position) {
+        if (position >= size) {
+            List<ObjectId> parentHashes = appended.get(position - size).parents;
+            int[] parents = new int[parentHashes.size()];
+            for (int i = 0; i < parents.length; i++) {
+                parents[i] = find(parentHashes.get(i));
+            }
+
+            return parents;
+        }
+
+        int record = recordsOffset + position * RECORD_SIZE + ObjectId.SIZE + 8 + 4;
+        int start = buffer.getInt(record);
+        int[] parents = new int[buffer.getInt(record + 4)];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = buffer.getInt(parentsOffset + 4 * (start + i));
+        }
+
+        return parents;
+    }
+
+    /**
+     * Получение всех коммитов графа в виде записей.
+     * @return записи коммитов.
+     */
+    public @NotNull List<Entry> getEntries() {
+        List<Entry> entries = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) {
+            List<ObjectId> parents = new ArrayList<>();
+            for (int parent : getParents(i)) {
+                parents.add(getHash(parent));
+            }
+
+            entries.add(new Entry(getHash(i), getTreeHash(i), getTime(i), getGeneration(i), parents));
+        }
+
+        return entries;
+    }
+
+    /**
+     * Добавление коммитов, уже дописанных в журнал. Номера коммитов, которые были в графе, не меняются.
+     * @param entries записи коммитов. Родители каждого коммита должны быть в графе или раньше в списке.
+     * @throws IOException исключение, если родителя коммита нет в графе.
+     */
+    void add(@NotNull Collection<Entry> entries) throws IOException {
+        for (Entry entry : entries) {
+            if (!tryAdd(entry)) {
+                throw new IOException("Parents of commit " + entry.hash + " are not in graph");
+            }
+        }
+    }
+
+    /**
+     * Добавление одного коммита из журнала. Коммит, который уже есть в графе, пропускается.
+     * @param entry запись коммита.
+     * @return false, если какого-то из родителей коммита нет в графе, иначе true.
+     */
+    private boolean tryAdd(@NotNull Entry entry) {
+        if (find(entry.hash) != -1) {
+            return true;
+        }
+
+        for (ObjectId parent : entry.parents) {
+            if (find(parent) == -1) {
+                return false;
+            }
+        }
+
+        appendedPositions.put(entry.hash, size());
+        appended.add(entry);
+        return true;
+    }
+
+    /**
+     * Дописывание коммитов в журнал графа. Записи дописываются одной операцией записи в конец файла.
+     * @param pathToLog путь к журналу.
+     * @param entries записи коммитов в порядке, в котором родители идут раньше потомков.
+     * @throws IOException исключение, если возникли проблемы с записью.
+     */
+    public static void append(@NotNull Path pathToLog, @NotNull Collection<Entry> entries) throws IOException {
+        int length = 0;
+        for (Entry entry : entries) {
+            length += LOG_ENTRY_SIZE + entry.parents.size() * ObjectId.SIZE;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (Entry entry : entries) {
+            entry.hash.writeTo(buffer);
+            entry.treeHash.writeTo(buffer);
+            buffer.putLong(entry.time);
+            buffer.putInt(entry.generation);
+            buffer.putInt(entry.parents.size());
+            for (ObjectId parent : entry.parents) {
+                parent.writeTo(buffer);
+            }
+        }
+
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(pathToLog, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Чтение очередной записи журнала.
+     * @param log содержимое журнала, позиция которого указывает на начало записи.
+     * @return запись коммита или null, если журнал закончился или запись дописана не до конца.
+     */
+    private static @Nullable Entry readLogEntry(@NotNull ByteBuffer log) {
+        if (log.remaining() < LOG_ENTRY_SIZE) {
+            return null;
+        }
+
+        int start = log.position();
+        int parentsCount = log.getInt(start + LOG_ENTRY_SIZE - 4);
+        if (parentsCount < 0 || (log.remaining() - LOG_ENTRY_SIZE) / ObjectId.SIZE < parentsCount) {
+            return null;
+        }
+
+        ObjectId hash = ObjectId.fromBuffer(log, start);
+        ObjectId treeHash = ObjectId.fromBuffer(log, start + ObjectId.SIZE);
+        long time = log.getLong(start + 2 * ObjectId.SIZE);
+        int generation = log.getInt(start + 2 * ObjectId.SIZE + 8);
+        List<ObjectId> parents = new ArrayList<>(parentsCount);
+        for (int i = 0; i < parentsCount; i++) {
+            parents.add(ObjectId.fromBuffer(log, start + LOG_ENTRY_SIZE + i * ObjectId.SIZE));
+        }
+
+        log.position(start + LOG_ENTRY_SIZE + parentsCount * ObjectId.SIZE);
+        return new Entry(hash, treeHash, time, generation, parents);
+    }
+
+    /**
+     * Запись графа коммитов. Родители каждого коммита тоже должны быть среди записей.
+     * @param pathToGraph путь, куда записывается граф.
+     * @param entries записи коммитов.
+     * @throws IOException исключение, если возникли проблемы с записью.
+     */
+    public static void write(@NotNull Path pathToGraph, @NotNull Collection<Entry> entries) throws IOException {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort((first, second) -> first.hash.compareTo(second.hash));
+
+        HashMap<ObjectId, Integer> positions = new HashMap<>();
+        int parentsCount = 0;
+        for (Entry entry : sorted) {
+            positions.put(entry.hash, positions.size());
+            parentsCount += entry.parents.size();
+        }
+
+        int recordsOffset = HASHES_OFFSET + sorted.size() * ObjectId.SIZE;
+        int parentsOffset = recordsOffset + sorted.size() * RECORD_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(parentsOffset + parentsCount * 4);
+        buffer.put(SIGNATURE);
+        buffer.putInt(VERSION);
+        buffer.putInt(sorted.size());
+
+        int[] fanout = new int[256];
+        ByteBuffer hashes = buffer.duplicate();
+        hashes.position(HASHES_OFFSET);
+        ByteBuffer records = buffer.duplicate();
+        records.position(recordsOffset);
+        ByteBuffer parents = buffer.duplicate();
+        parents.position(parentsOffset);
+        int parentsStart = 0;
+        for (Entry entry : sorted) {
+            fanout[entry.hash.getFirstByte()]++;
+            entry.hash.writeTo(hashes);
+            entry.treeHash.writeTo(records);
+            records.putLong(entry.time);
+            records.putInt(entry.generation);
+            records.putInt(parentsStart);
+            records.putInt(entry.parents.size());
+            for (ObjectId parent : entry.parents) {
+                Integer position = positions.get(parent);
+                if (position == null) {
+                    throw new IOException("Parent " + parent + " of commit " + entry.hash + " is not in graph");
+                }
+
+                parents.putInt(position);
+            }
+
+            parentsStart += entry.parents.size();
+        }
+
+        int total = 0;
+        for (int count : fanout) {
+            total += count;
+            buffer.putInt(total);
+        }
+
+        Files.write(pathToGraph, buffer.array());
+    }
+}
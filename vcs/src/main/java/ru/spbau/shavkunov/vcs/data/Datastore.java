@@ -1,25 +1,29 @@
 package ru.spbau.shavkunov.vcs.data;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.spbau.shavkunov.vcs.primitives.Index;
+import ru.spbau.shavkunov.vcs.primitives.ObjectId;
 import ru.spbau.shavkunov.vcs.primitives.VcsObjectWithHash;
 import ru.spbau.shavkunov.vcs.exceptions.BranchAlreadyExistsException;
 import ru.spbau.shavkunov.vcs.exceptions.NoRootDirectoryExistsException;
 import ru.spbau.shavkunov.vcs.exceptions.NotRegularFileException;
 import ru.spbau.shavkunov.vcs.exceptions.RepositoryAlreadyExistsException;
-import ru.spbau.shavkunov.vcs.trees.FilesTree;
+import ru.spbau.shavkunov.vcs.trees.TreeLoader;
 import ru.spbau.shavkunov.vcs.trees.VcsTree;
 import ru.spbau.shavkunov.vcs.primitives.Commit;
 import ru.spbau.shavkunov.vcs.primitives.Repository;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * Интерфейс, позволяющий репозиторию работать с данными.
  */
-public interface Datastore {
+public interface Datastore extends TreeLoader {
     /**
      * {@link Repository#writeHead(String)}.
      */
@@ -36,7 +40,24 @@ public interface Datastore {
     /**
      * {@link Repository#restoreFile(Path, String)}
      */
-    void restoreFile(@NotNull Path pathToFile, @NotNull String fileHash) throws IOException;
+    void restoreFile(@NotNull Path pathToFile, @NotNull ObjectId fileHash) throws IOException;
+
+    /**
+     * Сохранение файла пользователя в VCS за один проход по нему: файл хешируется одновременно
+     * с копированием в хранилище, блоками фиксированного размера.
+     * @param pathToFile путь к файлу.
+     * @return хеш содержимого файла.
+     * @throws IOException исключение, если возникли проблемы с вводом/выводом.
+     */
+    @NotNull ObjectId storeBlob(@NotNull Path pathToFile) throws IOException;
+
+    /**
+     * Открытие объекта для чтения его раскодированного содержимого.
+     * @param hash хеш объекта.
+     * @return поток с содержимым объекта.
+     * @throws IOException исключение, если объекта нет или его не удалось прочитать.
+     */
+    @NotNull InputStream openObject(@NotNull ObjectId hash) throws IOException;
 
     /**
      * {@link Repository#storeObject(VcsObjectWithHash)}
@@ -51,7 +72,7 @@ public interface Datastore {
     /**
      * {@link Repository#storeReferenceCommit(String, String)}
      */
-    void storeReference(@NotNull String name, @NotNull String commitHash) throws IOException;
+    void storeReference(@NotNull String name, @NotNull ObjectId commitHash) throws IOException;
 
     /**
      * Получение коммита по его хешу.
@@ -60,7 +81,7 @@ public interface Datastore {
      * @throws IOException исключение, если возникли проблемы с вводом/выводом.
      * @throws ClassNotFoundException исключение происходит при неправильном касте объектов.
      */
-    @NotNull Commit getCommitByHash(@NotNull String commitHash) throws IOException, ClassNotFoundException;
+    @NotNull Commit getCommitByHash(@NotNull ObjectId commitHash) throws IOException, ClassNotFoundException;
 
     /**
      * Получение дерева по его хешу.
@@ -69,7 +90,8 @@ public interface Datastore {
      * @throws IOException исключение, если возникли проблемы с вводом/выводом.
      * @throws ClassNotFoundException исключение происходит при неправильном касте объектов.
      */
-    @NotNull VcsTree getTreeByHash(@NotNull String treeHash) throws IOException, ClassNotFoundException;
+    @Override
+    @NotNull VcsTree getTreeByHash(@NotNull ObjectId treeHash) throws IOException, ClassNotFoundException;
 
     /**
      * Получение коммита, на который указывает ссылка.
@@ -77,15 +99,7 @@ public interface Datastore {
      * @return хеш коммита
      * @throws IOException исключение, если возникли проблемы с вводом/выводом.
      */
-    @NotNull String getReferenceCommitHash(@NotNull String referenceName) throws IOException;
-
-    /**
-     * Получение дерева файлов, исключая данные.
-     * @param excludeFiles файлы, которые не должны входить в дерево.
-     * @return объект FilesTree
-     * @throws NoRootDirectoryExistsException исключение, если не существует корневой директории.
-     */
-    @NotNull FilesTree getFilesTree(@NotNull HashSet<String> excludeFiles) throws NoRootDirectoryExistsException;
+    @Nullable ObjectId getReferenceCommitHash(@NotNull String referenceName) throws IOException;
 
     /**
      * Инициализация ресурсов в заданной директории.
@@ -97,7 +111,7 @@ public interface Datastore {
     /**
      * {@link Repository#createNewBranch(String, String)}
      */
-    void createNewBranch(@NotNull String branchName, @NotNull String commitHash)
+    void createNewBranch(@NotNull String branchName, @Nullable ObjectId commitHash)
                                                         throws BranchAlreadyExistsException, IOException;
 
     /**
@@ -113,7 +127,7 @@ public interface Datastore {
     /**
      * {@link Repository#isCommitExists(String)}
      */
-    boolean isCommitExists(@NotNull String commitHash);
+    boolean isCommitExists(@NotNull ObjectId commitHash);
 
     /**
      * Получение корневой папки, где расположен репозиторий.
@@ -122,23 +136,58 @@ public interface Datastore {
     @NotNull Path getRootDirectory();
 
     /**
-     * {@link Filesystem#updateIndex(Map)}
+     * {@link Filesystem#updateIndex(Index)}
      */
-    void updateIndex(@NotNull Map<Path, String> index) throws IOException;
+    void updateIndex(@NotNull Index index) throws IOException;
 
     /**
-     * {@link Filesystem#readIndex()}
+     * {@link Filesystem#beginIndexUpdate()}
+     */
+    void beginIndexUpdate() throws IOException;
+
+    /**
+     * {@link Filesystem#commitIndexUpdate(Index)}
+     */
+    void commitIndexUpdate(@NotNull Index index) throws IOException;
+
+    /**
+     * {@link Filesystem#abortIndexUpdate()}
      */
-    @NotNull Map<Path, String> readIndex() throws IOException;
+    void abortIndexUpdate() throws IOException;
 
     /**
-     * {@link Filesystem#addTree(VcsTree, Path)}
+     * {@link Filesystem#readIndex()}
      */
-    void addTree(@NotNull VcsTree tree, @NotNull Path rootPath) throws IOException;
+    @NotNull Index readIndex() throws IOException;
 
     /**
-     * {@link Filesystem#clean(HashSet)}
+     * {@link Filesystem#clean(List)}
      */
-    void clean(@NotNull HashSet<String> untrackedFiles) throws ClassNotFoundException, NotRegularFileException,
+    void clean(@NotNull List<String> untrackedFiles) throws ClassNotFoundException, NotRegularFileException,
                                                                NoRootDirectoryExistsException, IOException;
+
+    /**
+     * {@link Filesystem#getRestoreMode()}
+     */
+    @NotNull RestoreMode getRestoreMode();
+
+    /**
+     * {@link Filesystem#setRestoreMode(RestoreMode)}
+     */
+    void setRestoreMode(@NotNull RestoreMode mode) throws IOException;
+
+    /**
+     * {@link PackedDatastore#repack()}
+     */
+    void repack() throws IOException;
+
+    /**
+     * {@link Filesystem#getCommitGraph()}
+     */
+    @NotNull CommitGraph getCommitGraph() throws IOException, ClassNotFoundException;
+
+    /**
+     * {@link Filesystem#updateCommitGraph(Collection)}
+     */
+    void updateCommitGraph(@NotNull Collection<ObjectId> commitHashes) throws IOException, ClassNotFoundException;
 }
\ No newline at end of file
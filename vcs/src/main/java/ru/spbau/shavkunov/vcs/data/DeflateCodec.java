@@ -0,0 +1,61 @@
+package ru.spbau.shavkunov.vcs.data;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Сжатие объектов алгоритмом deflate. Используется по умолчанию.
+ */
+public class DeflateCodec implements ObjectCodec {
+    /**
+     * Идентификатор способа кодирования.
+     */
+    public static final byte ID = 1;
+
+    /**
+     * Размер буфера потоков сжатия.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public @NotNull OutputStream encode(@NotNull OutputStream output) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        return new DeflaterOutputStream(output, deflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public @NotNull InputStream decode(@NotNull InputStream input) {
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(input, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+}
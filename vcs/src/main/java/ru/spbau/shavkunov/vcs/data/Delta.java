@@ -0,0 +1,203 @@
+package ru.spbau.shavkunov.vcs.data;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Дельта-кодирование объекта относительно похожего на него базового объекта.
+ *
+ * Дельта начинается с размеров базового и итогового объектов, за которыми идут команды: скопировать
+ * участок базового объекта(смещение и длина) или вставить новые байты(длина и сами байты).
+ */
+public class Delta {
+    /**
+     * Размер блоков базового объекта, по которым ищутся совпадения.
+     */
+    private static final int BLOCK_SIZE = 16;
+
+    /**
+     * Команда вставки новых байт.
+     */
+    private static final int INSERT = 0;
+
+    /**
+     * Команда копирования участка базового объекта.
+     */
+    private static final int COPY = 1;
+
+    private Delta() {}
+
+    /**
+     * Построение дельты.
+     * @param base базовый объект.
+     * @param target объект, который нужно закодировать.
+     * @param limit размер, меньше которого должна быть дельта, чтобы ее имело смысл хранить.
+     * @return дельта или null, если объекты слишком непохожи и дельта не меньше limit.
+     */
+    public static @Nullable byte[] create(@NotNull byte[] base, @NotNull byte[] target, int limit) {
+        if (base.length < BLOCK_SIZE) {
+            return null;
+        }
+
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int offset = 0; offset + BLOCK_SIZE <= base.length; offset += BLOCK_SIZE) {
+            blocks.putIfAbsent(hashBlock(base, offset), offset);
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            Varint.write(output, base.length);
+            Varint.write(output, target.length);
+
+            int insertStart = 0;
+            int position = 0;
+            while (position + BLOCK_SIZE <= target.length) {
+                Integer candidate = blocks.get(hashBlock(target, position));
+                if (candidate == null || !isEqual(base, candidate, target, position, BLOCK_SIZE)) {
+                    position++;
+                    continue;
+                }
+
+                int baseStart = candidate;
+                int targetStart = position;
+                while (baseStart > 0 && targetStart > insertStart && base[baseStart - 1] == target[targetStart - 1]) {
+                    baseStart--;
+                    targetStart--;
+                }
+
+                int baseEnd = candidate + BLOCK_SIZE;
+                int targetEnd = position + BLOCK_SIZE;
+                while (baseEnd < base.length && targetEnd < target.length && base[baseEnd] == target[targetEnd]) {
+                    baseEnd++;
+                    targetEnd++;
+                }
+
+                writeInsert(output, target, insertStart, targetStart);
+                output.write(COPY);
+                Varint.write(output, baseStart);
+                Varint.write(output, baseEnd - baseStart);
+
+                position = targetEnd;
+                insertStart = targetEnd;
+                if (output.size() >= limit) {
+                    return null;
+                }
+            }
+
+            writeInsert(output, target, insertStart, target.length);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return output.size() < limit ? output.toByteArray() : null;
+    }
+
+    /**
+     * Восстановление объекта по базовому объекту и дельте.
+     * @param base базовый объект.
+     * @param delta дельта.
+     * @return восстановленный объект.
+     * @throws IOException исключение, если дельта повреждена или построена для другого базового объекта.
+     */
+    public static @NotNull byte[] apply(@NotNull byte[] base, @NotNull byte[] delta) throws IOException {
+        ByteArrayInputStream input = new ByteArrayInputStream(delta);
+        if (Varint.read(input) != base.length) {
+            throw new IOException("Delta base size mismatch");
+        }
+
+        long targetLength = Varint.read(input);
+        if (targetLength > Integer.MAX_VALUE) {
+            throw new IOException("Delta target is too large");
+        }
+
+        byte[] target = new byte[(int) targetLength];
+        int position = 0;
+        int command;
+        while ((command = input.read()) != -1) {
+            if (command == COPY) {
+                long offset = Varint.read(input);
+                long length = Varint.read(input);
+                if (offset + length > base.length || position + length > target.length) {
+                    throw new IOException("Delta copies outside of objects");
+                }
+
+                System.arraycopy(base, (int) offset, target, position, (int) length);
+                position += length;
+            } else if (command == INSERT) {
+                long length = Varint.read(input);
+                if (position + length > target.length || input.read(target, position, (int) length) != length) {
+                    throw new IOException("Delta inserts outside of object");
+                }
+
+                position += length;
+            } else {
+                throw new IOException("Unknown delta command " + command);
+            }
+        }
+
+        if (position != target.length) {
+            throw new IOException("Delta is truncated");
+        }
+
+        return target;
+    }
+
+    /**
+     * Запись команды вставки, если вставлять есть что.
+     * @param output поток, куда записывается дельта.
+     * @param target кодируемый объект.
+     * @param start начало вставляемого участка.
+     * @param end конец вставляемого участка.
+     * @throws IOException исключение, если возникли проблемы с записью.
+     */
+    private static void writeInsert(@NotNull ByteArrayOutputStream output, @NotNull byte[] target,
+                                    int start, int end) throws IOException {
+        if (start == end) {
+            return;
+        }
+
+        output.write(INSERT);
+        Varint.write(output, end - start);
+        output.write(target, start, end - start);
+    }
+
+    /**
+     * Хеш блока байт.
+     * @param content содержимое объекта.
+     * @param offset начало блока.
+     * @return хеш блока.
+     */
+    private static int hashBlock(@NotNull byte[] content, int offset) {
+        int hash = 1;
+        for (int i = offset; i < offset + BLOCK_SIZE; i++) {
+            hash = 31 * hash + content[i];
+        }
+
+        return hash;
+    }
+
+    /**
+     * Сравнение участков двух массивов.
+     * @param first первый массив.
+     * @param firstOffset начало участка первого массива.
+     * @param second второй массив.
+     * @param secondOffset начало участка второго массива.
+     * @param length длина участков.
+     * @return true, если участки совпадают, иначе false.
+     */
+    private static boolean isEqual(@NotNull byte[] first, int firstOffset, @NotNull byte[] second,
+                                   int secondOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (first[firstOffset + i] != second[secondOffset + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
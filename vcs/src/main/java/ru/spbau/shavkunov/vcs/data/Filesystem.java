@@ -1,26 +1,42 @@
 package ru.spbau.shavkunov.vcs.data;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import ru.spbau.shavkunov.vcs.primitives.ObjectWithName;
+import ru.spbau.shavkunov.vcs.primitives.Blob;
+import ru.spbau.shavkunov.vcs.primitives.Index;
+import ru.spbau.shavkunov.vcs.primitives.IndexEntry;
+import ru.spbau.shavkunov.vcs.primitives.ObjectId;
 import ru.spbau.shavkunov.vcs.primitives.VcsObjectWithHash;
 import ru.spbau.shavkunov.vcs.exceptions.*;
-import ru.spbau.shavkunov.vcs.trees.FilesTree;
 import ru.spbau.shavkunov.vcs.trees.VcsTree;
 import ru.spbau.shavkunov.vcs.utils.Utils;
-import ru.spbau.shavkunov.vcs.primitives.Blob;
 import ru.spbau.shavkunov.vcs.primitives.Commit;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 import static ru.spbau.shavkunov.vcs.utils.Constants.*;
@@ -35,11 +51,42 @@ public class Filesystem implements Datastore {
     @NotNull
     private static final Logger logger = LoggerFactory.getLogger(Filesystem.class);
 
+    /**
+     * Размер блока, которыми копируются файлы.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Префикс временных файлов в папке объектов.
+     */
+    protected static final String TEMPORARY_PREFIX = "tmp_";
+
     /**
      * Папка репозитория(т.е. с суффиксом VCS_FOLDER)
      */
     private @NotNull Path rootDirectory;
 
+    /**
+     * Способ кодирования, которым записываются новые объекты. Прочитать можно объект, записанный любым
+     * известным способом.
+     */
+    private @NotNull ObjectCodec codec = new DeflateCodec();
+
+    /**
+     * Способ восстановления файлов в рабочую папку.
+     */
+    private volatile @NotNull RestoreMode restoreMode = RestoreMode.TRANSFER;
+
+    /**
+     * Блокировка, под которой проверяется число ссылок на раскодированную копию объекта и создается ссылка.
+     */
+    private final @NotNull Object rawObjectsLock = new Object();
+
+    /**
+     * Прочитанный граф коммитов или null, если он еще не был открыт.
+     */
+    private volatile @Nullable CommitGraph commitGraph;
+
     @Override
     public void initResources(@NotNull Path pathToRepo) throws IOException, RepositoryAlreadyExistsException {
         if (!Files.isDirectory(pathToRepo)) {
@@ -57,6 +104,7 @@ public class Filesystem implements Datastore {
         Files.createDirectory(rootDir.resolve(REFERENCES_FOLDER));
         Files.createFile(rootDir.resolve(REFERENCES_FOLDER).resolve(DEFAULT_BRANCH_NAME));
         Files.createFile(rootDir.resolve(INDEX_FILE));
+        Files.write(rootDir.resolve(VERSION_FILE), String.valueOf(REPOSITORY_VERSION).getBytes());
 
         Path pathToHead = rootDir.resolve(HEAD);
         Files.createFile(pathToHead);
@@ -67,14 +115,14 @@ public class Filesystem implements Datastore {
     }
 
     @Override
-    public void createNewBranch(@NotNull String branchName, @NotNull String commitHash)
+    public void createNewBranch(@NotNull String branchName, @Nullable ObjectId commitHash)
                                             throws BranchAlreadyExistsException, IOException {
         if (isBranchExists(branchName)) {
             throw new BranchAlreadyExistsException();
         }
 
         Path branchPath = getReferencesPath().resolve(branchName);
-        Files.write(branchPath, commitHash.getBytes());
+        Files.write(branchPath, commitHash == null ? new byte[0] : commitHash.toHex().getBytes());
         Files.write(getHeadPath(), (REFERENCE_PREFIX + branchName).getBytes());
     }
 
@@ -90,8 +138,203 @@ public class Filesystem implements Datastore {
     }
 
     @Override
-    public boolean isCommitExists(@NotNull String commitHash) {
-        return getObjectsPath().resolve(commitHash).toFile().exists();
+    public boolean isCommitExists(@NotNull ObjectId commitHash) {
+        return isInCommitGraph(commitHash) || Files.isRegularFile(getObjectPath(commitHash));
+    }
+
+    /**
+     * Проверка, есть ли коммит в графе коммитов. Если граф не удалось прочитать, считается, что коммита в нем нет.
+     * @param commitHash хеш коммита.
+     * @return true, если коммит есть в графе, иначе false.
+     */
+    private boolean isInCommitGraph(@NotNull ObjectId commitHash) {
+        if (commitGraph == null && Files.isRegularFile(getCommitGraphPath())) {
+            try {
+                openCommitGraph();
+            } catch (IOException e) {
+                logger.debug("Failed to read commit graph: " + e.getMessage());
+                return false;
+            }
+        }
+
+        CommitGraph graph = commitGraph;
+        return graph != null && graph.find(commitHash) != -1;
+    }
+
+    /**
+     * Открытие файла графа коммитов, если он еще не был прочитан.
+     * @throws IOException исключение, если возникли проблемы с чтением файла.
+     */
+    private synchronized void openCommitGraph() throws IOException {
+        if (commitGraph == null) {
+            commitGraph = CommitGraph.open(getCommitGraphPath(), getCommitGraphLogPath());
+        }
+    }
+
+    /**
+     * Получение графа коммитов. Если файла графа еще нет, он строится по всем коммитам, достижимым
+     * из веток и head.
+     * @return граф коммитов.
+     * @throws IOException исключение, если возникли проблемы с чтением или записью файлов.
+     * @throws ClassNotFoundException исключение, если не удалось интерпретировать данные коммитов.
+     */
+    @Override
+    public synchronized @NotNull CommitGraph getCommitGraph() throws IOException, ClassNotFoundException {
+        if (commitGraph == null) {
+            if (Files.isRegularFile(getCommitGraphPath())) {
+                openCommitGraph();
+            } else {
+                logger.debug("Building commit graph");
+                writeCommitGraph(collectCommits(null, getReferencedCommits()));
+            }
+        }
+
+        return commitGraph;
+    }
+
+    /**
+     * Добавление в граф коммитов и всех их предков, которых в графе еще нет. Новые коммиты дописываются
+     * в журнал графа. Когда в журнале оказывается больше коммитов, чем в файле графа, файл переписывается
+     * целиком, поэтому в среднем один коммит добавляется за постоянное время.
+     * @param commitHashes хеши добавляемых коммитов.
+     * @throws IOException исключение, если возникли проблемы с чтением или записью файлов.
+     * @throws ClassNotFoundException исключение, если не удалось интерпретировать данные коммитов.
+     */
+    @Override
+    public synchronized void updateCommitGraph(@NotNull Collection<ObjectId> commitHashes)
+                                               throws IOException, ClassNotFoundException {
+        CommitGraph graph = getCommitGraph();
+        List<CommitGraph.Entry> entries = collectCommits(graph, commitHashes);
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        int appendedCount = graph.getAppendedCount() + entries.size();
+        if (appendedCount > graph.size() - graph.getAppendedCount()) {
+            entries.addAll(0, graph.getEntries());
+            writeCommitGraph(entries);
+            return;
+        }
+
+        CommitGraph.append(getCommitGraphLogPath(), entries);
+        graph.add(entries);
+    }
+
+    /**
+     * Чтение коммитов, которых еще нет в графе, вместе с недостающими предками. Коммиты читаются из
+     * хранилища без рекурсии, поэтому длина истории не ограничена размером стека.
+     * @param graph граф коммитов или null, если графа еще нет.
+     * @param commitHashes хеши коммитов, которые вместе с предками должны оказаться в графе.
+     * @return записи новых коммитов, в которых родители идут раньше потомков.
+     * @throws IOException исключение, если возникли проблемы с чтением файлов.
+     * @throws ClassNotFoundException исключение, если не удалось интерпретировать данные коммитов.
+     */
+    private @NotNull List<CommitGraph.Entry> collectCommits(@Nullable CommitGraph graph,
+                                                            @NotNull Collection<ObjectId> commitHashes)
+                                                            throws IOException, ClassNotFoundException {
+        List<CommitGraph.Entry> entries = new ArrayList<>();
+        HashMap<ObjectId, Integer> generations = new HashMap<>();
+        HashMap<ObjectId, Commit> pending = new HashMap<>();
+        ArrayDeque<ObjectId> stack = new ArrayDeque<>(commitHashes);
+        while (!stack.isEmpty()) {
+            ObjectId hash = stack.peek();
+            if (generations.containsKey(hash) || graph != null && graph.find(hash) != -1) {
+                stack.pop();
+                continue;
+            }
+
+            Commit commit = pending.get(hash);
+            if (commit == null) {
+                commit = getCommitByHash(hash);
+                pending.put(hash, commit);
+            }
+
+            int generation = 0;
+            boolean isReady = true;
+            for (ObjectId parent : commit.getParentCommits()) {
+                Integer parentGeneration = generations.get(parent);
+                int position = graph == null ? -1 : graph.find(parent);
+                if (parentGeneration != null) {
+                    generation = Math.max(generation, parentGeneration);
+                } else if (position != -1) {
+                    generation = Math.max(generation, graph.getGeneration(position));
+                } else {
+                    stack.push(parent);
+                    isReady = false;
+                }
+            }
+
+            if (isReady) {
+                stack.pop();
+                pending.remove(hash);
+                generations.put(hash, generation + 1);
+                entries.add(new CommitGraph.Entry(hash, commit.getTreeHash(), commit.getDate().getTime(),
+                                                  generation + 1, commit.getParentCommits()));
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Запись файла графа коммитов целиком. Журнал после этого удаляется, так как его коммиты уже в файле.
+     * @param entries записи всех коммитов графа.
+     * @throws IOException исключение, если возникли проблемы с записью файлов.
+     */
+    private void writeCommitGraph(@NotNull List<CommitGraph.Entry> entries) throws IOException {
+        Path temporaryGraph = Files.createTempFile(rootDirectory, TEMPORARY_PREFIX, null);
+        try {
+            CommitGraph.write(temporaryGraph, entries);
+            Files.move(temporaryGraph, getCommitGraphPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporaryGraph);
+            throw e;
+        }
+
+        Files.deleteIfExists(getCommitGraphLogPath());
+        commitGraph = CommitGraph.open(getCommitGraphPath(), getCommitGraphLogPath());
+        logger.debug("Commit graph contains " + entries.size() + " commits");
+    }
+
+    /**
+     * Получение хешей коммитов, на которые указывают ветки и head.
+     * @return хеши коммитов.
+     * @throws IOException исключение, если возникли проблемы с чтением ссылок.
+     */
+    private @NotNull List<ObjectId> getReferencedCommits() throws IOException {
+        List<ObjectId> commitHashes = new ArrayList<>();
+        try (DirectoryStream<Path> references = Files.newDirectoryStream(getReferencesPath())) {
+            for (Path reference : references) {
+                ObjectId commitHash = getReferenceCommitHash(reference.getFileName().toString());
+                if (commitHash != null) {
+                    commitHashes.add(commitHash);
+                }
+            }
+        }
+
+        String head = getHead();
+        if (!isBranchExists(head) && ObjectId.isHex(head)) {
+            commitHashes.add(ObjectId.fromHex(head));
+        }
+
+        return commitHashes;
+    }
+
+    /**
+     * Получение ссылки на файл графа коммитов.
+     * @return путь к файлу графа коммитов.
+     */
+    public @NotNull Path getCommitGraphPath() {
+        return rootDirectory.resolve(COMMIT_GRAPH_FILE);
+    }
+
+    /**
+     * Получение ссылки на журнал графа коммитов.
+     * @return путь к журналу графа коммитов.
+     */
+    public @NotNull Path getCommitGraphLogPath() {
+        return rootDirectory.resolve(COMMIT_GRAPH_LOG_FILE);
     }
 
     @NotNull
@@ -105,8 +348,9 @@ public class Filesystem implements Datastore {
      * @param rootDirectory ссылка на место, где должен находится созданный репозиторий
      * @throws NoRepositoryException исключение, если путь указывает на место, где нет репозитория.
      * @throws NotDirectoryException путь к репозиторию оказался не директорией.
+     * @throws IOException исключение, если версия репозитория не поддерживается или не удалось его обновить.
      */
-    public Filesystem(@NotNull Path rootDirectory) throws NoRepositoryException, NotDirectoryException {
+    public Filesystem(@NotNull Path rootDirectory) throws NoRepositoryException, IOException {
         if (!Files.isDirectory(rootDirectory)) {
             throw new NotDirectoryException(rootDirectory.toString());
         }
@@ -118,6 +362,301 @@ public class Filesystem implements Datastore {
         }
 
         this.rootDirectory = rootDirectory;
+        upgrade();
+        restoreMode = readRestoreMode();
+    }
+
+    /**
+     * Чтение способа восстановления файлов репозитория.
+     * @return сохраненный способ или TRANSFER, если он не выбирался.
+     * @throws IOException исключение, если файл не удалось прочитать или в нем неизвестный способ.
+     */
+    private @NotNull RestoreMode readRestoreMode() throws IOException {
+        Path pathToMode = rootDirectory.resolve(RESTORE_MODE_FILE);
+        if (!Files.exists(pathToMode)) {
+            return RestoreMode.TRANSFER;
+        }
+
+        try {
+            return RestoreMode.valueOf(Utils.getFirstLine(pathToMode).trim());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown restore mode", e);
+        }
+    }
+
+    /**
+     * Получение способа восстановления файлов репозитория.
+     * @return способ восстановления.
+     */
+    @Override
+    public @NotNull RestoreMode getRestoreMode() {
+        return restoreMode;
+    }
+
+    /**
+     * Выбор способа восстановления файлов репозитория. Способ сохраняется в папке репозитория.
+     * @param mode способ восстановления.
+     * @throws IOException исключение, если возникли проблемы с записью файла.
+     */
+    @Override
+    public void setRestoreMode(@NotNull RestoreMode mode) throws IOException {
+        Files.write(rootDirectory.resolve(RESTORE_MODE_FILE), mode.name().getBytes());
+        restoreMode = mode;
+    }
+
+    /**
+     * Обновление формата репозитория до текущей версии. Объекты, записанные без байта способа кодирования,
+     * переписываются: файлы получают байт способа кодирования, а коммиты и деревья переводятся в двоичный
+     * формат, поэтому их хеши меняются, и ветки и head указывают на новые коммиты. Остальные объекты
+     * раскладываются по папкам первых байт хеша. Старые объекты удаляются только после записи новых
+     * и веток, а файл версии записывается последним, поэтому прерванное обновление продолжится при
+     * следующем запуске.
+     * @throws IOException исключение, если версия не поддерживается или не удалось переписать объекты.
+     */
+    private void upgrade() throws IOException {
+        Path pathToVersion = rootDirectory.resolve(VERSION_FILE);
+        int version = 1;
+        if (Files.exists(pathToVersion)) {
+            try {
+                version = Integer.parseInt(Utils.getFirstLine(pathToVersion).trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed repository version", e);
+            }
+        }
+
+        if (version == REPOSITORY_VERSION) {
+            return;
+        }
+
+        if (version > REPOSITORY_VERSION) {
+            throw new IOException("Unsupported repository version " + version);
+        }
+
+        HashMap<ObjectId, Path> objects = getLooseObjects();
+        HashMap<ObjectId, Path> legacyObjects = new HashMap<>();
+        for (Map.Entry<ObjectId, Path> object : objects.entrySet()) {
+            if (isLegacyObject(object.getValue(), object.getKey())) {
+                legacyObjects.put(object.getKey(), object.getValue());
+            }
+        }
+
+        if (!legacyObjects.isEmpty()) {
+            logger.debug("Rewriting " + legacyObjects.size() + " objects of version " + version);
+            rewriteLegacyObjects(legacyObjects);
+        }
+
+        logger.debug("Moving objects to the fan-out layout");
+        for (Map.Entry<ObjectId, Path> object : objects.entrySet()) {
+            Path pathToObject = getObjectPath(object.getKey());
+            if (!legacyObjects.containsKey(object.getKey()) && !object.getValue().equals(pathToObject)) {
+                Files.createDirectories(pathToObject.getParent());
+                Files.move(object.getValue(), pathToObject, StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+
+        Files.write(pathToVersion, String.valueOf(REPOSITORY_VERSION).getBytes());
+    }
+
+    /**
+     * Перевод объектов старого формата в текущий. Коммиты и деревья находятся обходом от веток и head,
+     * все остальные объекты старого формата считаются файлами.
+     * @param legacyObjects пути к файлам объектов старого формата по их хешам.
+     * @throws IOException исключение, если объект не удалось прочитать или записать.
+     */
+    private void rewriteLegacyObjects(@NotNull HashMap<ObjectId, Path> legacyObjects) throws IOException {
+        HashMap<ObjectId, ObjectId> rewritten = new HashMap<>();
+        HashMap<Path, ObjectId> references = new HashMap<>();
+        try (DirectoryStream<Path> directory = Files.newDirectoryStream(getReferencesPath())) {
+            for (Path reference : directory) {
+                ObjectId commitHash = getReferenceCommitHash(reference.getFileName().toString());
+                if (commitHash != null) {
+                    references.put(reference, rewriteLegacyCommit(commitHash, legacyObjects, rewritten));
+                }
+            }
+        }
+
+        String head = Utils.getFirstLine(getHeadPath()).trim();
+        if (!head.startsWith(REFERENCE_PREFIX) && isHash(head)) {
+            references.put(getHeadPath(), rewriteLegacyCommit(ObjectId.fromHex(head), legacyObjects, rewritten));
+        }
+
+        for (Map.Entry<ObjectId, Path> object : legacyObjects.entrySet()) {
+            if (!rewritten.containsKey(object.getKey())) {
+                try (InputStream input = Files.newInputStream(object.getValue())) {
+                    moveObject(writeTemporaryObject(input), object.getKey());
+                }
+            }
+        }
+
+        for (Map.Entry<Path, ObjectId> reference : references.entrySet()) {
+            Files.write(reference.getKey(), reference.getValue().toHex().getBytes());
+        }
+
+        for (Map.Entry<ObjectId, Path> object : legacyObjects.entrySet()) {
+            if (rewritten.containsKey(object.getKey()) || !object.getValue().equals(getObjectPath(object.getKey()))) {
+                Files.deleteIfExists(object.getValue());
+            }
+        }
+    }
+
+    /**
+     * Перевод коммита старого формата и всех его предков в текущий формат. Предки переводятся раньше
+     * потомков, потому что хеш коммита зависит от хешей родителей. Коммиты текущего формата не меняются.
+     * @param commitHash хеш коммита.
+     * @param legacyObjects пути к файлам объектов старого формата по их хешам.
+     * @param rewritten новые хеши уже переведенных коммитов и деревьев.
+     * @return хеш коммита в текущем формате.
+     * @throws IOException исключение, если объект не удалось прочитать или записать.
+     */
+    private @NotNull ObjectId rewriteLegacyCommit(@NotNull ObjectId commitHash,
+                                                  @NotNull HashMap<ObjectId, Path> legacyObjects,
+                                                  @NotNull HashMap<ObjectId, ObjectId> rewritten) throws IOException {
+        HashMap<ObjectId, LegacyFormat.LegacyCommit> commits = new HashMap<>();
+        ArrayDeque<ObjectId> stack = new ArrayDeque<>();
+        stack.push(commitHash);
+        while (!stack.isEmpty()) {
+            ObjectId hash = stack.peek();
+            if (rewritten.containsKey(hash) || !legacyObjects.containsKey(hash)) {
+                stack.pop();
+                continue;
+            }
+
+            LegacyFormat.LegacyCommit commit = commits.get(hash);
+            if (commit == null) {
+                commit = LegacyFormat.readCommit(Files.readAllBytes(legacyObjects.get(hash)));
+                commits.put(hash, commit);
+            }
+
+            ArrayList<ObjectId> parents = new ArrayList<>();
+            boolean isParentsRewritten = true;
+            for (String parent : commit.getParentCommits()) {
+                ObjectId parentHash = ObjectId.fromHex(parent);
+                if (legacyObjects.containsKey(parentHash) && !rewritten.containsKey(parentHash)) {
+                    stack.push(parentHash);
+                    isParentsRewritten = false;
+                }
+
+                parents.add(rewritten.getOrDefault(parentHash, parentHash));
+            }
+
+            if (!isParentsRewritten) {
+                continue;
+            }
+
+            ObjectId treeHash = ObjectId.fromHex(commit.getTreeHash());
+            Path pathToTree = legacyObjects.get(treeHash);
+            if (pathToTree == null) {
+                throw new IOException("Tree " + treeHash + " of commit " + hash + " is missing");
+            }
+
+            VcsTree tree = rewriteLegacyTree(LegacyFormat.readTree(Files.readAllBytes(pathToTree)), rewritten);
+            rewritten.put(treeHash, tree.getHash());
+            Commit rewrittenCommit = new Commit(commit.getDate(), commit.getAuthor(), commit.getMessage(),
+                                                tree.getHash(), parents);
+            storeLooseObject(rewrittenCommit);
+            rewritten.put(hash, rewrittenCommit.getHash());
+            commits.remove(hash);
+            stack.pop();
+        }
+
+        return rewritten.getOrDefault(commitHash, commitHash);
+    }
+
+    /**
+     * Перевод дерева старого формата и всех его поддеревьев в текущий формат. Старое корневое дерево
+     * сериализовалось до вычисления своего хеша, поэтому его новый хеш запоминает вызывающий код.
+     * @param legacyTree дерево старого формата.
+     * @param rewritten новые хеши уже переведенных коммитов и деревьев.
+     * @return сохраненное дерево текущего формата.
+     * @throws IOException исключение, если дерево не удалось записать.
+     */
+    private @NotNull VcsTree rewriteLegacyTree(@NotNull LegacyFormat.LegacyTree legacyTree,
+                                               @NotNull HashMap<ObjectId, ObjectId> rewritten) throws IOException {
+        VcsTree tree = new VcsTree(Paths.get(legacyTree.getPrefix()));
+        for (LegacyFormat.LegacyObjectWithName file : legacyTree.getBlobFiles()) {
+            ObjectId fileHash = ObjectId.fromHex(file.getHash());
+            tree.addBlob(new Blob(Paths.get(file.getName()), fileHash), file.getName());
+        }
+
+        for (LegacyFormat.LegacyTree subtree : legacyTree.getVcsTreeFiles()) {
+            tree.addChild(rewriteLegacyTree(subtree, rewritten));
+        }
+
+        tree.computeHash();
+        storeLooseObject(tree);
+        if (legacyTree.getHash() != null) {
+            rewritten.put(ObjectId.fromHex(legacyTree.getHash()), tree.getHash());
+        }
+
+        return tree;
+    }
+
+    /**
+     * Поиск всех отдельных объектов репозитория: и лежащих прямо в папке объектов, как в первой версии,
+     * и разложенных по папкам первых байт хеша.
+     * @return пути к файлам объектов по их хешам.
+     * @throws IOException исключение, если не удалось прочитать папки объектов.
+     */
+    private @NotNull HashMap<ObjectId, Path> getLooseObjects() throws IOException {
+        HashMap<ObjectId, Path> objects = new HashMap<>();
+        try (DirectoryStream<Path> directory = Files.newDirectoryStream(getObjectsPath())) {
+            for (Path entry : directory) {
+                String name = entry.getFileName().toString();
+                if (Files.isRegularFile(entry) && isHash(name)) {
+                    objects.put(ObjectId.fromHex(name), entry);
+                } else if (Files.isDirectory(entry) && name.matches("[0-9a-f]{" + FANOUT_LENGTH + "}")) {
+                    try (DirectoryStream<Path> fanout = Files.newDirectoryStream(entry)) {
+                        for (Path object : fanout) {
+                            String hash = name + object.getFileName();
+                            if (Files.isRegularFile(object) && isHash(hash)) {
+                                objects.put(ObjectId.fromHex(hash), object);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        return objects;
+    }
+
+    /**
+     * Проверка, записан ли объект без байта способа кодирования, как это делали версии 1 и 2. Хеш таких
+     * объектов совпадает с хешом файла целиком, а у объектов текущего формата файл начинается с байта
+     * способа кодирования и его хеш отличается от хеша содержимого.
+     * @param pathToObject путь к файлу объекта.
+     * @param hash хеш объекта.
+     * @return true, если объект записан в старом формате, иначе false.
+     * @throws IOException исключение, если не удалось прочитать файл.
+     */
+    private static boolean isLegacyObject(@NotNull Path pathToObject, @NotNull ObjectId hash) throws IOException {
+        try (InputStream input = Files.newInputStream(pathToObject)) {
+            return ObjectId.fromBytes(DigestUtils.sha1(input)).equals(hash);
+        }
+    }
+
+    /**
+     * Проверка, является ли строка хешом объекта.
+     * @param name проверяемая строка.
+     * @return true, если это 40 шестнадцатеричных цифр, иначе false.
+     */
+    protected static boolean isHash(@NotNull String name) {
+        return name.matches("[0-9a-f]{40}");
+    }
+
+    /**
+     * Создание объекта с заданным способом кодирования новых объектов.
+     * @param rootDirectory ссылка на место, где должен находится созданный репозиторий
+     * @param codec способ кодирования объектов.
+     * @throws NoRepositoryException исключение, если путь указывает на место, где нет репозитория.
+     * @throws NotDirectoryException путь к репозиторию оказался не директорией.
+     * @throws IOException исключение, если версия репозитория не поддерживается или не удалось его обновить.
+     */
+    public Filesystem(@NotNull Path rootDirectory, @NotNull ObjectCodec codec) throws NoRepositoryException,
+                                                                                       IOException {
+        this(rootDirectory);
+        this.codec = codec;
     }
 
     /**
@@ -139,24 +678,262 @@ public class Filesystem implements Datastore {
         Files.write(pathToFile, content);
     }
 
+    /**
+     * Восстановление содержимого файла из хранилища способом, выбранным для репозитория. Старый файл
+     * сначала удаляется, поэтому файл, который был ссылкой на копию объекта, не меняет эту копию.
+     * @param pathToFile путь к файлу.
+     * @param fileHash хеш файла в системе контроля версий.
+     * @throws IOException исключение, если возникли проблемы с чтением объекта или записью файла.
+     */
     @Override
-    public void restoreFile(@NotNull Path pathToFile, @NotNull String fileHash) throws IOException {
-        FileUtils.copyFile(getObjectsPath().resolve(fileHash).toFile(), pathToFile.toFile());
+    public void restoreFile(@NotNull Path pathToFile, @NotNull ObjectId fileHash) throws IOException {
+        Files.deleteIfExists(pathToFile);
+        switch (restoreMode) {
+            case COPY:
+                copyObject(pathToFile, fileHash);
+                break;
+            case LINK:
+                linkObject(pathToFile, fileHash);
+                break;
+            default:
+                transferObject(pathToFile, fileHash);
+        }
+    }
+
+    /**
+     * Копирование раскодированного объекта в файл потоком.
+     * @param pathToFile путь к файлу.
+     * @param fileHash хеш объекта.
+     * @throws IOException исключение, если возникли проблемы с чтением объекта или записью файла.
+     */
+    private void copyObject(@NotNull Path pathToFile, @NotNull ObjectId fileHash) throws IOException {
+        try (InputStream input = openObject(fileHash)) {
+            Files.copy(input, pathToFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Копирование объекта в файл. Объект, записанный без сжатия, копируется через FileChannel.transferTo,
+     * без чтения в память. Остальные объекты раскодируются потоком.
+     * @param pathToFile путь к файлу.
+     * @param fileHash хеш объекта.
+     * @throws IOException исключение, если возникли проблемы с чтением объекта или записью файла.
+     */
+    private void transferObject(@NotNull Path pathToFile, @NotNull ObjectId fileHash) throws IOException {
+        FileChannel object;
+        try {
+            object = FileChannel.open(getObjectPath(fileHash), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            copyObject(pathToFile, fileHash);
+            return;
+        }
+
+        try (FileChannel channel = object) {
+            ByteBuffer id = ByteBuffer.allocate(1);
+            if (channel.read(id, 0) != 1) {
+                throw new IOException("Object " + fileHash + " is empty");
+            }
+
+            if (id.get(0) == IdentityCodec.ID) {
+                try (FileChannel file = FileChannel.open(pathToFile, StandardOpenOption.WRITE,
+                                                         StandardOpenOption.CREATE_NEW)) {
+                    long position = 1;
+                    long size = channel.size();
+                    while (position < size) {
+                        position += channel.transferTo(position, size - position, file);
+                    }
+                }
+
+                return;
+            }
+
+            channel.position(1);
+            InputStream encoded = new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE);
+            try (InputStream input = ObjectCodec.forId(id.get(0)).decode(encoded)) {
+                Files.copy(input, pathToFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * Создание файла жесткой ссылкой на раскодированную копию объекта. Ссылка создается, только если на
+     * копию не ссылается ни один файл рабочей папки, поэтому файлы с одинаковым содержимым не делят одно
+     * место на диске. Изменение файла на месте меняет и копию, поэтому перед повторным использованием
+     * копия сверяется с хешом объекта и при расхождении создается заново. Если на копию уже есть ссылка
+     * или файловая система не поддерживает ссылки, объект копируется в файл как в TRANSFER.
+     * @param pathToFile путь к файлу.
+     * @param fileHash хеш объекта.
+     * @throws IOException исключение, если возникли проблемы с чтением объекта или записью файла.
+     */
+    private void linkObject(@NotNull Path pathToFile, @NotNull ObjectId fileHash) throws IOException {
+        Path pathToRawObject = getRawObjectPath(fileHash);
+        try {
+            boolean isRawObjectExists = Files.isRegularFile(pathToRawObject);
+            if (!isRawObjectExists || getLinkCount(pathToRawObject) == 1) {
+                if (!isRawObjectExists || !isRawObjectValid(pathToRawObject, fileHash)) {
+                    writeRawObject(pathToRawObject, fileHash);
+                }
+
+                synchronized (rawObjectsLock) {
+                    if (getLinkCount(pathToRawObject) == 1) {
+                        Files.createLink(pathToFile, pathToRawObject);
+                        return;
+                    }
+                }
+            }
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            logger.debug("Cannot link " + pathToFile + ", copying it: " + e.getMessage());
+        }
+
+        transferObject(pathToFile, fileHash);
+    }
+
+    /**
+     * Запись раскодированной копии объекта. Старая копия заменяется атомарно, поэтому файлы, которые
+     * ссылались на нее, остаются без изменений.
+     * @param pathToRawObject путь к копии объекта.
+     * @param fileHash хеш объекта.
+     * @throws IOException исключение, если возникли проблемы с чтением объекта или записью копии.
+     */
+    private void writeRawObject(@NotNull Path pathToRawObject, @NotNull ObjectId fileHash) throws IOException {
+        Files.createDirectories(pathToRawObject.getParent());
+        Path temporaryObject = Files.createTempFile(pathToRawObject.getParent(), TEMPORARY_PREFIX, null);
+        try {
+            Files.delete(temporaryObject);
+            transferObject(temporaryObject, fileHash);
+            Files.move(temporaryObject, pathToRawObject, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporaryObject);
+            throw e;
+        }
+    }
+
+    /**
+     * Проверка, что раскодированную копию объекта не меняли через ссылавшийся на нее файл.
+     * @param pathToRawObject путь к копии объекта.
+     * @param fileHash хеш объекта.
+     * @return true, если хеш содержимого копии совпадает с хешом объекта, иначе false.
+     * @throws IOException исключение, если не удалось прочитать копию.
+     */
+    private static boolean isRawObjectValid(@NotNull Path pathToRawObject, @NotNull ObjectId fileHash)
+                                            throws IOException {
+        try (InputStream input = Files.newInputStream(pathToRawObject)) {
+            return ObjectId.fromBytes(DigestUtils.sha1(input)).equals(fileHash);
+        }
+    }
+
+    /**
+     * Получение числа жестких ссылок на файл.
+     * @param path путь к файлу.
+     * @return число ссылок.
+     * @throws IOException исключение, если не удалось прочитать атрибуты файла.
+     * @throws UnsupportedOperationException исключение, если файловая система не хранит число ссылок.
+     */
+    private static int getLinkCount(@NotNull Path path) throws IOException {
+        return (Integer) Files.getAttribute(path, "unix:nlink", LinkOption.NOFOLLOW_LINKS);
+    }
+
+    @NotNull
+    @Override
+    public InputStream openObject(@NotNull ObjectId hash) throws IOException {
+        InputStream input = new BufferedInputStream(Files.newInputStream(getObjectPath(hash)), BUFFER_SIZE);
+        int id = input.read();
+        if (id == -1) {
+            input.close();
+            throw new IOException("Object " + hash + " is empty");
+        }
+
+        try {
+            return ObjectCodec.forId((byte) id).decode(input);
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
     }
 
     @Override
     public void storeObject(@NotNull VcsObjectWithHash object) throws IOException {
-        Files.write(getObjectsPath().resolve(object.getHash()), object.getContent());
+        storeLooseObject(object);
     }
 
+    /**
+     * Сохранение объекта отдельным файлом, если его еще нет. Метод не переопределяется, поэтому его можно
+     * вызывать при обновлении репозитория из конструктора.
+     * @param object сохраняемый объект.
+     * @throws IOException исключение, если возникли проблемы с записью.
+     */
+    private void storeLooseObject(@NotNull VcsObjectWithHash object) throws IOException {
+        if (object.getHash() != null && Files.exists(getObjectPath(object.getHash()))) {
+            return;
+        }
+
+        try (InputStream input = object.getContentStream()) {
+            Path temporaryObject = writeTemporaryObject(input);
+            moveObject(temporaryObject, object.getHash());
+        }
+    }
+
+    @NotNull
     @Override
-    public void storeReference(@NotNull String name, @NotNull String commitHash) throws IOException {
+    public ObjectId storeBlob(@NotNull Path pathToFile) throws IOException {
+        MessageDigest digest = DigestUtils.getSha1Digest();
+        try (InputStream input = new DigestInputStream(Files.newInputStream(pathToFile), digest)) {
+            Path temporaryObject = writeTemporaryObject(input);
+            ObjectId hash = ObjectId.fromBytes(digest.digest());
+            moveObject(temporaryObject, hash);
+            logger.debug("Stored file " + pathToFile + " with hash " + hash);
+
+            return hash;
+        }
+    }
+
+    /**
+     * Копирование содержимого объекта во временный файл в папке объектов блоками фиксированного размера.
+     * @param input поток с содержимым объекта.
+     * @return путь к временному файлу.
+     * @throws IOException исключение, если возникли проблемы с вводом/выводом.
+     */
+    private @NotNull Path writeTemporaryObject(@NotNull InputStream input) throws IOException {
+        Path temporaryObject = Files.createTempFile(getObjectsPath(), TEMPORARY_PREFIX, null);
+        try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(temporaryObject), BUFFER_SIZE)) {
+            file.write(codec.getId());
+            OutputStream output = codec.encode(file);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int length;
+            while ((length = input.read(buffer)) != -1) {
+                output.write(buffer, 0, length);
+            }
+            output.close();
+        } catch (IOException e) {
+            Files.deleteIfExists(temporaryObject);
+            throw e;
+        }
+
+        return temporaryObject;
+    }
+
+    /**
+     * Атомарное переименование временного файла в объект с данным хешом. Так объект никогда не бывает
+     * записан частично, даже если его одновременно сохраняют несколько потоков.
+     * @param temporaryObject путь к временному файлу.
+     * @param hash хеш объекта.
+     * @throws IOException исключение, если возникли проблемы с вводом/выводом.
+     */
+    private void moveObject(@NotNull Path temporaryObject, @NotNull ObjectId hash) throws IOException {
+        Files.createDirectories(getObjectPath(hash).getParent());
+        Files.move(temporaryObject, getObjectPath(hash), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void storeReference(@NotNull String name, @NotNull ObjectId commitHash) throws IOException {
         Path pathToRef = getReferencesPath().resolve(name);
         if (!pathToRef.toFile().exists()) {
             pathToRef.toFile().createNewFile();
         }
 
-        Files.write(pathToRef, commitHash.getBytes());
+        Files.write(pathToRef, commitHash.toHex().getBytes());
     }
 
     /**
@@ -167,29 +944,36 @@ public class Filesystem implements Datastore {
      */
     @NotNull
     @Override
-    public Commit getCommitByHash(@NotNull String commitHash) throws IOException, ClassNotFoundException {
-        byte[] content = Files.readAllBytes(getObjectsPath().resolve(commitHash));
+    public Commit getCommitByHash(@NotNull ObjectId commitHash) throws IOException, ClassNotFoundException {
+        byte[] content = readObject(commitHash);
 
         return new Commit(content, commitHash);
     }
 
     @Override
-    public @NotNull VcsTree getTreeByHash(@NotNull String treeHash) throws IOException, ClassNotFoundException {
-        byte[] content = Files.readAllBytes(getObjectsPath().resolve(treeHash));
+    public @NotNull VcsTree getTreeByHash(@NotNull ObjectId treeHash) throws IOException, ClassNotFoundException {
+        byte[] content = readObject(treeHash);
 
-        return new VcsTree(treeHash, content);
+        return new VcsTree(treeHash, content, this);
     }
 
-    @NotNull
-    @Override
-    public String getReferenceCommitHash(@NotNull String referenceName) throws IOException {
-        return Utils.getFirstLine(getReferencesPath().resolve(referenceName));
+    /**
+     * Чтение раскодированного содержимого объекта целиком.
+     * @param hash хеш объекта.
+     * @return содержимое объекта.
+     * @throws IOException исключение, если возникли проблемы с чтением файла.
+     */
+    private @NotNull byte[] readObject(@NotNull ObjectId hash) throws IOException {
+        try (InputStream input = openObject(hash)) {
+            return IOUtils.toByteArray(input);
+        }
     }
 
     @NotNull
     @Override
-    public FilesTree getFilesTree(@NotNull HashSet<String> excludeFiles) throws NoRootDirectoryExistsException {
-        return new FilesTree(rootDirectory.getParent(), excludeFiles);
+    public ObjectId getReferenceCommitHash(@NotNull String referenceName) throws IOException {
+        String commitHash = Utils.getFirstLine(getReferencesPath().resolve(referenceName));
+        return commitHash.isEmpty() ? null : ObjectId.fromHex(commitHash);
     }
 
     /**
@@ -200,6 +984,14 @@ public class Filesystem implements Datastore {
         return rootDirectory.resolve(INDEX_FILE);
     }
 
+    /**
+     * Получение ссылки на файл-блокировку index.
+     * @return путь к файлу-блокировке index.
+     */
+    private @NotNull Path getIndexLockPath() {
+        return rootDirectory.resolve(INDEX_LOCK_FILE);
+    }
+
     /**
      * Получение ссылки на папку, где хранятся все объекты.
      * @return путь к папке объектов.
@@ -208,6 +1000,29 @@ public class Filesystem implements Datastore {
         return rootDirectory.resolve(OBJECTS_FOLDER);
     }
 
+    /**
+     * Получение ссылки на файл объекта. Объекты разложены по папкам с именами из первых двух
+     * символов хеша, чтобы ни в одной папке не было слишком много файлов.
+     * @param hash хеш объекта.
+     * @return путь к файлу объекта.
+     */
+    public @NotNull Path getObjectPath(@NotNull ObjectId hash) {
+        String name = hash.toHex();
+        return getObjectsPath().resolve(name.substring(0, FANOUT_LENGTH)).resolve(name.substring(FANOUT_LENGTH));
+    }
+
+    /**
+     * Получение ссылки на раскодированную копию объекта, на которую ссылаются файлы при способе
+     * восстановления LINK. Копии разложены по папкам так же, как объекты.
+     * @param hash хеш объекта.
+     * @return путь к копии объекта.
+     */
+    public @NotNull Path getRawObjectPath(@NotNull ObjectId hash) {
+        String name = hash.toHex();
+        return rootDirectory.resolve(RAW_OBJECTS_FOLDER).resolve(name.substring(0, FANOUT_LENGTH))
+                            .resolve(name.substring(FANOUT_LENGTH));
+    }
+
     /**
      * Получение ссылки на папку, где хранятся все ветки.
      * @return путь к папке ссылок.
@@ -241,14 +1056,21 @@ public class Filesystem implements Datastore {
     }
 
     /**
-     * Чтение файла index, отвечающий за состояние репозитория.
+     * Чтение файла index, отвечающий за состояние репозитория. Файл в двоичном формате отображается в память
+     * и не разбирается заранее. Файл в старом текстовом формате читается целиком и будет перезаписан
+     * в двоичном формате при следующем обновлении.
      * @throws IOException исключение, если возникли проблемы с чтением файла.
      */
     @Override
-    public @NotNull Map<Path, String> readIndex() throws IOException {
+    public @NotNull Index readIndex() throws IOException {
         logger.debug("Reading index file");
 
-        Map<Path, String> index = new HashMap<>();
+        Path pathToIndex = getIndexPath();
+        if (IndexFile.isIndexFile(pathToIndex)) {
+            return new Index(IndexFile.open(pathToIndex));
+        }
+
+        Index index = new Index();
         BufferedReader reader = new BufferedReader(new FileReader(getIndexPath().toFile()));
         String line;
         while ((line = reader.readLine()) != null) {
@@ -257,8 +1079,16 @@ public class Filesystem implements Datastore {
             }
             String[] pathToFileWithHash = line.split(" ");
             Path pathToFile = Paths.get(pathToFileWithHash[0]);
-            String hash = pathToFileWithHash[1];
-            index.put(pathToFile, hash);
+            ObjectId hash = ObjectId.fromHex(pathToFileWithHash[1]);
+            if (pathToFileWithHash.length < 5) {
+                index.put(pathToFile, new IndexEntry(hash));
+                continue;
+            }
+
+            long size = Long.parseLong(pathToFileWithHash[2]);
+            long modificationTime = Long.parseLong(pathToFileWithHash[3]);
+            String fileKey = pathToFileWithHash[4].equals(NO_FILE_KEY) ? null : pathToFileWithHash[4];
+            index.put(pathToFile, new IndexEntry(hash, size, modificationTime, fileKey));
         }
 
         logger.debug("Reading index is complete");
@@ -268,59 +1098,63 @@ public class Filesystem implements Datastore {
 
 
     /**
-     * Добавление в корневую папку дополнительную структуру файлов. Если добавляется файл с таким же именем,
-     * то он перезапишется сверх предыдущего.
-     * @param vcsTree в этом объекте хранится вся структура файлов и папок.
-     * @param root корневой путь, куда нужно добавить дерево
+     * Сохранение изменений в файл index.
      * @throws IOException исключение, если возникли проблемы с чтением файла.
      */
     @Override
-    public void addTree(@NotNull VcsTree vcsTree, @NotNull Path root) throws IOException {
-        logger.debug("Adding tree with hash " + vcsTree.getHash() + " to " + root);
-        for (ObjectWithName<Blob> file : vcsTree.getBlobFiles()) {
-            Blob blob = file.getContent();
-            Path fileName = Paths.get(file.getName());
-
-            byte[] content = Files.readAllBytes(getObjectsPath().resolve(blob.getHash()));
-            if (!fileName.toFile().exists()) {
-                fileName.toFile().createNewFile();
-            } else {
-                if (!Arrays.equals(Files.readAllBytes(fileName), content)) {
-                    System.out.println("File with name : " + fileName + " has overwritten");
-                }
-            }
-
-            writeContent(fileName, content);
+    public void updateIndex(@NotNull Index index) throws IOException {
+        beginIndexUpdate();
+        try {
+            commitIndexUpdate(index);
+        } catch (IOException e) {
+            abortIndexUpdate();
+            throw e;
         }
+    }
 
-        for (VcsTree subVcsTree : vcsTree.getVcsTreeFiles()) {
-            Path treeDirectory = root.resolve(subVcsTree.getPrefix());
-            if (!treeDirectory.toFile().exists()) {
-                Files.createDirectory(treeDirectory);
-            }
-            addTree(subVcsTree, treeDirectory);
-        }
+    /**
+     * Начало изменения index: создание файла-блокировки. Пока блокировка существует, другие процессы
+     * не могут изменять index.
+     * @throws IOException исключение, если index уже заблокирован или не удалось создать блокировку.
+     */
+    @Override
+    public void beginIndexUpdate() throws IOException {
+        logger.debug("Locking index file");
+        Files.createFile(getIndexLockPath());
     }
 
     /**
-     * Сохранение изменений в файл index.
-     * @throws IOException исключение, если возникли проблемы с чтением файла.
+     * Фиксация изменений index: запись в файл-блокировку и атомарная замена им файла index.
+     * @param index новое состояние index.
+     * @throws IOException исключение, если возникли проблемы с записью файла.
      */
     @Override
-    public void updateIndex(@NotNull Map<Path, String> index) throws IOException {
+    public void commitIndexUpdate(@NotNull Index index) throws IOException {
         logger.debug("Updating index file");
+        IndexFile.write(getIndexLockPath(), index, index.getTreeHashes());
+        Files.move(getIndexLockPath(), getIndexPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
 
-        try (FileWriter fileWriter = new FileWriter(getIndexPath().toFile());
-             BufferedWriter bufferedWriter = new BufferedWriter(fileWriter)) {
+        logger.debug("Updating index is complete");
+    }
 
-            for (Map.Entry<Path, String> entry : index.entrySet()) {
-                String line = entry.getKey().toString() + " " + entry.getValue();
-                bufferedWriter.write(line);
-                bufferedWriter.newLine();
-            }
-        }
+    /**
+     * Отмена изменения index: удаление файла-блокировки, index остается прежним.
+     * @throws IOException исключение, если не удалось удалить блокировку.
+     */
+    @Override
+    public void abortIndexUpdate() throws IOException {
+        logger.debug("Unlocking index file without changes");
+        Files.deleteIfExists(getIndexLockPath());
+    }
 
-        logger.debug("Updating index is complete");
+    /**
+     * Объекты хранятся только отдельными файлами, поэтому упаковывать нечего.
+     * @throws IOException не выбрасывается, нужно для реализаций с pack-файлами.
+     */
+    @Override
+    public void repack() throws IOException {
+        logger.debug("Loose objects only, nothing to repack");
     }
 
     /**
@@ -331,12 +1165,12 @@ public class Filesystem implements Datastore {
      * @throws NotRegularFileException исключение, если ожидали файл, а получили директорию.
      * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
      */
-    public void clean(@NotNull HashSet<String> untrackedFiles) throws ClassNotFoundException, NotRegularFileException,
+    public void clean(@NotNull List<String> untrackedFiles) throws ClassNotFoundException, NotRegularFileException,
             NoRootDirectoryExistsException, IOException {
         logger.debug("Cleaning repository");
 
         for (String path : untrackedFiles) {
-            File file = rootDirectory.getParent().resolve(path).toFile();
+            File file = Paths.get(path).toFile();
             if (file.isDirectory()) {
                 FileUtils.deleteDirectory(file);
             } else {
@@ -0,0 +1,31 @@
+package ru.spbau.shavkunov.vcs.data;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Хранение объектов без сжатия.
+ */
+public class IdentityCodec implements ObjectCodec {
+    /**
+     * Идентификатор способа кодирования.
+     */
+    public static final byte ID = 0;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public @NotNull OutputStream encode(@NotNull OutputStream output) {
+        return output;
+    }
+
+    @Override
+    public @NotNull InputStream decode(@NotNull InputStream input) {
+        return input;
+    }
+}
@@ -0,0 +1,351 @@
+package ru.spbau.shavkunov.vcs.data;
+
+import org.apache.commons.io.IOUtils;
+import org.jetbrains.annotations.NotNull;
+import ru.spbau.shavkunov.vcs.primitives.Index;
+import ru.spbau.shavkunov.vcs.primitives.IndexEntry;
+import ru.spbau.shavkunov.vcs.primitives.ObjectId;
+import ru.spbau.shavkunov.vcs.primitives.ObjectWithName;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Двоичный формат файла index, который читается через отображение файла в память.
+ *
+ * Формат: заголовок (сигнатура, версия, число записей, контрольная сумма остальной части файла),
+ * таблица смещений записей и сами записи, отсортированные по пути в порядке байт UTF-8.
+ * Запись состоит из длины пути и пути в UTF-8, 20 байт хеша, размера, времени изменения,
+ * длины идентификатора файла и самого идентификатора.
+ *
+ * После записей может идти расширение с хешами деревьев папок: сигнатура расширения, число папок
+ * и записи из длины пути папки, пути в UTF-8 (пустого для корня) и 20 байт хеша дерева, отсортированные
+ * по пути. Контрольная сумма покрывает и расширение, а файлы без него читаются как прежде.
+ */
+public class IndexFile {
+    /**
+     * Сигнатура файла.
+     */
+    private static final byte[] SIGNATURE = {'V', 'I', 'D', 'X'};
+
+    /**
+     * Версия формата.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Размер заголовка в байтах.
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * Максимальная длина пути или ключа файла в байтах: длина записывается в два байта.
+     */
+    private static final int MAX_STRING_LENGTH = 0xFFFF;
+
+    /**
+     * Сигнатура расширения с хешами деревьев папок.
+     */
+    private static final byte[] TREE_EXTENSION = {'T', 'R', 'E', 'E'};
+
+    /**
+     * Содержимое файла.
+     */
+    private @NotNull ByteBuffer buffer;
+
+    /**
+     * Количество записей.
+     */
+    private int size;
+
+    /**
+     * Чтение файла index.
+     * @param buffer содержимое файла.
+     * @throws IOException исключение, если файл поврежден или имеет неизвестную версию.
+     */
+    private IndexFile(@NotNull ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported index version " + buffer.getInt(4));
+        }
+
+        size = buffer.getInt(8);
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(HEADER_SIZE);
+        crc.update(body);
+        if ((int) crc.getValue() != buffer.getInt(12)) {
+            throw new IOException("Index file is corrupted");
+        }
+    }
+
+    /**
+     * Проверка, записан ли файл в двоичном формате.
+     * @param pathToIndex путь к файлу index.
+     * @return true, если файл начинается с сигнатуры формата, иначе false.
+     * @throws IOException исключение, если возникли проблемы с чтением файла.
+     */
+    public static boolean isIndexFile(@NotNull Path pathToIndex) throws IOException {
+        try (InputStream input = Files.newInputStream(pathToIndex)) {
+            byte[] signature = new byte[SIGNATURE.length];
+            return IOUtils.read(input, signature) == SIGNATURE.length && Arrays.equals(signature, SIGNATURE);
+        }
+    }
+
+    /**
+     * Отображение файла index в память.
+     * @param pathToIndex путь к файлу index.
+     * @return прочитанный файл.
+     * @throws IOException исключение, если возникли проблемы с чтением файла или файл поврежден.
+     */
+    public static @NotNull IndexFile open(@NotNull Path pathToIndex) throws IOException {
+        try (FileChannel channel = FileChannel.open(pathToIndex, StandardOpenOption.READ)) {
+            return new IndexFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Получение количества записей.
+     * @return количество записей в файле.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Получение смещения записи.
+     * @param position номер записи.
+     * @return смещение записи от начала файла.
+     */
+    private int getOffset(int position) {
+        return buffer.getInt(HEADER_SIZE + 4 * position);
+    }
+
+    /**
+     * Получение пути записи.
+     * @param position номер записи.
+     * @return путь к файлу.
+     */
+    public @NotNull String getPath(int position) {
+        int offset = getOffset(position);
+        byte[] path = new byte[buffer.getShort(offset) & 0xFFFF];
+        ByteBuffer entry = buffer.duplicate();
+        entry.position(offset + 2);
+        entry.get(path);
+
+        return new String(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Получение записи.
+     * @param position номер записи.
+     * @return запись файла index.
+     */
+    public @NotNull IndexEntry getEntry(int position) {
+        ByteBuffer entry = buffer.duplicate();
+        int offset = getOffset(position);
+        int hashOffset = offset + 2 + (buffer.getShort(offset) & 0xFFFF);
+        entry.position(hashOffset + ObjectId.SIZE);
+
+        ObjectId hash = ObjectId.fromBuffer(buffer, hashOffset);
+        long fileSize = entry.getLong();
+        long modificationTime = entry.getLong();
+        byte[] fileKey = new byte[entry.getShort() & 0xFFFF];
+        entry.get(fileKey);
+
+        return new IndexEntry(hash, fileSize, modificationTime,
+                              fileKey.length == 0 ? null : new String(fileKey, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Получение смещения конца записи.
+     * @param position номер записи.
+     * @return смещение первого байта после записи.
+     */
+    private int getEntryEnd(int position) {
+        int offset = getOffset(position);
+        int keyOffset = offset + 2 + (buffer.getShort(offset) & 0xFFFF) + ObjectId.SIZE + 8 + 8;
+        return keyOffset + 2 + (buffer.getShort(keyOffset) & 0xFFFF);
+    }
+
+    /**
+     * Чтение хешей деревьев папок из расширения файла.
+     * @return хеши деревьев по путям папок, пустые, если расширения нет.
+     */
+    public @NotNull TreeMap<String, ObjectId> getTreeHashes() {
+        TreeMap<String, ObjectId> treeHashes = new TreeMap<>(Index.PATH_ORDER);
+        int extensionOffset = size == 0 ? HEADER_SIZE : getEntryEnd(size - 1);
+        if (buffer.capacity() < extensionOffset + TREE_EXTENSION.length + 4) {
+            return treeHashes;
+        }
+
+        ByteBuffer extension = buffer.duplicate();
+        extension.position(extensionOffset);
+        byte[] signature = new byte[TREE_EXTENSION.length];
+        extension.get(signature);
+        if (!Arrays.equals(signature, TREE_EXTENSION)) {
+            return treeHashes;
+        }
+
+        int count = extension.getInt();
+        for (int i = 0; i < count; i++) {
+            byte[] path = new byte[extension.getShort() & 0xFFFF];
+            extension.get(path);
+            treeHashes.put(new String(path, StandardCharsets.UTF_8), ObjectId.fromBuffer(buffer, extension.position()));
+            extension.position(extension.position() + ObjectId.SIZE);
+        }
+
+        return treeHashes;
+    }
+
+    /**
+     * Двоичный поиск записи по пути.
+     * @param path путь к файлу.
+     * @return номер записи или -1, если такого пути нет.
+     */
+    public int find(@NotNull String path) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int left = 0;
+        int right = size - 1;
+        while (left <= right) {
+            int middle = (left + right) >>> 1;
+            int comparison = compareWithPath(middle, key);
+            if (comparison < 0) {
+                left = middle + 1;
+            } else if (comparison > 0) {
+                right = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Сравнение пути записи с данным без декодирования строки.
+     * @param position номер записи.
+     * @param key путь в UTF-8.
+     * @return результат сравнения пути записи с key.
+     */
+    private int compareWithPath(int position, @NotNull byte[] key) {
+        int offset = getOffset(position);
+        int length = buffer.getShort(offset) & 0xFFFF;
+        for (int i = 0; i < Math.min(length, key.length); i++) {
+            int difference = (buffer.get(offset + 2 + i) & 0xFF) - (key[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+
+        return length - key.length;
+    }
+
+    /**
+     * Запись файла index без хешей деревьев папок.
+     * @param pathToIndex путь к файлу, куда записывается index.
+     * @param entries записи, отсортированные по пути.
+     * @throws IOException исключение, если возникли проблемы с записью файла.
+     */
+    public static void write(@NotNull Path pathToIndex, @NotNull Iterable<ObjectWithName<IndexEntry>> entries)
+                             throws IOException {
+        write(pathToIndex, entries, new TreeMap<>());
+    }
+
+    /**
+     * Запись файла index. Файл, который может быть отображен в память, нельзя перезаписывать на месте,
+     * поэтому записывать следует во временный файл и затем атомарно переименовывать его.
+     * @param pathToIndex путь к файлу, куда записывается index.
+     * @param entries записи, отсортированные по пути.
+     * @param treeHashes хеши деревьев папок, отсортированные по пути папки.
+     * @throws IOException исключение, если возникли проблемы с записью файла.
+     */
+    public static void write(@NotNull Path pathToIndex, @NotNull Iterable<ObjectWithName<IndexEntry>> entries,
+                             @NotNull SortedMap<String, ObjectId> treeHashes) throws IOException {
+        ArrayList<Integer> offsets = new ArrayList<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(body);
+
+        for (ObjectWithName<IndexEntry> entry : entries) {
+            offsets.add(output.size());
+            IndexEntry indexEntry = entry.getContent();
+            byte[] path = entry.getName().getBytes(StandardCharsets.UTF_8);
+            byte[] fileKey = indexEntry.getFileKey() == null ? new byte[0]
+                                                             : indexEntry.getFileKey().getBytes(StandardCharsets.UTF_8);
+
+            writeString(output, path);
+            output.write(indexEntry.getHash().toBytes());
+            output.writeLong(indexEntry.getSize());
+            output.writeLong(indexEntry.getModificationTime());
+            writeString(output, fileKey);
+        }
+
+        if (!treeHashes.isEmpty()) {
+            output.write(TREE_EXTENSION);
+            output.writeInt(treeHashes.size());
+            for (Map.Entry<String, ObjectId> treeHash : treeHashes.entrySet()) {
+                byte[] path = treeHash.getKey().getBytes(StandardCharsets.UTF_8);
+                writeString(output, path);
+                output.write(treeHash.getValue().toBytes());
+            }
+        }
+
+        output.flush();
+        int entriesOffset = HEADER_SIZE + 4 * offsets.size();
+        ByteBuffer table = ByteBuffer.allocate(4 * offsets.size());
+        for (int offset : offsets) {
+            table.putInt(entriesOffset + offset);
+        }
+
+        byte[] content = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(table.array());
+        crc.update(content);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(SIGNATURE);
+        header.putInt(VERSION);
+        header.putInt(offsets.size());
+        header.putInt((int) crc.getValue());
+        header.flip();
+        table.flip();
+
+        try (FileChannel channel = FileChannel.open(pathToIndex, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] buffers = {header, table, ByteBuffer.wrap(content)};
+            while (buffers[2].hasRemaining()) {
+                channel.write(buffers);
+            }
+        }
+    }
+
+    /**
+     * Запись строки вместе с ее длиной. Длина хранится в двух байтах, поэтому более длинные строки
+     * не записываются, иначе index был бы испорчен.
+     * @param output поток, куда записывается строка.
+     * @param string строка в UTF-8.
+     * @throws IOException исключение, если строка слишком длинная или возникли проблемы с записью.
+     */
+    private static void writeString(@NotNull DataOutputStream output, @NotNull byte[] string) throws IOException {
+        if (string.length > MAX_STRING_LENGTH) {
+            throw new IOException("Path is too long to be stored in index: " + string.length + " bytes");
+        }
+
+        output.writeShort(string.length);
+        output.write(string);
+    }
+}
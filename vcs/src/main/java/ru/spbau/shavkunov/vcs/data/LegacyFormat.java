@@ -0,0 +1,297 @@
+package ru.spbau.shavkunov.vcs.data;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+
+/**
+ * Чтение коммитов и деревьев, которые версии 1 и 2 сохраняли стандартной сериализацией Java. Коммит
+ * состоял только из стандартных классов, а дерево -- из классов, которые с тех пор изменились. Поэтому
+ * вместо них подставляются классы с теми же полями, что были у старых классов.
+ */
+public class LegacyFormat {
+    /**
+     * Классы с полями старых классов по именам старых классов.
+     */
+    private static final @NotNull HashMap<String, Class<?>> LEGACY_CLASSES = new HashMap<>();
+
+    static {
+        LEGACY_CLASSES.put("ru.spbau.shavkunov.vcs.primitives.VcsObjectWithHash", LegacyObject.class);
+        LEGACY_CLASSES.put("ru.spbau.shavkunov.vcs.primitives.Blob", LegacyBlob.class);
+        LEGACY_CLASSES.put("ru.spbau.shavkunov.vcs.primitives.ObjectWithName", LegacyObjectWithName.class);
+        LEGACY_CLASSES.put("ru.spbau.shavkunov.vcs.trees.VcsTree", LegacyTree.class);
+    }
+
+    private LegacyFormat() {}
+
+    /**
+     * Чтение коммита старого формата.
+     * @param content содержимое объекта.
+     * @return прочитанный коммит.
+     * @throws IOException исключение, если содержимое не является коммитом старого формата.
+     */
+    @SuppressWarnings("unchecked")
+    public static @NotNull LegacyCommit readCommit(@NotNull byte[] content) throws IOException {
+        try (ObjectInputStream input = new LegacyInputStream(content)) {
+            LegacyCommit commit = new LegacyCommit();
+            commit.date = (Date) input.readObject();
+            commit.author = (String) input.readObject();
+            commit.message = (String) input.readObject();
+            commit.treeHash = (String) input.readObject();
+            commit.parentCommits = (ArrayList<String>) input.readObject();
+
+            return commit;
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Object is not a commit of the old format", e);
+        }
+    }
+
+    /**
+     * Чтение дерева старого формата вместе со всеми поддеревьями.
+     * @param content содержимое объекта.
+     * @return прочитанное дерево.
+     * @throws IOException исключение, если содержимое не является деревом старого формата.
+     */
+    @SuppressWarnings("unchecked")
+    public static @NotNull LegacyTree readTree(@NotNull byte[] content) throws IOException {
+        try (ObjectInputStream input = new LegacyInputStream(content)) {
+            LegacyTree tree = new LegacyTree();
+            tree.blobFiles = (ArrayList<LegacyObjectWithName>) input.readObject();
+            tree.vcsTreeFiles = (ArrayList<LegacyTree>) input.readObject();
+            tree.prefix = (String) input.readObject();
+
+            return tree;
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Object is not a tree of the old format", e);
+        }
+    }
+
+    /**
+     * Поток чтения, который заменяет описания старых классов описаниями классов с теми же полями. Порядок
+     * полей в потоке определяется их именами и типами, поэтому данные читаются без изменений.
+     */
+    private static class LegacyInputStream extends ObjectInputStream {
+        /**
+         * Создание потока.
+         * @param content сериализованные данные.
+         * @throws IOException исключение, если данные не начинаются с заголовка сериализации.
+         */
+        LegacyInputStream(@NotNull byte[] content) throws IOException {
+            super(new ByteArrayInputStream(content));
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            ObjectStreamClass descriptor = super.readClassDescriptor();
+            Class<?> legacyClass = LEGACY_CLASSES.get(descriptor.getName());
+            if (legacyClass == null) {
+                return descriptor;
+            }
+
+            ObjectStreamClass legacyDescriptor = ObjectStreamClass.lookup(legacyClass);
+            if (legacyDescriptor.getFields().length != descriptor.getFields().length) {
+                throw new InvalidClassException(descriptor.getName(), "unexpected fields of the old class");
+            }
+
+            return legacyDescriptor;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass descriptor) throws IOException, ClassNotFoundException {
+            for (Class<?> legacyClass : LEGACY_CLASSES.values()) {
+                if (legacyClass.getName().equals(descriptor.getName())) {
+                    return legacyClass;
+                }
+            }
+
+            return super.resolveClass(descriptor);
+        }
+    }
+
+    /**
+     * Коммит старого формата.
+     */
+    public static class LegacyCommit {
+        /**
+         * Дата коммита.
+         */
+        private @NotNull Date date;
+
+        /**
+         * Автор коммита.
+         */
+        private @NotNull String author;
+
+        /**
+         * Сообщение коммита.
+         */
+        private @NotNull String message;
+
+        /**
+         * Хеш дерева коммита.
+         */
+        private @NotNull String treeHash;
+
+        /**
+         * Хеши родительских коммитов.
+         */
+        private @NotNull ArrayList<String> parentCommits;
+
+        /**
+         * Получение даты коммита.
+         * @return дата коммита.
+         */
+        public @NotNull Date getDate() {
+            return date;
+        }
+
+        /**
+         * Получение автора коммита.
+         * @return автор коммита.
+         */
+        public @NotNull String getAuthor() {
+            return author;
+        }
+
+        /**
+         * Получение сообщения коммита.
+         * @return сообщение коммита.
+         */
+        public @NotNull String getMessage() {
+            return message;
+        }
+
+        /**
+         * Получение хеша дерева коммита.
+         * @return хеш дерева.
+         */
+        public @NotNull String getTreeHash() {
+            return treeHash;
+        }
+
+        /**
+         * Получение хешей родительских коммитов.
+         * @return хеши родителей.
+         */
+        public @NotNull ArrayList<String> getParentCommits() {
+            return parentCommits;
+        }
+    }
+
+    /**
+     * Поля старого базового класса объектов.
+     */
+    private static abstract class LegacyObject implements Serializable {
+        /**
+         * Хеш объекта.
+         */
+        protected @Nullable String hash;
+    }
+
+    /**
+     * Поля старого класса файла.
+     */
+    private static class LegacyBlob extends LegacyObject {
+        /**
+         * Путь к файлу.
+         */
+        private @NotNull String pathToFile;
+    }
+
+    /**
+     * Поля старого класса объекта с именем.
+     */
+    public static class LegacyObjectWithName implements Serializable {
+        /**
+         * Сам объект.
+         */
+        private @NotNull Object object;
+
+        /**
+         * Имя объекта.
+         */
+        private @NotNull String name;
+
+        /**
+         * Получение имени файла.
+         * @return путь к файлу.
+         */
+        public @NotNull String getName() {
+            return name;
+        }
+
+        /**
+         * Получение хеша файла.
+         * @return хеш файла.
+         * @throws IOException исключение, если объект не является файлом.
+         */
+        public @NotNull String getHash() throws IOException {
+            if (!(object instanceof LegacyBlob) || ((LegacyBlob) object).hash == null) {
+                throw new IOException("Tree entry " + name + " is not a file");
+            }
+
+            return ((LegacyBlob) object).hash;
+        }
+    }
+
+    /**
+     * Поля старого класса дерева. Поддеревья хранились внутри дерева целиком.
+     */
+    public static class LegacyTree extends LegacyObject {
+        /**
+         * Файлы в папке.
+         */
+        private @NotNull ArrayList<LegacyObjectWithName> blobFiles;
+
+        /**
+         * Поддеревья папки.
+         */
+        private @NotNull ArrayList<LegacyTree> vcsTreeFiles;
+
+        /**
+         * Название папки.
+         */
+        private @NotNull String prefix;
+
+        /**
+         * Получение хеша дерева.
+         * @return хеш дерева или null, если он не был вычислен.
+         */
+        public @Nullable String getHash() {
+            return hash;
+        }
+
+        /**
+         * Получение файлов папки.
+         * @return файлы с их путями.
+         */
+        public @NotNull ArrayList<LegacyObjectWithName> getBlobFiles() {
+            return blobFiles;
+        }
+
+        /**
+         * Получение поддеревьев папки.
+         * @return поддеревья.
+         */
+        public @NotNull ArrayList<LegacyTree> getVcsTreeFiles() {
+            return vcsTreeFiles;
+        }
+
+        /**
+         * Получение названия папки.
+         * @return название папки.
+         */
+        public @NotNull String getPrefix() {
+            return prefix;
+        }
+    }
+}
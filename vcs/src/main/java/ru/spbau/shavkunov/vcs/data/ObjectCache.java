@@ -0,0 +1,148 @@
+package ru.spbau.shavkunov.vcs.data;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.spbau.shavkunov.vcs.primitives.ObjectId;
+import ru.spbau.shavkunov.vcs.primitives.VcsObjectWithHash;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Кеш прочитанных объектов по их хешам с вытеснением давно не использованных. Объем кеша ограничен
+ * суммарным размером закодированного содержимого объектов. Объекты с одним хешем всегда одинаковы,
+ * поэтому кешированный объект не устаревает.
+ */
+public class ObjectCache {
+    /**
+     * Логгер этого класса.
+     */
+    @NotNull
+    private static final Logger logger = LoggerFactory.getLogger(ObjectCache.class);
+
+    /**
+     * Объект в кеше вместе с его размером.
+     */
+    private static class CacheEntry {
+        private @NotNull VcsObjectWithHash object;
+        private long size;
+
+        private CacheEntry(@NotNull VcsObjectWithHash object, long size) {
+            this.object = object;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Объекты в порядке последнего обращения: первым идет давно не использованный.
+     */
+    private final @NotNull LinkedHashMap<ObjectId, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Максимальный суммарный размер объектов в байтах.
+     */
+    private final long capacity;
+
+    /**
+     * Текущий суммарный размер объектов в байтах.
+     */
+    private long size = 0;
+
+    /**
+     * Количество найденных в кеше объектов.
+     */
+    private long hits = 0;
+
+    /**
+     * Количество запросов объектов, которых не было в кеше.
+     */
+    private long misses = 0;
+
+    /**
+     * Создание пустого кеша.
+     * @param capacity максимальный суммарный размер объектов в байтах.
+     */
+    public ObjectCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Получение объекта из кеша.
+     * @param hash хеш объекта.
+     * @param type ожидаемый класс объекта.
+     * @param <T> тип объекта.
+     * @return объект или null, если его нет в кеше или он другого типа.
+     */
+    @Nullable
+    public synchronized <T extends VcsObjectWithHash> T get(@NotNull ObjectId hash, @NotNull Class<T> type) {
+        CacheEntry entry = entries.get(hash);
+        if (entry == null || !type.isInstance(entry.object)) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return type.cast(entry.object);
+    }
+
+    /**
+     * Добавление объекта в кеш. Если объем кеша превышен, вытесняются давно не использованные объекты.
+     * Объект больше всего кеша не сохраняется.
+     * @param object объект с посчитанным хешом.
+     * @param objectSize размер закодированного содержимого объекта в байтах.
+     */
+    public synchronized void put(@NotNull VcsObjectWithHash object, long objectSize) {
+        ObjectId hash = object.getHash();
+        if (hash == null || objectSize > capacity) {
+            return;
+        }
+
+        CacheEntry previous = entries.put(hash, new CacheEntry(object, objectSize));
+        if (previous != null) {
+            size -= previous.size;
+        }
+
+        size += objectSize;
+        Iterator<Map.Entry<ObjectId, CacheEntry>> iterator = entries.entrySet().iterator();
+        while (size > capacity && iterator.hasNext()) {
+            CacheEntry evicted = iterator.next().getValue();
+            size -= evicted.size;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Получение количества найденных в кеше объектов.
+     * @return количество попаданий.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Получение количества запросов объектов, которых не было в кеше.
+     * @return количество промахов.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Получение суммарного размера объектов в кеше.
+     * @return размер в байтах.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Вывод статистики кеша в лог.
+     */
+    public synchronized void logStatistics() {
+        logger.debug("Object cache: " + entries.size() + " objects, " + size + " bytes, "
+                     + hits + " hits, " + misses + " misses");
+    }
+}
@@ -0,0 +1,53 @@
+package ru.spbau.shavkunov.vcs.data;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Способ кодирования содержимого объектов в хранилище. Каждый сохраненный объект начинается с байта,
+ * по которому определяется способ, которым он был закодирован.
+ */
+public interface ObjectCodec {
+    /**
+     * Получение байта, идентифицирующего способ кодирования.
+     * @return идентификатор способа кодирования.
+     */
+    byte getId();
+
+    /**
+     * Обертка потока, в который записывается закодированное содержимое объекта.
+     * @param output поток, куда записывается объект в хранилище.
+     * @return поток, в который нужно писать исходное содержимое объекта. Его закрытие закрывает output.
+     * @throws IOException исключение, если возникли проблемы с записью.
+     */
+    @NotNull OutputStream encode(@NotNull OutputStream output) throws IOException;
+
+    /**
+     * Обертка потока, из которого читается закодированное содержимое объекта.
+     * @param input поток, из которого читается объект хранилища(без байта способа кодирования).
+     * @return поток с исходным содержимым объекта. Его закрытие закрывает input.
+     * @throws IOException исключение, если возникли проблемы с чтением.
+     */
+    @NotNull InputStream decode(@NotNull InputStream input) throws IOException;
+
+    /**
+     * Получение способа кодирования по его идентификатору.
+     * @param id байт, идентифицирующий способ кодирования.
+     * @return способ кодирования.
+     * @throws IOException исключение, если такой способ кодирования неизвестен.
+     */
+    static @NotNull ObjectCodec forId(byte id) throws IOException {
+        if (id == IdentityCodec.ID) {
+            return new IdentityCodec();
+        }
+
+        if (id == DeflateCodec.ID) {
+            return new DeflateCodec();
+        }
+
+        throw new IOException("Unknown object codec " + id);
+    }
+}
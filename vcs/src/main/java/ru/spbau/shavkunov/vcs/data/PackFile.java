@@ -0,0 +1,374 @@
+package ru.spbau.shavkunov.vcs.data;
+
+import org.apache.commons.io.IOUtils;
+import org.jetbrains.annotations.NotNull;
+import ru.spbau.shavkunov.vcs.primitives.ObjectId;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Файл с несколькими объектами(pack) и его индекс. Pack-файлы не меняются после записи.
+ *
+ * Pack-файл: сигнатура, версия, число объектов и сами объекты. Объект хранится целиком или как дельта
+ * к объекту, записанному раньше в том же файле: байт типа, размер объекта, для дельты -- расстояние
+ * до базового объекта, затем сжатое deflate содержимое или дельта.
+ *
+ * Индекс: сигнатура, версия, число объектов, таблица из 256 чисел(сколько хешей начинается с байта не больше
+ * данного) и отсортированные записи из 20 байт хеша и смещения объекта в pack-файле. Поиск по индексу
+ * двоичный, по отображенному в память файлу.
+ */
+public class PackFile {
+    /**
+     * Расширение pack-файла.
+     */
+    public static final String PACK_EXTENSION = ".pack";
+
+    /**
+     * Расширение индекса pack-файла.
+     */
+    public static final String INDEX_EXTENSION = ".idx";
+
+    /**
+     * Версия формата.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Сигнатура pack-файла.
+     */
+    private static final byte[] PACK_SIGNATURE = {'V', 'P', 'C', 'K'};
+
+    /**
+     * Сигнатура индекса.
+     */
+    private static final byte[] INDEX_SIGNATURE = {'V', 'P', 'I', 'X'};
+
+    /**
+     * Тип объекта, хранящегося целиком.
+     */
+    private static final int FULL = 0;
+
+    /**
+     * Тип объекта, хранящегося как дельта.
+     */
+    private static final int DELTA = 1;
+
+    /**
+     * Размер записи индекса: хеш и смещение.
+     */
+    private static final int RECORD_SIZE = ObjectId.SIZE + 8;
+
+    /**
+     * Размер заголовка индекса.
+     */
+    private static final int HEADER_SIZE = 12;
+
+    /**
+     * Смещение записей индекса: заголовок и таблица первых байт хешей.
+     */
+    private static final int RECORDS_OFFSET = HEADER_SIZE + 256 * 4;
+
+    /**
+     * Размер буфера при чтении объектов.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Путь к pack-файлу.
+     */
+    private @NotNull Path pathToPack;
+
+    /**
+     * Содержимое индекса.
+     */
+    private @NotNull ByteBuffer index;
+
+    /**
+     * Количество объектов.
+     */
+    private int size;
+
+    /**
+     * Чтение индекса pack-файла.
+     * @param pathToPack путь к pack-файлу.
+     * @param index содержимое индекса.
+     * @throws IOException исключение, если индекс поврежден или имеет неизвестную версию.
+     */
+    private PackFile(@NotNull Path pathToPack, @NotNull ByteBuffer index) throws IOException {
+        this.pathToPack = pathToPack;
+        this.index = index;
+
+        byte[] signature = new byte[INDEX_SIGNATURE.length];
+        index.duplicate().get(signature);
+        if (!Arrays.equals(signature, INDEX_SIGNATURE) || index.getInt(4) != VERSION) {
+            throw new IOException("Unsupported pack index " + pathToPack);
+        }
+
+        size = index.getInt(8);
+        if (index.capacity() != RECORDS_OFFSET + size * RECORD_SIZE) {
+            throw new IOException("Pack index is corrupted " + pathToPack);
+        }
+    }
+
+    /**
+     * Открытие pack-файла по его индексу.
+     * @param pathToIndex путь к индексу, pack-файл лежит рядом с ним.
+     * @return прочитанный pack-файл.
+     * @throws IOException исключение, если возникли проблемы с чтением индекса.
+     */
+    public static @NotNull PackFile open(@NotNull Path pathToIndex) throws IOException {
+        String name = pathToIndex.getFileName().toString();
+        Path pathToPack = pathToIndex.resolveSibling(name.substring(0, name.length() - INDEX_EXTENSION.length())
+                                                     + PACK_EXTENSION);
+        try (FileChannel channel = FileChannel.open(pathToIndex, StandardOpenOption.READ)) {
+            return new PackFile(pathToPack, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Получение пути к pack-файлу.
+     * @return путь к pack-файлу.
+     */
+    public @NotNull Path getPathToPack() {
+        return pathToPack;
+    }
+
+    /**
+     * Получение количества объектов.
+     * @return количество объектов в pack-файле.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Получение хешей всех объектов в порядке возрастания.
+     * @return хеши объектов.
+     */
+    public @NotNull List<ObjectId> getHashes() {
+        List<ObjectId> hashes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            hashes.add(ObjectId.fromBuffer(index, RECORDS_OFFSET + i * RECORD_SIZE));
+        }
+
+        return hashes;
+    }
+
+    /**
+     * Поиск объекта по хешу.
+     * @param hash хеш объекта.
+     * @return смещение объекта в pack-файле или -1, если объекта нет.
+     */
+    public long find(@NotNull ObjectId hash) {
+        int first = hash.getFirstByte();
+        int left = first == 0 ? 0 : index.getInt(HEADER_SIZE + 4 * (first - 1));
+        int right = index.getInt(HEADER_SIZE + 4 * first) - 1;
+        while (left <= right) {
+            int middle = (left + right) >>> 1;
+            int comparison = hash.compareTo(index, RECORDS_OFFSET + middle * RECORD_SIZE);
+            if (comparison > 0) {
+                left = middle + 1;
+            } else if (comparison < 0) {
+                right = middle - 1;
+            } else {
+                return index.getLong(RECORDS_OFFSET + middle * RECORD_SIZE + ObjectId.SIZE);
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Открытие потока на заголовок объекта.
+     * @param offset смещение объекта в pack-файле.
+     * @return поток, начинающийся с объекта.
+     * @throws IOException исключение, если возникли проблемы с чтением файла.
+     */
+    private @NotNull InputStream openAt(long offset) throws IOException {
+        SeekableByteChannel channel = Files.newByteChannel(pathToPack, StandardOpenOption.READ);
+        try {
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        return new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE);
+    }
+
+    /**
+     * Получение размера объекта без чтения содержимого.
+     * @param offset смещение объекта в pack-файле.
+     * @return размер объекта.
+     * @throws IOException исключение, если возникли проблемы с чтением файла.
+     */
+    public long getObjectSize(long offset) throws IOException {
+        try (InputStream input = openAt(offset)) {
+            input.read();
+            return Varint.read(input);
+        }
+    }
+
+    /**
+     * Открытие объекта для чтения. Объект, хранящийся целиком, читается потоком, дельта восстанавливается в памяти.
+     * @param offset смещение объекта в pack-файле.
+     * @return поток с содержимым объекта.
+     * @throws IOException исключение, если возникли проблемы с чтением файла.
+     */
+    public @NotNull InputStream openObject(long offset) throws IOException {
+        InputStream input = openAt(offset);
+        try {
+            int type = input.read();
+            Varint.read(input);
+            if (type == FULL) {
+                return new InflaterInputStream(input);
+            }
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+
+        input.close();
+        return new ByteArrayInputStream(readObject(offset));
+    }
+
+    /**
+     * Чтение объекта целиком с восстановлением цепочки дельт.
+     * @param offset смещение объекта в pack-файле.
+     * @return содержимое объекта.
+     * @throws IOException исключение, если возникли проблемы с чтением файла или файл поврежден.
+     */
+    private @NotNull byte[] readObject(long offset) throws IOException {
+        int type;
+        long baseOffset = 0;
+        byte[] content;
+        try (InputStream input = openAt(offset)) {
+            type = input.read();
+            long size = Varint.read(input);
+            if (type == DELTA) {
+                baseOffset = offset - Varint.read(input);
+            } else if (type != FULL) {
+                throw new IOException("Unknown pack entry type " + type + " in " + pathToPack);
+            }
+
+            try (InputStream inflaterInput = new InflaterInputStream(input)) {
+                content = IOUtils.toByteArray(inflaterInput);
+            }
+
+            if (type == FULL && content.length != size) {
+                throw new IOException("Pack entry is corrupted in " + pathToPack);
+            }
+        }
+
+        if (type == FULL) {
+            return content;
+        }
+
+        return Delta.apply(readObject(baseOffset), content);
+    }
+
+    /**
+     * Запись заголовка pack-файла.
+     * @param output поток, куда записывается pack-файл.
+     * @param count количество объектов.
+     * @throws IOException исключение, если возникли проблемы с записью.
+     */
+    public static void writeHeader(@NotNull OutputStream output, int count) throws IOException {
+        output.write(PACK_SIGNATURE);
+        output.write(ByteBuffer.allocate(8).putInt(VERSION).putInt(count).array());
+    }
+
+    /**
+     * Запись объекта целиком.
+     * @param output поток, куда записывается pack-файл.
+     * @param input содержимое объекта.
+     * @param size размер объекта.
+     * @throws IOException исключение, если возникли проблемы с вводом/выводом.
+     */
+    public static void writeFull(@NotNull OutputStream output, @NotNull InputStream input, long size)
+                                 throws IOException {
+        output.write(FULL);
+        Varint.write(output, size);
+        Deflater deflater = new Deflater();
+        try {
+            DeflaterOutputStream deflaterOutput = new DeflaterOutputStream(output, deflater, BUFFER_SIZE);
+            IOUtils.copyLarge(input, deflaterOutput);
+            deflaterOutput.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Запись объекта в виде дельты.
+     * @param output поток, куда записывается pack-файл.
+     * @param distance расстояние от базового объекта до записываемого.
+     * @param delta дельта.
+     * @param size размер объекта.
+     * @throws IOException исключение, если возникли проблемы с записью.
+     */
+    public static void writeDelta(@NotNull OutputStream output, long distance, @NotNull byte[] delta, long size)
+                                  throws IOException {
+        output.write(DELTA);
+        Varint.write(output, size);
+        Varint.write(output, distance);
+        Deflater deflater = new Deflater();
+        try {
+            DeflaterOutputStream deflaterOutput = new DeflaterOutputStream(output, deflater, BUFFER_SIZE);
+            deflaterOutput.write(delta);
+            deflaterOutput.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Запись индекса pack-файла.
+     * @param pathToIndex путь, куда записывается индекс.
+     * @param offsets смещения объектов, отсортированные по хешу.
+     * @throws IOException исключение, если возникли проблемы с записью.
+     */
+    public static void writeIndex(@NotNull Path pathToIndex, @NotNull SortedMap<ObjectId, Long> offsets)
+                                  throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORDS_OFFSET + offsets.size() * RECORD_SIZE);
+        buffer.put(INDEX_SIGNATURE);
+        buffer.putInt(VERSION);
+        buffer.putInt(offsets.size());
+
+        int[] fanout = new int[256];
+        ByteBuffer records = buffer.duplicate();
+        records.position(RECORDS_OFFSET);
+        for (Map.Entry<ObjectId, Long> entry : offsets.entrySet()) {
+            fanout[entry.getKey().getFirstByte()]++;
+            entry.getKey().writeTo(records);
+            records.putLong(entry.getValue());
+        }
+
+        int total = 0;
+        for (int count : fanout) {
+            total += count;
+            buffer.putInt(total);
+        }
+
+        Files.write(pathToIndex, buffer.array());
+    }
+}
@@ -0,0 +1,317 @@
+package ru.spbau.shavkunov.vcs.data;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.spbau.shavkunov.vcs.exceptions.NoRepositoryException;
+import ru.spbau.shavkunov.vcs.primitives.ObjectId;
+import ru.spbau.shavkunov.vcs.primitives.VcsObjectWithHash;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static ru.spbau.shavkunov.vcs.utils.Constants.PACKS_FOLDER;
+
+/**
+ * Хранилище, в котором объекты, помимо отдельных файлов, лежат в pack-файлах. Новые объекты записываются
+ * отдельными файлами, а команда repack собирает все объекты в один pack-файл, кодируя похожие объекты
+ * дельтами друг к другу.
+ */
+public class PackedDatastore extends Filesystem {
+    /**
+     * Логгер этого класса.
+     */
+    @NotNull
+    private static final Logger logger = LoggerFactory.getLogger(PackedDatastore.class);
+
+    /**
+     * Сколько последних записанных объектов рассматривается в качестве базы для дельты.
+     */
+    private static final int WINDOW_SIZE = 10;
+
+    /**
+     * Максимальная длина цепочки дельт, ограничивающая стоимость чтения объекта.
+     */
+    private static final int MAX_DEPTH = 50;
+
+    /**
+     * Объекты больше этого размера не кодируются дельтами и не читаются в память целиком.
+     */
+    private static final long MAX_DELTA_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Префикс имен pack-файлов.
+     */
+    private static final String PACK_PREFIX = "pack-";
+
+    /**
+     * Прочитанные pack-файлы.
+     */
+    private volatile @NotNull List<PackFile> packs;
+
+    /**
+     * Объект, уже записанный в pack-файл, и данные, нужные для построения дельт к нему.
+     */
+    private static class WindowEntry {
+        private @NotNull byte[] content;
+        private long offset;
+        private int depth;
+
+        private WindowEntry(@NotNull byte[] content, long offset, int depth) {
+            this.content = content;
+            this.offset = offset;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * Создание хранилища и чтение индексов pack-файлов.
+     * @param rootDirectory ссылка на место, где должен находится созданный репозиторий
+     * @throws NoRepositoryException исключение, если путь указывает на место, где нет репозитория.
+     * @throws NotDirectoryException путь к репозиторию оказался не директорией.
+     * @throws IOException исключение, если не удалось прочитать индексы pack-файлов.
+     */
+    public PackedDatastore(@NotNull Path rootDirectory) throws NoRepositoryException, IOException {
+        super(rootDirectory);
+        packs = loadPacks();
+    }
+
+    /**
+     * Получение ссылки на папку, где хранятся pack-файлы.
+     * @return путь к папке pack-файлов.
+     */
+    public @NotNull Path getPacksPath() {
+        return getRootDirectory().resolve(PACKS_FOLDER);
+    }
+
+    /**
+     * Чтение индексов всех pack-файлов.
+     * @return прочитанные pack-файлы.
+     * @throws IOException исключение, если возникли проблемы с чтением файлов.
+     */
+    private @NotNull List<PackFile> loadPacks() throws IOException {
+        List<PackFile> packFiles = new ArrayList<>();
+        if (!Files.isDirectory(getPacksPath())) {
+            return packFiles;
+        }
+
+        try (DirectoryStream<Path> directory = Files.newDirectoryStream(getPacksPath(),
+                                                                        PACK_PREFIX + "*" + PackFile.INDEX_EXTENSION)) {
+            for (Path pathToIndex : directory) {
+                packFiles.add(PackFile.open(pathToIndex));
+            }
+        }
+
+        logger.debug("Loaded " + packFiles.size() + " pack files");
+        return packFiles;
+    }
+
+    /**
+     * Проверка, лежит ли объект в одном из pack-файлов.
+     * @param hash хеш объекта.
+     * @return true, если объект упакован, иначе false.
+     */
+    private boolean isPacked(@NotNull ObjectId hash) {
+        for (PackFile pack : packs) {
+            if (pack.find(hash) != -1) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean isCommitExists(@NotNull ObjectId commitHash) {
+        return super.isCommitExists(commitHash) || isPacked(commitHash);
+    }
+
+    @Override
+    public void storeObject(@NotNull VcsObjectWithHash object) throws IOException {
+        if (!isPacked(object.getHash())) {
+            super.storeObject(object);
+        }
+    }
+
+    @NotNull
+    @Override
+    public InputStream openObject(@NotNull ObjectId hash) throws IOException {
+        try {
+            return super.openObject(hash);
+        } catch (NoSuchFileException e) {
+            for (PackFile pack : packs) {
+                long offset = pack.find(hash);
+                if (offset != -1) {
+                    return pack.openObject(offset);
+                }
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Получение хешей объектов, хранящихся отдельными файлами.
+     * @return хеши объектов.
+     * @throws IOException исключение, если возникли проблемы с чтением папки объектов.
+     */
+    private @NotNull List<ObjectId> getLooseHashes() throws IOException {
+        List<ObjectId> hashes = new ArrayList<>();
+        try (DirectoryStream<Path> directory = Files.newDirectoryStream(getObjectsPath(), Files::isDirectory)) {
+            for (Path fanout : directory) {
+                String prefix = fanout.getFileName().toString();
+                try (DirectoryStream<Path> objects = Files.newDirectoryStream(fanout)) {
+                    for (Path object : objects) {
+                        String hash = prefix + object.getFileName().toString();
+                        if (isHash(hash)) {
+                            hashes.add(ObjectId.fromHex(hash));
+                        }
+                    }
+                }
+            }
+        }
+
+        return hashes;
+    }
+
+    /**
+     * Сборка всех объектов, отдельных и из старых pack-файлов, в один новый pack-файл. Объекты перебираются
+     * от больших к меньшим, и каждый кодируется дельтой к самому выгодному из нескольких предыдущих.
+     * После записи нового pack-файла старые pack-файлы и отдельные файлы объектов удаляются.
+     * @throws IOException исключение, если возникли проблемы с вводом/выводом.
+     */
+    @Override
+    public synchronized void repack() throws IOException {
+        List<ObjectId> looseHashes = getLooseHashes();
+        List<PackFile> oldPacks = packs;
+        if (looseHashes.isEmpty() && oldPacks.size() <= 1) {
+            logger.debug("Nothing to repack");
+            return;
+        }
+
+        HashMap<ObjectId, Long> sizes = new HashMap<>();
+        for (PackFile pack : oldPacks) {
+            for (ObjectId hash : pack.getHashes()) {
+                sizes.put(hash, pack.getObjectSize(pack.find(hash)));
+            }
+        }
+
+        for (ObjectId hash : looseHashes) {
+            try (InputStream input = super.openObject(hash)) {
+                sizes.put(hash, IOUtils.skip(input, Long.MAX_VALUE));
+            }
+        }
+
+        List<Map.Entry<ObjectId, Long>> order = new ArrayList<>(sizes.entrySet());
+        order.sort(Collections.reverseOrder(Map.Entry.<ObjectId, Long>comparingByValue())
+                              .thenComparing(Map.Entry.comparingByKey()));
+
+        Files.createDirectories(getPacksPath());
+        Path temporaryPack = Files.createTempFile(getPacksPath(), TEMPORARY_PREFIX, PackFile.PACK_EXTENSION);
+        TreeMap<ObjectId, Long> offsets = new TreeMap<>();
+        try (CountingOutputStream output = new CountingOutputStream(
+                                           new BufferedOutputStream(Files.newOutputStream(temporaryPack)))) {
+            PackFile.writeHeader(output, order.size());
+            ArrayDeque<WindowEntry> window = new ArrayDeque<>();
+            for (Map.Entry<ObjectId, Long> object : order) {
+                long offset = output.getByteCount();
+                long size = object.getValue();
+                offsets.put(object.getKey(), offset);
+
+                if (size > MAX_DELTA_SIZE) {
+                    try (InputStream input = openObject(object.getKey())) {
+                        PackFile.writeFull(output, input, size);
+                    }
+
+                    continue;
+                }
+
+                byte[] content;
+                try (InputStream input = openObject(object.getKey())) {
+                    content = IOUtils.toByteArray(input);
+                }
+
+                WindowEntry base = null;
+                byte[] bestDelta = null;
+                for (WindowEntry candidate : window) {
+                    if (candidate.depth >= MAX_DEPTH) {
+                        continue;
+                    }
+
+                    int limit = bestDelta == null ? content.length / 2 : bestDelta.length;
+                    byte[] delta = Delta.create(candidate.content, content, limit);
+                    if (delta != null) {
+                        base = candidate;
+                        bestDelta = delta;
+                    }
+                }
+
+                if (base == null) {
+                    PackFile.writeFull(output, new ByteArrayInputStream(content), size);
+                } else {
+                    PackFile.writeDelta(output, offset - base.offset, bestDelta, size);
+                }
+
+                window.addFirst(new WindowEntry(content, offset, base == null ? 0 : base.depth + 1));
+                if (window.size() > WINDOW_SIZE) {
+                    window.removeLast();
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporaryPack);
+            throw e;
+        }
+
+        MessageDigest digest = DigestUtils.getSha1Digest();
+        for (ObjectId hash : offsets.keySet()) {
+            digest.update(hash.toBytes());
+        }
+
+        String name = PACK_PREFIX + Hex.encodeHexString(digest.digest());
+        Path pathToPack = getPacksPath().resolve(name + PackFile.PACK_EXTENSION);
+        Path pathToIndex = getPacksPath().resolve(name + PackFile.INDEX_EXTENSION);
+        Path temporaryIndex = Files.createTempFile(getPacksPath(), TEMPORARY_PREFIX, PackFile.INDEX_EXTENSION);
+        PackFile.writeIndex(temporaryIndex, offsets);
+        Files.move(temporaryPack, pathToPack, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(temporaryIndex, pathToIndex, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        List<PackFile> newPacks = new ArrayList<>();
+        newPacks.add(PackFile.open(pathToIndex));
+        packs = newPacks;
+
+        for (PackFile pack : oldPacks) {
+            if (!pack.getPathToPack().equals(pathToPack)) {
+                String oldName = pack.getPathToPack().getFileName().toString();
+                oldName = oldName.substring(0, oldName.length() - PackFile.PACK_EXTENSION.length());
+                Files.deleteIfExists(getPacksPath().resolve(oldName + PackFile.INDEX_EXTENSION));
+                Files.deleteIfExists(pack.getPathToPack());
+            }
+        }
+
+        for (ObjectId hash : looseHashes) {
+            Files.deleteIfExists(getObjectPath(hash));
+        }
+
+        logger.debug("Repacked " + offsets.size() + " objects into " + pathToPack);
+    }
+}
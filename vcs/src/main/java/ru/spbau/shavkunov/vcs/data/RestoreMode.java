@@ -0,0 +1,24 @@
+package ru.spbau.shavkunov.vcs.data;
+
+/**
+ * Способ, которым содержимое объектов восстанавливается в рабочую папку. Выбирается для репозитория
+ * и хранится в его папке.
+ */
+public enum RestoreMode {
+    /**
+     * Объект раскодируется и копируется в файл потоком.
+     */
+    COPY,
+
+    /**
+     * Объект, записанный без сжатия, копируется через FileChannel.transferTo, остальные -- потоком.
+     */
+    TRANSFER,
+
+    /**
+     * Файл создается жесткой ссылкой на раскодированную копию объекта, если на нее не ссылается другой
+     * файл рабочей папки. Изменение такого файла на месте меняет и копию, поэтому копия проверяется перед
+     * повторным использованием. Если ссылку создать нельзя, файл копируется как в TRANSFER.
+     */
+    LINK
+}
@@ -0,0 +1,54 @@
+package ru.spbau.shavkunov.vcs.data;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Запись неотрицательных чисел переменной длины: по 7 бит в байте, старший бит означает, что число продолжается.
+ * Маленькие числа(длины, смещения) так занимают один-два байта вместо восьми.
+ */
+public class Varint {
+    private Varint() {}
+
+    /**
+     * Запись числа.
+     * @param output поток, куда записывается число.
+     * @param value неотрицательное число.
+     * @throws IOException исключение, если возникли проблемы с записью.
+     */
+    public static void write(@NotNull OutputStream output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        output.write((int) value);
+    }
+
+    /**
+     * Чтение числа.
+     * @param input поток, из которого читается число.
+     * @return прочитанное число.
+     * @throws IOException исключение, если поток закончился раньше числа или число слишком длинное.
+     */
+    public static long read(@NotNull InputStream input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int next = input.read();
+            if (next == -1) {
+                throw new EOFException();
+            }
+
+            value |= (long) (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed variable-length number");
+    }
+}
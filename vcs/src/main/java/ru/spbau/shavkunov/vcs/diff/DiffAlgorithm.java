@@ -0,0 +1,38 @@
+package ru.spbau.shavkunov.vcs.diff;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Алгоритм построчного сравнения файлов.
+ */
+public enum DiffAlgorithm {
+    /**
+     * Алгоритм Майерса: кратчайший список различий.
+     */
+    MYERS {
+        @Override
+        public @NotNull List<Edit> diff(@NotNull int[] a, @NotNull int[] b) {
+            return MyersDiff.diff(a, b);
+        }
+    },
+
+    /**
+     * Гистограммный алгоритм: различия выравниваются по редким строкам.
+     */
+    HISTOGRAM {
+        @Override
+        public @NotNull List<Edit> diff(@NotNull int[] a, @NotNull int[] b) {
+            return HistogramDiff.diff(a, b);
+        }
+    };
+
+    /**
+     * Сравнение двух последовательностей строк.
+     * @param a числа строк первой последовательности.
+     * @param b числа строк второй последовательности.
+     * @return список различий, упорядоченный по позициям.
+     */
+    public abstract @NotNull List<Edit> diff(@NotNull int[] a, @NotNull int[] b);
+}
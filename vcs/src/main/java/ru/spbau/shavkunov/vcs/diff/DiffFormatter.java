@@ -0,0 +1,174 @@
+package ru.spbau.shavkunov.vcs.diff;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Вывод различий файлов в унифицированном формате. Каждый фрагмент записывается в поток сразу после
+ * построения. Содержимое обоих сравниваемых файлов и числа их строк держатся в памяти целиком, поэтому
+ * для файлов больше допустимого размера (см. {@link LineText#read}) выводится только то, что они различаются.
+ */
+public class DiffFormatter {
+    /**
+     * Путь, которым обозначается отсутствующий файл.
+     */
+    private static final String NO_FILE = "/dev/null";
+
+    /**
+     * Поток, куда записываются различия.
+     */
+    private final @NotNull OutputStream output;
+
+    /**
+     * Алгоритм сравнения.
+     */
+    private final @NotNull DiffAlgorithm algorithm;
+
+    /**
+     * Количество неизмененных строк вокруг различий.
+     */
+    private final int context;
+
+    /**
+     * Создание вывода различий.
+     * @param output поток, куда записываются различия.
+     * @param algorithm алгоритм сравнения.
+     * @param context количество неизмененных строк вокруг различий.
+     */
+    public DiffFormatter(@NotNull OutputStream output, @NotNull DiffAlgorithm algorithm, int context) {
+        this.output = output;
+        this.algorithm = algorithm;
+        this.context = context;
+    }
+
+    /**
+     * Вывод различий одного файла.
+     * @param path путь к файлу.
+     * @param oldText старое содержимое, null -- файл добавлен.
+     * @param newText новое содержимое, null -- файл удален.
+     * @throws IOException исключение, если возникли проблемы с записью.
+     */
+    public void format(@NotNull String path, @Nullable LineText oldText, @Nullable LineText newText)
+                       throws IOException {
+        String oldName = oldText == null ? NO_FILE : "a/" + path;
+        String newName = newText == null ? NO_FILE : "b/" + path;
+        write("diff --vcs a/" + path + " b/" + path + "\n");
+        if (oldText == null) {
+            write("new file\n");
+        } else if (newText == null) {
+            write("deleted file\n");
+        }
+
+        LineText a = oldText == null ? new LineText(new byte[0]) : oldText;
+        LineText b = newText == null ? new LineText(new byte[0]) : newText;
+        if (a.isTooLarge() || b.isTooLarge()) {
+            write("Files " + oldName + " and " + newName + " differ\n");
+            return;
+        }
+
+        if (a.isBinary() || b.isBinary()) {
+            write("Binary files " + oldName + " and " + newName + " differ\n");
+            return;
+        }
+
+        write("--- " + oldName + "\n");
+        write("+++ " + newName + "\n");
+
+        int[][] lineIds = LineText.toLineIds(a, b);
+        List<Edit> edits = algorithm.diff(lineIds[0], lineIds[1]);
+        int first = 0;
+        while (first < edits.size()) {
+            int last = first;
+            while (last + 1 < edits.size() && edits.get(last + 1).getBeginA() - edits.get(last).getEndA() <= 2 * context) {
+                last++;
+            }
+
+            writeHunk(a, b, edits.subList(first, last + 1));
+            first = last + 1;
+        }
+
+        output.flush();
+    }
+
+    /**
+     * Вывод фрагмента из близко расположенных различий вместе с окружающими строками.
+     * @param a старое содержимое.
+     * @param b новое содержимое.
+     * @param edits различия фрагмента.
+     * @throws IOException исключение, если возникли проблемы с записью.
+     */
+    private void writeHunk(@NotNull LineText a, @NotNull LineText b, @NotNull List<Edit> edits) throws IOException {
+        Edit firstEdit = edits.get(0);
+        Edit lastEdit = edits.get(edits.size() - 1);
+        int beginA = Math.max(0, firstEdit.getBeginA() - context);
+        int endA = Math.min(a.size(), lastEdit.getEndA() + context);
+        int beginB = firstEdit.getBeginB() - (firstEdit.getBeginA() - beginA);
+        int endB = lastEdit.getEndB() + (endA - lastEdit.getEndA());
+        write("@@ -" + formatRange(beginA, endA - beginA) + " +" + formatRange(beginB, endB - beginB) + " @@\n");
+
+        int position = beginA;
+        for (Edit edit : edits) {
+            for (; position < edit.getBeginA(); position++) {
+                writeLine(' ', a, position);
+            }
+
+            for (int line = edit.getBeginA(); line < edit.getEndA(); line++) {
+                writeLine('-', a, line);
+            }
+
+            for (int line = edit.getBeginB(); line < edit.getEndB(); line++) {
+                writeLine('+', b, line);
+            }
+
+            position = edit.getEndA();
+        }
+
+        for (; position < endA; position++) {
+            writeLine(' ', a, position);
+        }
+    }
+
+    /**
+     * Запись диапазона строк в заголовке фрагмента: номер первой строки, начиная с единицы, и количество
+     * строк. Для пустого диапазона выводится номер строки перед ним.
+     * @param begin номер первой строки, начиная с нуля.
+     * @param count количество строк.
+     * @return диапазон в формате заголовка.
+     */
+    private static @NotNull String formatRange(int begin, int count) {
+        if (count == 1) {
+            return String.valueOf(begin + 1);
+        }
+
+        return (count == 0 ? begin : begin + 1) + "," + count;
+    }
+
+    /**
+     * Запись строки фрагмента.
+     * @param prefix символ перед строкой: ' ', '-' или '+'.
+     * @param text текст, из которого берется строка.
+     * @param line номер строки.
+     * @throws IOException исключение, если возникли проблемы с записью.
+     */
+    private void writeLine(char prefix, @NotNull LineText text, int line) throws IOException {
+        output.write(prefix);
+        text.writeLine(output, line);
+        if (!text.hasNewline(line)) {
+            write("\n\\ No newline at end of file\n");
+        }
+    }
+
+    /**
+     * Запись строки служебной информации.
+     * @param text строка.
+     * @throws IOException исключение, если возникли проблемы с записью.
+     */
+    private void write(@NotNull String text) throws IOException {
+        output.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
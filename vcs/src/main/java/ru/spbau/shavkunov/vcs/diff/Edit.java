@@ -0,0 +1,123 @@
+package ru.spbau.shavkunov.vcs.diff;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Различие между двумя последовательностями строк: строки [beginA, endA) первой последовательности
+ * заменяются строками [beginB, endB) второй. Пустой диапазон в первой последовательности означает вставку,
+ * пустой диапазон во второй -- удаление.
+ */
+public class Edit {
+    /**
+     * Начало диапазона в первой последовательности.
+     */
+    private final int beginA;
+
+    /**
+     * Конец диапазона в первой последовательности, не включая его.
+     */
+    private final int endA;
+
+    /**
+     * Начало диапазона во второй последовательности.
+     */
+    private final int beginB;
+
+    /**
+     * Конец диапазона во второй последовательности, не включая его.
+     */
+    private final int endB;
+
+    /**
+     * Создание различия.
+     * @param beginA начало диапазона в первой последовательности.
+     * @param endA конец диапазона в первой последовательности, не включая его.
+     * @param beginB начало диапазона во второй последовательности.
+     * @param endB конец диапазона во второй последовательности, не включая его.
+     */
+    public Edit(int beginA, int endA, int beginB, int endB) {
+        this.beginA = beginA;
+        this.endA = endA;
+        this.beginB = beginB;
+        this.endB = endB;
+    }
+
+    /**
+     * Добавление различия в конец списка. Если оно вплотную примыкает к последнему различию списка,
+     * они объединяются в одно.
+     * @param edits список различий, упорядоченный по позициям.
+     * @param beginA начало диапазона в первой последовательности.
+     * @param endA конец диапазона в первой последовательности, не включая его.
+     * @param beginB начало диапазона во второй последовательности.
+     * @param endB конец диапазона во второй последовательности, не включая его.
+     */
+    static void append(@NotNull List<Edit> edits, int beginA, int endA, int beginB, int endB) {
+        if (beginA == endA && beginB == endB) {
+            return;
+        }
+
+        if (!edits.isEmpty()) {
+            Edit last = edits.get(edits.size() - 1);
+            if (last.endA == beginA && last.endB == beginB) {
+                edits.set(edits.size() - 1, new Edit(last.beginA, endA, last.beginB, endB));
+                return;
+            }
+        }
+
+        edits.add(new Edit(beginA, endA, beginB, endB));
+    }
+
+    /**
+     * Получение начала диапазона в первой последовательности.
+     * @return номер первой строки диапазона.
+     */
+    public int getBeginA() {
+        return beginA;
+    }
+
+    /**
+     * Получение конца диапазона в первой последовательности.
+     * @return номер строки после диапазона.
+     */
+    public int getEndA() {
+        return endA;
+    }
+
+    /**
+     * Получение начала диапазона во второй последовательности.
+     * @return номер первой строки диапазона.
+     */
+    public int getBeginB() {
+        return beginB;
+    }
+
+    /**
+     * Получение конца диапазона во второй последовательности.
+     * @return номер строки после диапазона.
+     */
+    public int getEndB() {
+        return endB;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof Edit)) {
+            return false;
+        }
+
+        Edit edit = (Edit) object;
+        return beginA == edit.beginA && endA == edit.endA && beginB == edit.beginB && endB == edit.endB;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((beginA * 31 + endA) * 31 + beginB) * 31 + endB;
+    }
+
+    @Override
+    public String toString() {
+        return "Edit[" + beginA + "-" + endA + "," + beginB + "-" + endB + "]";
+    }
+}
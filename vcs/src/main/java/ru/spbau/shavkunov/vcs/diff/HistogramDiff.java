@@ -0,0 +1,108 @@
+package ru.spbau.shavkunov.vcs.diff;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Гистограммный алгоритм сравнения. На участке выбирается общий отрезок, строки которого реже всего
+ * встречаются в первой последовательности, и участки до и после него сравниваются отдельно. Так
+ * различия выравниваются по редким строкам вроде заголовков функций, а не по пустым строкам
+ * и скобкам. Если на участке есть только очень частые строки, он сравнивается алгоритмом Майерса.
+ */
+public class HistogramDiff {
+    /**
+     * Строки, встречающиеся на участке чаще этого, не используются для выравнивания.
+     */
+    private static final int MAX_OCCURRENCES = 64;
+
+    /**
+     * Сравнение двух последовательностей.
+     * @param a числа строк первой последовательности.
+     * @param b числа строк второй последовательности.
+     * @return список различий, упорядоченный по позициям.
+     */
+    public static @NotNull List<Edit> diff(@NotNull int[] a, @NotNull int[] b) {
+        List<Edit> edits = new ArrayList<>();
+        ArrayDeque<int[]> regions = new ArrayDeque<>();
+        regions.push(new int[] {0, a.length, 0, b.length});
+        while (!regions.isEmpty()) {
+            int[] region = regions.pop();
+            int beginA = region[0];
+            int endA = region[1];
+            int beginB = region[2];
+            int endB = region[3];
+            while (beginA < endA && beginB < endB && a[beginA] == b[beginB]) {
+                beginA++;
+                beginB++;
+            }
+
+            while (beginA < endA && beginB < endB && a[endA - 1] == b[endB - 1]) {
+                endA--;
+                endB--;
+            }
+
+            if (beginA == endA || beginB == endB) {
+                Edit.append(edits, beginA, endA, beginB, endB);
+                continue;
+            }
+
+            HashMap<Integer, List<Integer>> occurrences = new HashMap<>();
+            for (int i = beginA; i < endA; i++) {
+                occurrences.computeIfAbsent(a[i], id -> new ArrayList<>()).add(i);
+            }
+
+            int bestCount = MAX_OCCURRENCES + 1;
+            int bestLength = 0;
+            int[] best = null;
+            boolean hasFrequentLines = false;
+            for (int j = beginB; j < endB; j++) {
+                List<Integer> positions = occurrences.get(b[j]);
+                if (positions == null) {
+                    continue;
+                }
+
+                if (positions.size() > MAX_OCCURRENCES) {
+                    hasFrequentLines = true;
+                    continue;
+                }
+
+                if (positions.size() > bestCount) {
+                    continue;
+                }
+
+                for (int i : positions) {
+                    int start = 0;
+                    while (i - start > beginA && j - start > beginB && a[i - start - 1] == b[j - start - 1]) {
+                        start++;
+                    }
+
+                    int end = 1;
+                    while (i + end < endA && j + end < endB && a[i + end] == b[j + end]) {
+                        end++;
+                    }
+
+                    if (positions.size() < bestCount || start + end > bestLength) {
+                        bestCount = positions.size();
+                        bestLength = start + end;
+                        best = new int[] {i - start, j - start, i + end, j + end};
+                    }
+                }
+            }
+
+            if (best != null) {
+                regions.push(new int[] {best[2], endA, best[3], endB});
+                regions.push(new int[] {beginA, best[0], beginB, best[1]});
+            } else if (hasFrequentLines) {
+                MyersDiff.diff(a, beginA, endA, b, beginB, endB, edits);
+            } else {
+                Edit.append(edits, beginA, endA, beginB, endB);
+            }
+        }
+
+        return edits;
+    }
+}
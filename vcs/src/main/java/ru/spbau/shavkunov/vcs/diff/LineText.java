@@ -0,0 +1,173 @@
+package ru.spbau.shavkunov.vcs.diff;
+
+import org.apache.commons.io.IOUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Содержимое файла, разбитое на строки. Строки не копируются: хранятся только позиции их начал
+ * в исходном массиве байт.
+ */
+public class LineText {
+    /**
+     * Сколько первых байт просматривается при проверке, что файл двоичный.
+     */
+    private static final int BINARY_CHECK_LENGTH = 8000;
+
+    /**
+     * Содержимое файла.
+     */
+    private final @NotNull byte[] content;
+
+    /**
+     * Позиции начал строк и позиция конца содержимого последним элементом.
+     */
+    private final @NotNull int[] lineStarts;
+
+    /**
+     * Файл оказался больше допустимого размера, и его содержимое не прочитано.
+     */
+    private final boolean tooLarge;
+
+    /**
+     * Разбиение содержимого на строки. Строки заканчиваются символом '\n', последняя строка может
+     * быть без него.
+     * @param content содержимое файла.
+     */
+    public LineText(@NotNull byte[] content) {
+        this(content, false);
+    }
+
+    /**
+     * Разбиение содержимого на строки.
+     * @param content содержимое файла.
+     * @param tooLarge true, если файл больше допустимого размера и содержимое не прочитано.
+     */
+    private LineText(@NotNull byte[] content, boolean tooLarge) {
+        this.content = content;
+        this.tooLarge = tooLarge;
+
+        int[] starts = new int[16];
+        int lines = 0;
+        for (int position = 0; position < content.length; position++) {
+            if (position == 0 || content[position - 1] == '\n') {
+                if (lines == starts.length) {
+                    starts = Arrays.copyOf(starts, lines * 2);
+                }
+
+                starts[lines++] = position;
+            }
+        }
+
+        lineStarts = Arrays.copyOf(starts, lines + 1);
+        lineStarts[lines] = content.length;
+    }
+
+    /**
+     * Чтение содержимого файла из потока, если оно не больше заданного размера. Из потока читается
+     * не больше limit + 1 байт, так что слишком большой файл не загружается в память целиком.
+     * @param input поток с содержимым файла.
+     * @param limit наибольший размер файла в байтах.
+     * @return содержимое файла, разбитое на строки, или пустой текст с отметкой {@link #isTooLarge()},
+     * если файл больше limit.
+     * @throws IOException исключение, если возникли проблемы с чтением.
+     */
+    public static @NotNull LineText read(@NotNull InputStream input, long limit) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        if (IOUtils.copyLarge(input, buffer, 0, limit + 1) > limit) {
+            return new LineText(new byte[0], true);
+        }
+
+        return new LineText(buffer.toByteArray());
+    }
+
+    /**
+     * Проверка, что файл больше допустимого размера и его содержимое не прочитано.
+     * @return true, если содержимое не прочитано, иначе false.
+     */
+    public boolean isTooLarge() {
+        return tooLarge;
+    }
+
+    /**
+     * Получение количества строк.
+     * @return количество строк.
+     */
+    public int size() {
+        return lineStarts.length - 1;
+    }
+
+    /**
+     * Проверка, что файл двоичный, то есть содержит нулевой байт в начале.
+     * @return true, если файл двоичный, иначе false.
+     */
+    public boolean isBinary() {
+        int length = Math.min(content.length, BINARY_CHECK_LENGTH);
+        for (int i = 0; i < length; i++) {
+            if (content[i] == 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Проверка, что строка заканчивается переводом строки. Без него может быть только последняя строка.
+     * @param line номер строки.
+     * @return true, если строка заканчивается символом '\n', иначе false.
+     */
+    public boolean hasNewline(int line) {
+        return content[lineStarts[line + 1] - 1] == '\n';
+    }
+
+    /**
+     * Запись строки вместе с переводом строки, если он есть.
+     * @param output поток, куда записывается строка.
+     * @param line номер строки.
+     * @throws IOException исключение, если возникли проблемы с записью.
+     */
+    public void writeLine(@NotNull OutputStream output, int line) throws IOException {
+        output.write(content, lineStarts[line], lineStarts[line + 1] - lineStarts[line]);
+    }
+
+    /**
+     * Замена строк двух текстов числами: одинаковые строки получают одинаковые числа. Алгоритмы
+     * сравнения работают с этими числами, а не с самими строками.
+     * @param a первый текст.
+     * @param b второй текст.
+     * @return два массива с числами строк первого и второго текста.
+     */
+    public static @NotNull int[][] toLineIds(@NotNull LineText a, @NotNull LineText b) {
+        HashMap<ByteBuffer, Integer> ids = new HashMap<>();
+        return new int[][] {a.toLineIds(ids), b.toLineIds(ids)};
+    }
+
+    /**
+     * Замена строк текста числами из общей таблицы.
+     * @param ids таблица чисел уже встреченных строк, дополняется новыми строками.
+     * @return числа строк текста.
+     */
+    private @NotNull int[] toLineIds(@NotNull HashMap<ByteBuffer, Integer> ids) {
+        int[] result = new int[size()];
+        for (int line = 0; line < result.length; line++) {
+            ByteBuffer key = ByteBuffer.wrap(content, lineStarts[line], lineStarts[line + 1] - lineStarts[line]);
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = ids.size();
+                ids.put(key.slice(), id);
+            }
+
+            result[line] = id;
+        }
+
+        return result;
+    }
+}
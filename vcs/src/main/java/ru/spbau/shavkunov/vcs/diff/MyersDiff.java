@@ -0,0 +1,174 @@
+package ru.spbau.shavkunov.vcs.diff;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Алгоритм сравнения Майерса с уточнением для линейной памяти: для участка ищется средняя "змейка"
+ * кратчайшего пути правки одновременным поиском с начала и с конца, после чего участки до и после
+ * нее сравниваются отдельно. Время O((N + M) D), память O(N + M).
+ */
+public class MyersDiff {
+    /**
+     * Числа строк первой последовательности.
+     */
+    private final @NotNull int[] a;
+
+    /**
+     * Числа строк второй последовательности.
+     */
+    private final @NotNull int[] b;
+
+    /**
+     * Вектор самых дальних позиций поиска с начала по диагоналям.
+     */
+    private final @NotNull int[] forward;
+
+    /**
+     * Вектор самых дальних позиций поиска с конца по диагоналям.
+     */
+    private final @NotNull int[] backward;
+
+    /**
+     * Создание сравнения.
+     * @param a числа строк первой последовательности.
+     * @param b числа строк второй последовательности.
+     */
+    private MyersDiff(@NotNull int[] a, @NotNull int[] b) {
+        this.a = a;
+        this.b = b;
+        forward = new int[a.length + b.length + 5];
+        backward = new int[a.length + b.length + 5];
+    }
+
+    /**
+     * Сравнение двух последовательностей.
+     * @param a числа строк первой последовательности.
+     * @param b числа строк второй последовательности.
+     * @return кратчайший список различий, упорядоченный по позициям.
+     */
+    public static @NotNull List<Edit> diff(@NotNull int[] a, @NotNull int[] b) {
+        List<Edit> edits = new ArrayList<>();
+        new MyersDiff(a, b).diff(0, a.length, 0, b.length, edits);
+        return edits;
+    }
+
+    /**
+     * Сравнение участков последовательностей с добавлением различий в список.
+     * @param a числа строк первой последовательности.
+     * @param aStart начало участка первой последовательности.
+     * @param aEnd конец участка первой последовательности.
+     * @param b числа строк второй последовательности.
+     * @param bStart начало участка второй последовательности.
+     * @param bEnd конец участка второй последовательности.
+     * @param edits список, в конец которого добавляются различия.
+     */
+    static void diff(@NotNull int[] a, int aStart, int aEnd, @NotNull int[] b, int bStart, int bEnd,
+                     @NotNull List<Edit> edits) {
+        new MyersDiff(a, b).diff(aStart, aEnd, bStart, bEnd, edits);
+    }
+
+    /**
+     * Сравнение участков. Участки, которые еще предстоит сравнить, хранятся в стеке, а не в рекурсии.
+     * @param aStart начало участка первой последовательности.
+     * @param aEnd конец участка первой последовательности.
+     * @param bStart начало участка второй последовательности.
+     * @param bEnd конец участка второй последовательности.
+     * @param edits список, в конец которого добавляются различия.
+     */
+    private void diff(int aStart, int aEnd, int bStart, int bEnd, @NotNull List<Edit> edits) {
+        ArrayDeque<int[]> regions = new ArrayDeque<>();
+        regions.push(new int[] {aStart, aEnd, bStart, bEnd});
+        while (!regions.isEmpty()) {
+            int[] region = regions.pop();
+            int beginA = region[0];
+            int endA = region[1];
+            int beginB = region[2];
+            int endB = region[3];
+            while (beginA < endA && beginB < endB && a[beginA] == b[beginB]) {
+                beginA++;
+                beginB++;
+            }
+
+            while (beginA < endA && beginB < endB && a[endA - 1] == b[endB - 1]) {
+                endA--;
+                endB--;
+            }
+
+            if (beginA == endA || beginB == endB) {
+                Edit.append(edits, beginA, endA, beginB, endB);
+                continue;
+            }
+
+            int[] snake = findMiddleSnake(beginA, endA, beginB, endB);
+            regions.push(new int[] {snake[2], endA, snake[3], endB});
+            regions.push(new int[] {beginA, snake[0], beginB, snake[1]});
+        }
+    }
+
+    /**
+     * Поиск средней змейки кратчайшего пути правки участка. Участок не должен начинаться
+     * и заканчиваться одинаковыми строками.
+     * @param beginA начало участка первой последовательности.
+     * @param endA конец участка первой последовательности.
+     * @param beginB начало участка второй последовательности.
+     * @param endB конец участка второй последовательности.
+     * @return начало и конец змейки: позиции в первой и во второй последовательности.
+     */
+    private @NotNull int[] findMiddleSnake(int beginA, int endA, int beginB, int endB) {
+        int n = endA - beginA;
+        int m = endB - beginB;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int offset = (n + m + 1) / 2 + 1;
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+
+        for (int d = 0; d <= (n + m + 1) / 2; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])) {
+                    x = forward[offset + k + 1];
+                } else {
+                    x = forward[offset + k - 1] + 1;
+                }
+
+                int startX = x;
+                while (x < n && x - k < m && a[beginA + x] == b[beginB + x - k]) {
+                    x++;
+                }
+
+                forward[offset + k] = x;
+                int reverse = delta - k;
+                if (odd && reverse >= -(d - 1) && reverse <= d - 1 && x + backward[offset + reverse] >= n) {
+                    return new int[] {beginA + startX, beginB + startX - k, beginA + x, beginB + x - k};
+                }
+            }
+
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1])) {
+                    x = backward[offset + k + 1];
+                } else {
+                    x = backward[offset + k - 1] + 1;
+                }
+
+                int startX = x;
+                while (x < n && x - k < m && a[endA - 1 - x] == b[endB - 1 - x + k]) {
+                    x++;
+                }
+
+                backward[offset + k] = x;
+                int direct = delta - k;
+                if (!odd && direct >= -d && direct <= d && x + forward[offset + direct] >= n) {
+                    return new int[] {endA - x, endB - x + k, endA - startX, endB - startX + k};
+                }
+            }
+        }
+
+        throw new IllegalStateException("No middle snake found");
+    }
+}
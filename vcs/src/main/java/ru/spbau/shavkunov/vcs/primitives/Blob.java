@@ -7,6 +7,7 @@ import org.slf4j.LoggerFactory;
 import ru.spbau.shavkunov.vcs.exceptions.NotRegularFileException;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -42,12 +43,30 @@ public class Blob extends VcsObjectWithHash {
         }
 
         pathToFile = path.normalize().toString();
-        hash = DigestUtils.sha1Hex(Files.readAllBytes(path));
+        try (InputStream input = Files.newInputStream(path)) {
+            hash = ObjectId.fromBytes(DigestUtils.sha1(input));
+        }
+
         logger.debug("Created blob with hash : " + hash);
     }
 
+    /**
+     * Создание объекта Blob с уже известным хешом, без чтения файла.
+     * @param path путь к файлу пользователя.
+     * @param hash хеш содержимого файла.
+     */
+    public Blob(@NotNull Path path, @NotNull ObjectId hash) {
+        pathToFile = path.normalize().toString();
+        this.hash = hash;
+    }
+
     @Override
     public @NotNull byte[] getContent() throws IOException {
         return Files.readAllBytes(getPathToFile());
     }
+
+    @Override
+    public @NotNull InputStream getContentStream() throws IOException {
+        return Files.newInputStream(getPathToFile());
+    }
 }
\ No newline at end of file
@@ -1,7 +1,8 @@
 package ru.spbau.shavkunov.vcs.primitives;
 
-import org.apache.commons.codec.digest.DigestUtils;
 import org.jetbrains.annotations.NotNull;
+import ru.spbau.shavkunov.vcs.data.BinaryDecoder;
+import ru.spbau.shavkunov.vcs.data.BinaryEncoder;
 
 import java.io.*;
 import java.util.ArrayList;
@@ -12,6 +13,11 @@ import java.util.List;
  * Реализация класс, который представляет собой некоторое состояние репозитория.
  */
 public class Commit extends VcsObjectWithHash {
+    /**
+     * Версия двоичного формата коммита.
+     */
+    private static final int FORMAT_VERSION = 1;
+
     /**
      * Дата сделанного коммита.
      */
@@ -30,12 +36,12 @@ public class Commit extends VcsObjectWithHash {
     /**
      * Хеш дерева, которое хранит в себе структуру файлов и папок.
      */
-    private @NotNull String treeHash;
+    private @NotNull ObjectId treeHash;
 
     /**
      * Список хешей коммитов, порождающих данный.
      */
-    private @NotNull ArrayList<String> parentCommits;
+    private @NotNull ArrayList<ObjectId> parentCommits;
 
     /**
      * Создание коммита и сохранение его в репозиторий.
@@ -45,17 +51,31 @@ public class Commit extends VcsObjectWithHash {
      * @param parentCommits коммиты предки.
      * @throws IOException исключение, если возникли проблемы с чтением файлов.
      */
-    public Commit(@NotNull String author, @NotNull String message, @NotNull String treeHash,
-                  @NotNull ArrayList<String> parentCommits)
+    public Commit(@NotNull String author, @NotNull String message, @NotNull ObjectId treeHash,
+                  @NotNull ArrayList<ObjectId> parentCommits)
                  throws IOException {
-        this.date = new Date();
+        this(new Date(), author, message, treeHash, parentCommits);
+    }
+
+    /**
+     * Создание коммита с заданной датой, например при переносе коммита из старого формата.
+     * @param date дата коммита.
+     * @param author автор коммита.
+     * @param message сообщение коммита.
+     * @param treeHash хеш дерева репозитория.
+     * @param parentCommits коммиты предки.
+     * @throws IOException исключение, если возникли проблемы с чтением файлов.
+     */
+    public Commit(@NotNull Date date, @NotNull String author, @NotNull String message, @NotNull ObjectId treeHash,
+                  @NotNull ArrayList<ObjectId> parentCommits)
+                 throws IOException {
+        this.date = date;
         this.author = author;
         this.message = message;
         this.treeHash = treeHash;
         this.parentCommits = parentCommits;
 
-        byte[] content = getContent();
-        hash = DigestUtils.sha1Hex(content);
+        hash = ObjectId.hashOf(getContent());
     }
 
     /**
@@ -65,19 +85,22 @@ public class Commit extends VcsObjectWithHash {
      * @throws IOException исключение, если возникли проблемы с чтением файлов.
      * @throws ClassNotFoundException исключение, если не удалось интерпретировать данные(хеш не коммита)
      */
-    @SuppressWarnings("unchecked")
-    public Commit(@NotNull byte[] content, @NotNull String commitHash) throws IOException, ClassNotFoundException {
-        try (ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(content);
-             ObjectInputStream input = new ObjectInputStream(byteArrayInputStream)) {
-
-            date = (Date) input.readObject();
-            author = (String) input.readObject();
-            message = (String) input.readObject();
-            treeHash = (String) input.readObject();
-            parentCommits = (ArrayList<String>) input.readObject();
+    public Commit(@NotNull byte[] content, @NotNull ObjectId commitHash) throws IOException, ClassNotFoundException {
+        hash = commitHash;
+        BinaryDecoder decoder = new BinaryDecoder(content);
+        decoder.readVersion(FORMAT_VERSION);
+        date = new Date(decoder.readVarint());
+        author = decoder.readString();
+        message = decoder.readString();
+        treeHash = decoder.readHash();
+
+        int parentsCount = decoder.readLength();
+        parentCommits = new ArrayList<>(parentsCount);
+        for (int i = 0; i < parentsCount; i++) {
+            parentCommits.add(decoder.readHash());
         }
 
-        hash = commitHash;
+        decoder.finish();
     }
 
     /**
@@ -108,34 +131,31 @@ public class Commit extends VcsObjectWithHash {
      * Получение хеша дерева коммита.
      * @return возвращает хеш дерева коммита.
      */
-    public @NotNull String getTreeHash() {
+    public @NotNull ObjectId getTreeHash() {
         return treeHash;
     }
 
     @Override
     public @NotNull byte[] getContent() throws IOException {
-        byte[] res;
-        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-             ObjectOutputStream output = new ObjectOutputStream(byteArrayOutputStream)) {
-
-            output.writeObject(date);
-            output.writeObject(author);
-            output.writeObject(message);
-            output.writeObject(treeHash);
-            output.writeObject(parentCommits);
-
-            output.flush();
-            res = byteArrayOutputStream.toByteArray();
+        BinaryEncoder encoder = new BinaryEncoder(FORMAT_VERSION);
+        encoder.writeVarint(date.getTime())
+               .writeString(author)
+               .writeString(message)
+               .writeHash(treeHash)
+               .writeVarint(parentCommits.size());
+
+        for (ObjectId parent : parentCommits) {
+            encoder.writeHash(parent);
         }
 
-        return res;
+        return encoder.toByteArray();
     }
 
     /**
      * Получение коммитов предков текущего коммита.
      * @return возвращает предков коммита.
      */
-    public @NotNull List<String> getParentCommits() {
+    public @NotNull List<ObjectId> getParentCommits() {
         return parentCommits;
     }
 }
\ No newline at end of file
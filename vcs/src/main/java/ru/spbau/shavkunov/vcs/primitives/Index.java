@@ -0,0 +1,239 @@
+package ru.spbau.shavkunov.vcs.primitives;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.spbau.shavkunov.vcs.data.IndexFile;
+
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Представление файла index. Записи с диска не разбираются заранее: поиск идет двоичным поиском
+ * по отображенному в память файлу, а изменения хранятся отдельно, пока index не будет записан.
+ * Записи перечисляются в порядке путей.
+ *
+ * Вместе с записями index хранит хеши деревьев папок, посчитанные по записям. Изменение записи
+ * сбрасывает хеши всех папок на пути к файлу, поэтому оставшиеся хеши соответствуют текущим записям.
+ */
+public class Index implements Iterable<ObjectWithName<IndexEntry>> {
+    /**
+     * Порядок путей, совпадающий с порядком байт UTF-8, в котором записи лежат в файле.
+     */
+    public static final @NotNull Comparator<String> PATH_ORDER = (first, second) -> {
+        int firstIndex = 0;
+        int secondIndex = 0;
+        while (firstIndex < first.length() && secondIndex < second.length()) {
+            int firstCodePoint = first.codePointAt(firstIndex);
+            int secondCodePoint = second.codePointAt(secondIndex);
+            if (firstCodePoint != secondCodePoint) {
+                return Integer.compare(firstCodePoint, secondCodePoint);
+            }
+
+            firstIndex += Character.charCount(firstCodePoint);
+            secondIndex += Character.charCount(secondCodePoint);
+        }
+
+        return Integer.compare(first.length() - firstIndex, second.length() - secondIndex);
+    };
+
+    /**
+     * Прочитанный с диска файл index или null, если его нет или он был очищен.
+     */
+    private @Nullable IndexFile indexFile;
+
+    /**
+     * Изменения относительно файла на диске. Значение null означает, что запись удалена.
+     */
+    private @NotNull TreeMap<String, IndexEntry> changes = new TreeMap<>(PATH_ORDER);
+
+    /**
+     * Хеши деревьев папок, которые соответствуют текущим записям. Корневая папка имеет пустой путь.
+     */
+    private @NotNull TreeMap<String, ObjectId> treeHashes;
+
+    /**
+     * Создание index поверх файла с диска.
+     * @param indexFile прочитанный файл index или null для пустого index.
+     */
+    public Index(@Nullable IndexFile indexFile) {
+        this.indexFile = indexFile;
+        treeHashes = indexFile == null ? new TreeMap<>(PATH_ORDER) : indexFile.getTreeHashes();
+    }
+
+    /**
+     * Создание пустого index.
+     */
+    public Index() {
+        this(null);
+    }
+
+    /**
+     * Получение записи файла.
+     * @param pathToFile путь к файлу.
+     * @return запись файла или null, если файла нет в index.
+     */
+    public @Nullable IndexEntry get(@NotNull Path pathToFile) {
+        String path = pathToFile.toString();
+        if (changes.containsKey(path)) {
+            return changes.get(path);
+        }
+
+        if (indexFile == null) {
+            return null;
+        }
+
+        int position = indexFile.find(path);
+        return position == -1 ? null : indexFile.getEntry(position);
+    }
+
+    /**
+     * Проверка наличия файла в index.
+     * @param pathToFile путь к файлу.
+     * @return true, если файл есть в index, иначе false.
+     */
+    public boolean contains(@NotNull Path pathToFile) {
+        return get(pathToFile) != null;
+    }
+
+    /**
+     * Добавление или замена записи файла.
+     * @param pathToFile путь к файлу.
+     * @param entry запись файла.
+     */
+    public void put(@NotNull Path pathToFile, @NotNull IndexEntry entry) {
+        IndexEntry previous = get(pathToFile);
+        if (previous == null || !previous.getHash().equals(entry.getHash())) {
+            invalidateTreeHashes(pathToFile);
+        }
+
+        changes.put(pathToFile.toString(), entry);
+    }
+
+    /**
+     * Удаление записи файла.
+     * @param pathToFile путь к файлу.
+     */
+    public void remove(@NotNull Path pathToFile) {
+        invalidateTreeHashes(pathToFile);
+        if (indexFile == null) {
+            changes.remove(pathToFile.toString());
+        } else {
+            changes.put(pathToFile.toString(), null);
+        }
+    }
+
+    /**
+     * Удаление всех записей.
+     */
+    public void clear() {
+        indexFile = null;
+        changes.clear();
+        treeHashes.clear();
+    }
+
+    /**
+     * Сброс хешей деревьев всех папок на пути к файлу.
+     * @param pathToFile путь к измененному файлу.
+     */
+    private void invalidateTreeHashes(@NotNull Path pathToFile) {
+        for (Path directory = pathToFile.getParent(); directory != null; directory = directory.getParent()) {
+            treeHashes.remove(directory.toString());
+        }
+
+        treeHashes.remove("");
+    }
+
+    /**
+     * Получение хеша дерева папки.
+     * @param directory путь к папке, пустой для корня.
+     * @return хеш дерева, построенного по текущим записям, или null, если он не известен.
+     */
+    public @Nullable ObjectId getTreeHash(@NotNull String directory) {
+        return treeHashes.get(directory);
+    }
+
+    /**
+     * Сохранение хеша дерева папки, построенного по текущим записям.
+     * @param directory путь к папке, пустой для корня.
+     * @param hash хеш дерева.
+     */
+    public void putTreeHash(@NotNull String directory, @NotNull ObjectId hash) {
+        treeHashes.put(directory, hash);
+    }
+
+    /**
+     * Получение всех известных хешей деревьев папок.
+     * @return хеши деревьев по путям папок в порядке путей.
+     */
+    public @NotNull SortedMap<String, ObjectId> getTreeHashes() {
+        return treeHashes;
+    }
+
+    /**
+     * Перечисление записей в порядке путей. Записи с диска и изменения сливаются на лету.
+     * @return итератор по записям с их путями.
+     */
+    @Override
+    public @NotNull Iterator<ObjectWithName<IndexEntry>> iterator() {
+        return new Iterator<ObjectWithName<IndexEntry>>() {
+            private int position = 0;
+            private @NotNull Iterator<Map.Entry<String, IndexEntry>> changesIterator = changes.entrySet().iterator();
+            private @Nullable Map.Entry<String, IndexEntry> change = nextChange();
+            private @Nullable ObjectWithName<IndexEntry> next = findNext();
+
+            private @Nullable Map.Entry<String, IndexEntry> nextChange() {
+                return changesIterator.hasNext() ? changesIterator.next() : null;
+            }
+
+            private @Nullable ObjectWithName<IndexEntry> findNext() {
+                while (true) {
+                    String path = null;
+                    if (indexFile != null && position < indexFile.size()) {
+                        path = indexFile.getPath(position);
+                    }
+
+                    if (change != null && (path == null || PATH_ORDER.compare(change.getKey(), path) <= 0)) {
+                        Map.Entry<String, IndexEntry> current = change;
+                        change = nextChange();
+                        if (path != null && current.getKey().equals(path)) {
+                            position++;
+                        }
+
+                        if (current.getValue() != null) {
+                            return new ObjectWithName<>(current.getValue(), current.getKey());
+                        }
+
+                        continue;
+                    }
+
+                    if (path == null) {
+                        return null;
+                    }
+
+                    return new ObjectWithName<>(indexFile.getEntry(position++), path);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public ObjectWithName<IndexEntry> next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+
+                ObjectWithName<IndexEntry> result = next;
+                next = findNext();
+                return result;
+            }
+        };
+    }
+}
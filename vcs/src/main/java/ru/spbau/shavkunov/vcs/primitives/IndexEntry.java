@@ -0,0 +1,141 @@
+package ru.spbau.shavkunov.vcs.primitives;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запись файла index: хеш файла и данные о нем из файловой системы на момент добавления.
+ * По этим данным можно понять, изменялся ли файл, не читая его содержимое.
+ */
+public class IndexEntry {
+    /**
+     * Значение размера для записей, у которых нет данных о файле.
+     */
+    public static final long UNKNOWN_SIZE = -1;
+
+    /**
+     * Хеш файла.
+     */
+    private @NotNull ObjectId hash;
+
+    /**
+     * Размер файла в байтах.
+     */
+    private long size;
+
+    /**
+     * Время последнего изменения файла в наносекундах.
+     */
+    private long modificationTime;
+
+    /**
+     * Идентификатор файла в файловой системе(например, номер inode), если система его предоставляет.
+     */
+    private @Nullable String fileKey;
+
+    /**
+     * Создание записи с известными данными о файле.
+     * @param hash хеш файла.
+     * @param size размер файла.
+     * @param modificationTime время последнего изменения файла в наносекундах.
+     * @param fileKey идентификатор файла в файловой системе.
+     */
+    public IndexEntry(@NotNull ObjectId hash, long size, long modificationTime, @Nullable String fileKey) {
+        this.hash = hash;
+        this.size = size;
+        this.modificationTime = modificationTime;
+        this.fileKey = fileKey;
+    }
+
+    /**
+     * Создание записи без данных о файле. Такая запись всегда считается устаревшей.
+     * @param hash хеш файла.
+     */
+    public IndexEntry(@NotNull ObjectId hash) {
+        this(hash, UNKNOWN_SIZE, 0, null);
+    }
+
+    /**
+     * Создание записи по текущему состоянию файла.
+     * @param pathToFile путь к файлу.
+     * @param hash хеш содержимого файла.
+     * @return запись с данными о файле.
+     * @throws IOException исключение, если не удалось прочитать атрибуты файла.
+     */
+    public static @NotNull IndexEntry fromFile(@NotNull Path pathToFile, @NotNull ObjectId hash) throws IOException {
+        return fromAttributes(hash, Files.readAttributes(pathToFile, BasicFileAttributes.class));
+    }
+
+    /**
+     * Создание записи по заранее прочитанным атрибутам файла. Атрибуты нужно читать до хеширования файла:
+     * если файл изменится во время чтения, запись не совпадет с ним, и файл будет прочитан заново.
+     * @param hash хеш содержимого файла.
+     * @param attributes атрибуты файла.
+     * @return запись с данными о файле.
+     */
+    public static @NotNull IndexEntry fromAttributes(@NotNull ObjectId hash, @NotNull BasicFileAttributes attributes) {
+        Object key = attributes.fileKey();
+
+        return new IndexEntry(hash, attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                              key == null ? null : key.toString());
+    }
+
+    /**
+     * Проверка, что файл не изменялся с момента создания записи.
+     * @param pathToFile путь к файлу.
+     * @return true, если размер, время изменения и идентификатор файла совпадают с записанными, иначе false.
+     */
+    public boolean isUpToDate(@NotNull Path pathToFile) {
+        if (size == UNKNOWN_SIZE) {
+            return false;
+        }
+
+        IndexEntry current;
+        try {
+            current = fromFile(pathToFile, hash);
+        } catch (IOException e) {
+            return false;
+        }
+
+        return size == current.size && modificationTime == current.modificationTime
+               && (fileKey == null || fileKey.equals(current.fileKey));
+    }
+
+    /**
+     * Получение хеша файла.
+     * @return хеш файла.
+     */
+    public @NotNull ObjectId getHash() {
+        return hash;
+    }
+
+    /**
+     * Получение размера файла.
+     * @return размер файла или UNKNOWN_SIZE, если данных о файле нет.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Получение времени последнего изменения файла.
+     * @return время изменения в наносекундах.
+     */
+    public long getModificationTime() {
+        return modificationTime;
+    }
+
+    /**
+     * Получение идентификатора файла в файловой системе.
+     * @return идентификатор файла или null, если он неизвестен.
+     */
+    public @Nullable String getFileKey() {
+        return fileKey;
+    }
+}
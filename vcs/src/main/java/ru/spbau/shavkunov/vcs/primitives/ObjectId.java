@@ -0,0 +1,242 @@
+package ru.spbau.shavkunov.vcs.primitives;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * Неизменяемый SHA-1 хеш объекта VCS. Хранит 20 байт хеша в двух long и одном int, а не в строке
+ * из 40 шестнадцатеричных цифр: так хеш занимает втрое меньше памяти и сравнивается за три операции.
+ * Порядок хешей совпадает с порядком их байт как беззнаковых чисел.
+ */
+public final class ObjectId implements Comparable<ObjectId>, Serializable {
+    /**
+     * Размер хеша в байтах.
+     */
+    public static final int SIZE = 20;
+
+    /**
+     * Длина шестнадцатеричной записи хеша.
+     */
+    public static final int HEX_LENGTH = 2 * SIZE;
+
+    /**
+     * Байты 0-7 хеша.
+     */
+    private final long first;
+
+    /**
+     * Байты 8-15 хеша.
+     */
+    private final long second;
+
+    /**
+     * Байты 16-19 хеша.
+     */
+    private final int third;
+
+    /**
+     * Создание хеша по его частям.
+     * @param first байты 0-7 хеша.
+     * @param second байты 8-15 хеша.
+     * @param third байты 16-19 хеша.
+     */
+    private ObjectId(long first, long second, int third) {
+        this.first = first;
+        this.second = second;
+        this.third = third;
+    }
+
+    /**
+     * Создание хеша из байт.
+     * @param bytes массив, в котором лежит хеш.
+     * @param offset начало хеша в массиве.
+     * @return хеш.
+     */
+    public static @NotNull ObjectId fromBytes(@NotNull byte[] bytes, int offset) {
+        return fromBuffer(ByteBuffer.wrap(bytes), offset);
+    }
+
+    /**
+     * Создание хеша из 20 байт.
+     * @param bytes хеш в виде байт.
+     * @return хеш.
+     */
+    public static @NotNull ObjectId fromBytes(@NotNull byte[] bytes) {
+        if (bytes.length != SIZE) {
+            throw new IllegalArgumentException("Hash must be " + SIZE + " bytes long");
+        }
+
+        return fromBytes(bytes, 0);
+    }
+
+    /**
+     * Чтение хеша из буфера, не меняя позицию буфера.
+     * @param buffer буфер, в котором лежит хеш.
+     * @param offset смещение хеша в буфере.
+     * @return хеш.
+     */
+    public static @NotNull ObjectId fromBuffer(@NotNull ByteBuffer buffer, int offset) {
+        return new ObjectId(buffer.getLong(offset), buffer.getLong(offset + 8), buffer.getInt(offset + 16));
+    }
+
+    /**
+     * Разбор шестнадцатеричной записи хеша.
+     * @param hex 40 шестнадцатеричных цифр.
+     * @return хеш.
+     * @throws IllegalArgumentException исключение, если строка не является записью хеша.
+     */
+    public static @NotNull ObjectId fromHex(@NotNull String hex) {
+        if (!isHex(hex)) {
+            throw new IllegalArgumentException("Malformed hash " + hex);
+        }
+
+        return new ObjectId(Long.parseUnsignedLong(hex.substring(0, 16), 16),
+                            Long.parseUnsignedLong(hex.substring(16, 32), 16),
+                            Integer.parseUnsignedInt(hex.substring(32, 40), 16));
+    }
+
+    /**
+     * Проверка, является ли строка записью хеша.
+     * @param hex проверяемая строка.
+     * @return true, если строка состоит из 40 шестнадцатеричных цифр, иначе false.
+     */
+    public static boolean isHex(@NotNull String hex) {
+        if (hex.length() != HEX_LENGTH) {
+            return false;
+        }
+
+        for (int i = 0; i < HEX_LENGTH; i++) {
+            if (Character.digit(hex.charAt(i), 16) == -1) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Вычисление хеша содержимого.
+     * @param content содержимое объекта.
+     * @return SHA-1 хеш содержимого.
+     */
+    public static @NotNull ObjectId hashOf(@NotNull byte[] content) {
+        return fromBytes(DigestUtils.sha1(content));
+    }
+
+    /**
+     * Запись хеша в буфер начиная с его текущей позиции.
+     * @param buffer буфер, куда записывается хеш.
+     */
+    public void writeTo(@NotNull ByteBuffer buffer) {
+        buffer.putLong(first);
+        buffer.putLong(second);
+        buffer.putInt(third);
+    }
+
+    /**
+     * Получение хеша в виде байт.
+     * @return 20 байт хеша.
+     */
+    public @NotNull byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        writeTo(buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Получение первого байта хеша.
+     * @return первый байт как беззнаковое число.
+     */
+    public int getFirstByte() {
+        return (int) (first >>> 56);
+    }
+
+    /**
+     * Сравнение хеша с записанным в буфере без создания объекта.
+     * @param buffer буфер, в котором лежит хеш.
+     * @param offset смещение хеша в буфере.
+     * @return результат сравнения этого хеша с хешом в буфере.
+     */
+    public int compareTo(@NotNull ByteBuffer buffer, int offset) {
+        int comparison = Long.compareUnsigned(first, buffer.getLong(offset));
+        if (comparison != 0) {
+            return comparison;
+        }
+
+        comparison = Long.compareUnsigned(second, buffer.getLong(offset + 8));
+        if (comparison != 0) {
+            return comparison;
+        }
+
+        return Integer.compareUnsigned(third, buffer.getInt(offset + 16));
+    }
+
+    /**
+     * Получение шестнадцатеричной записи хеша.
+     * @return 40 шестнадцатеричных цифр.
+     */
+    public @NotNull String toHex() {
+        char[] hex = new char[HEX_LENGTH];
+        writeHex(hex, 0, first, 16);
+        writeHex(hex, 16, second, 16);
+        writeHex(hex, 32, third & 0xFFFFFFFFL, 8);
+
+        return new String(hex);
+    }
+
+    /**
+     * Запись числа в шестнадцатеричном виде с ведущими нулями.
+     * @param hex массив, куда записываются цифры.
+     * @param offset начало записи в массиве.
+     * @param value число.
+     * @param digits количество цифр.
+     */
+    private static void writeHex(@NotNull char[] hex, int offset, long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            hex[offset + i] = Character.forDigit((int) (value & 0xF), 16);
+            value >>>= 4;
+        }
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return toHex();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+
+        if (!(other instanceof ObjectId)) {
+            return false;
+        }
+
+        ObjectId objectId = (ObjectId) other;
+        return first == objectId.first && second == objectId.second && third == objectId.third;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (first >>> 32);
+    }
+
+    @Override
+    public int compareTo(@NotNull ObjectId other) {
+        int comparison = Long.compareUnsigned(first, other.first);
+        if (comparison != 0) {
+            return comparison;
+        }
+
+        comparison = Long.compareUnsigned(second, other.second);
+        if (comparison != 0) {
+            return comparison;
+        }
+
+        return Integer.compareUnsigned(third, other.third);
+    }
+}
@@ -1,6 +1,7 @@
 package ru.spbau.shavkunov.vcs.primitives;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.spbau.shavkunov.vcs.VcsManager;
@@ -22,7 +23,7 @@ public class Reference {
     /**
      * Содержимое файла в папке refs.
      */
-    private @NotNull String commitHash;
+    private @Nullable ObjectId commitHash;
 
     /**
      * Создание объекта ссылки репозитория. Если в head лежит название ветки, то это будет стандартной ссылкой, иначе
@@ -31,7 +32,7 @@ public class Reference {
      * @param commitHash имя коммита, на который указывает ссылка.
      * @throws IOException исключение, если возникли проблемы с чтением файла.
      */
-    public Reference(@NotNull String name, @NotNull String commitHash) throws IOException {
+    public Reference(@NotNull String name, @Nullable ObjectId commitHash) throws IOException {
         this.name = name;
         this.commitHash = commitHash;
 
@@ -51,9 +52,9 @@ public class Reference {
 
     /**
      * Получение хеша коммита ссылки.
-     * @return хеш коммита.
+     * @return хеш коммита или null, если в ветке еще нет коммитов.
      */
-    public @NotNull String getCommitHash() {
+    public @Nullable ObjectId getCommitHash() {
         return commitHash;
     }
 
@@ -71,7 +72,7 @@ public class Reference {
      * @param repository репозиторий, где требуется обновить информацию.
      * @throws IOException исключение, если возникли проблемы с чтением файла.
      */
-    public void refreshCommitHash(@NotNull String newCommitHash, @NotNull Repository repository) throws IOException {
+    public void refreshCommitHash(@NotNull ObjectId newCommitHash, @NotNull Repository repository) throws IOException {
         repository.storeReferenceCommit(name, newCommitHash);
         commitHash = newCommitHash;
     }
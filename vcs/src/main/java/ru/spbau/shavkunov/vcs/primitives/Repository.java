@@ -1,19 +1,36 @@
 package ru.spbau.shavkunov.vcs.primitives;
 
+import org.apache.commons.io.IOUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.spbau.shavkunov.vcs.data.CommitGraph;
 import ru.spbau.shavkunov.vcs.data.Datastore;
 import ru.spbau.shavkunov.vcs.data.Filesystem;
+import ru.spbau.shavkunov.vcs.data.ObjectCache;
+import ru.spbau.shavkunov.vcs.data.PackedDatastore;
+import ru.spbau.shavkunov.vcs.data.RestoreMode;
 import ru.spbau.shavkunov.vcs.exceptions.*;
-import ru.spbau.shavkunov.vcs.trees.FilesTree;
+import ru.spbau.shavkunov.vcs.trees.MergeConflictPolicy;
+import ru.spbau.shavkunov.vcs.trees.TreeDiff;
 import ru.spbau.shavkunov.vcs.trees.VcsTree;
+import ru.spbau.shavkunov.vcs.utils.RestoreFilesTask;
+import ru.spbau.shavkunov.vcs.utils.UntrackedFilesTask;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static ru.spbau.shavkunov.vcs.utils.Constants.OBJECT_CACHE_SIZE;
 
 /**
  * Класс, осуществляющий всю внутреннюю работу с репозиторием.
@@ -31,9 +48,25 @@ public class Repository {
     private @NotNull Datastore data;
 
     /**
-     * Представление файла индекса -- множество путей файлов и их хешей.
+     * Представление файла индекса -- множество путей файлов, их хешей и данных о файлах.
+     */
+    private @NotNull Index index;
+
+    /**
+     * Начато ли пакетное изменение index. Во время него изменения не записываются на диск до фиксации.
+     */
+    private boolean isIndexUpdateStarted = false;
+
+    /**
+     * Прочитанные коммиты и деревья, размер которых считается по прочитанным байтам. Коммиты неизменяемы
+     * и отдаются повторно, а деревья хранятся без прочитанных поддеревьев и отдаются копиями.
+     */
+    private final @NotNull ObjectCache cache = new ObjectCache(OBJECT_CACHE_SIZE);
+
+    /**
+     * Пул потоков, в котором восстанавливаются файлы при переходе между деревьями.
      */
-    private @NotNull Map<Path, String> index;
+    private @NotNull ForkJoinPool pool = ForkJoinPool.commonPool();
 
     /**
      * Создание репозитория с файловым представляем VCS.
@@ -59,10 +92,20 @@ public class Repository {
      * @param pathToFile путь к файлу.
      * @param hash хеш добавляемого файла.
      */
-    public void addFileToIndex(@NotNull Path pathToFile, @NotNull String hash) throws IOException {
+    public void addFileToIndex(@NotNull Path pathToFile, @NotNull ObjectId hash) throws IOException {
+        addEntryToIndex(pathToFile, IndexEntry.fromFile(pathToFile, hash));
+    }
+
+    /**
+     * Добавить в index готовую запись файла.
+     * @param pathToFile путь к файлу.
+     * @param entry запись файла с его хешом и атрибутами.
+     * @throws IOException исключение, если возникли проблемы с записью index.
+     */
+    public void addEntryToIndex(@NotNull Path pathToFile, @NotNull IndexEntry entry) throws IOException {
         logger.debug("Adding file {} to index", pathToFile);
-        index.put(pathToFile, hash);
-        data.updateIndex(index);
+        index.put(pathToFile, entry);
+        saveIndex();
     }
 
     /**
@@ -79,66 +122,266 @@ public class Repository {
 
         pathToFile.toFile().delete();
         index.remove(pathToFile);
-        data.updateIndex(index);
+        saveIndex();
+    }
+
+    /**
+     * Начало пакетного изменения index. До вызова commitIndexUpdate() добавление и удаление файлов
+     * меняют index только в памяти, а index на диске заблокирован от изменений другими процессами.
+     * После блокировки index перечитывается, чтобы не потерять изменения, сделанные другими процессами
+     * после создания репозитория.
+     * @throws IOException исключение, если index уже заблокирован или не удалось его прочитать.
+     */
+    public void beginIndexUpdate() throws IOException {
+        logger.debug("Beginning index update");
+        data.beginIndexUpdate();
+        try {
+            index = data.readIndex();
+        } catch (IOException e) {
+            data.abortIndexUpdate();
+            throw e;
+        }
+
+        isIndexUpdateStarted = true;
+    }
+
+    /**
+     * Фиксация пакетного изменения index: index записывается на диск один раз.
+     * @throws IOException исключение, если возникли проблемы с записью файла.
+     */
+    public void commitIndexUpdate() throws IOException {
+        logger.debug("Committing index update");
+        isIndexUpdateStarted = false;
+        data.commitIndexUpdate(index);
+    }
+
+    /**
+     * Отмена пакетного изменения index: изменения в памяти отбрасываются, index на диске не меняется.
+     * @throws IOException исключение, если возникли проблемы с чтением файла.
+     */
+    public void abortIndexUpdate() throws IOException {
+        logger.debug("Aborting index update");
+        isIndexUpdateStarted = false;
+        data.abortIndexUpdate();
+        index = data.readIndex();
+    }
+
+    /**
+     * Запись index на диск, если не идет пакетное изменение.
+     * @throws IOException исключение, если возникли проблемы с записью файла.
+     */
+    private void saveIndex() throws IOException {
+        if (!isIndexUpdateStarted) {
+            data.updateIndex(index);
+        }
     }
 
     /**
-     * Создание дерева структуры файлов и папок репозитория.
+     * Создание дерева структуры файлов и папок репозитория. В дерево попадают хеши файлов из index,
+     * а не из рабочей папки: неподготовленные изменения в коммит не входят. Файлы, данные о которых
+     * в index устарели, хешируются, и если содержимое не изменилось, данные о файле в index обновляются.
+     * Атрибуты файла читаются до хеширования, поэтому изменение файла во время чтения не будет пропущено.
+     * Папки, хеш дерева которых сохранен в index, не собираются заново, а берутся из хранилища. Хеши новых
+     * деревьев сохраняются в index, а уже существующие деревья не записываются повторно.
      * @return дерево с структурой папок.
      * @throws IOException исключение, если возникли проблемы с чтением файла.
      * @throws NotRegularFileException исключение, если вдруг объект Blob создается не от файла.
      */
     public @NotNull VcsTree createTreeFromIndex() throws IOException, NotRegularFileException {
         logger.debug("Start creating tree from index");
-        TreeMap<Path, VcsTree> trees = new TreeMap<>();
         Path rootPath = Paths.get(".").normalize();
-        trees.put(rootPath, new VcsTree(rootPath));
-        for (Path pathToFile : index.keySet()) {
-            Path absolutePrefix = rootPath;
-            for (Path prefix : pathToFile) {
-                logger.debug(prefix.toString());
-                absolutePrefix = absolutePrefix.resolve(prefix);
-                VcsTree selectedVcsTree;
-                if (absolutePrefix.equals(pathToFile)) {
-                    Blob blob = new Blob(pathToFile);
-
-                    if (pathToFile.getParent() == null) {
-                        selectedVcsTree = trees.get(rootPath);
-                    } else {
-                        selectedVcsTree = trees.get(pathToFile.getParent());
-                    }
-
-                    selectedVcsTree.addBlob(blob, pathToFile.toString());
-                } else {
-                    if (!trees.containsKey(absolutePrefix)) {
-                        VcsTree prefixVcsTree = new VcsTree(prefix);
-                        trees.put(absolutePrefix, prefixVcsTree);
-                        if (absolutePrefix.getParent() != null) {
-                            selectedVcsTree = trees.get(absolutePrefix.getParent());
-                        } else {
-                            selectedVcsTree = trees.get(rootPath);
-                        }
-
-                        selectedVcsTree.addChild(prefixVcsTree);
-                    }
+        List<Blob> files = new ArrayList<>();
+        Map<Path, IndexEntry> refreshedEntries = new HashMap<>();
+        for (ObjectWithName<IndexEntry> entry : index) {
+            Path pathToFile = Paths.get(entry.getName());
+            IndexEntry indexEntry = entry.getContent();
+            if (!indexEntry.isUpToDate(pathToFile) && Files.isRegularFile(pathToFile)) {
+                BasicFileAttributes attributes = Files.readAttributes(pathToFile, BasicFileAttributes.class);
+                if (indexEntry.getHash().equals(new Blob(pathToFile).getHash())) {
+                    refreshedEntries.put(pathToFile, IndexEntry.fromAttributes(indexEntry.getHash(), attributes));
                 }
             }
+
+            files.add(new Blob(pathToFile, indexEntry.getHash()));
+        }
+
+        if (!refreshedEntries.isEmpty()) {
+            refreshedEntries.forEach(index::put);
+        }
+
+        HashMap<Path, VcsTree> trees = new HashMap<>();
+        HashSet<Path> storedTrees = new HashSet<>();
+        for (Blob blob : files) {
+            Path pathToFile = blob.getPathToFile();
+            VcsTree tree = getIndexTree(pathToFile.getParent() == null ? rootPath : pathToFile.getParent(),
+                                        trees, storedTrees);
+            if (tree != null) {
+                tree.addBlob(blob, pathToFile.toString());
+            }
         }
 
+        getIndexTree(rootPath, trees, storedTrees);
+
         logger.debug("Computing tree hashes:");
         ArrayList<Path> pathsInTree = new ArrayList<>(trees.keySet());
-        Collections.reverse(pathsInTree);
+        pathsInTree.sort(Collections.reverseOrder());
+        boolean isTreeHashAdded = false;
         for (Path path : pathsInTree) {
-            trees.get(path).computeHash();
-            storeObject(trees.get(path));
-            logger.debug(trees.get(path).getHash());
+            if (storedTrees.contains(path)) {
+                continue;
+            }
+
+            VcsTree tree = trees.get(path);
+            tree.computeHash();
+            storeObject(tree);
+            index.putTreeHash(path.toString(), tree.getHash());
+            isTreeHashAdded = true;
+
+            logger.debug(String.valueOf(tree.getHash()));
         }
-        VcsTree resVcsTree = trees.get(rootPath);
 
-        logger.debug("Tree with hash " + resVcsTree.getHash() + " from index was created");
+        if (!refreshedEntries.isEmpty() || isTreeHashAdded) {
+            saveIndex();
+        }
+
+        VcsTree resVcsTree = trees.get(rootPath);
+        logger.debug("Tree with hash " + resVcsTree.getHash() + " from index was created, "
+                     + (trees.size() - storedTrees.size()) + " trees were rebuilt");
         return resVcsTree;
     }
 
+    /**
+     * Получение дерева папки при сборке дерева из index. Если хеш дерева папки сохранен в index,
+     * то в дерево родителя добавляется ссылка на сохраненное дерево, и файлы в эту папку добавлять не нужно.
+     * @param directory путь к папке.
+     * @param trees уже созданные деревья папок.
+     * @param storedTrees папки, вместо которых взяты сохраненные деревья.
+     * @return дерево, куда нужно добавлять файлы папки, или null, если папка или одна из ее родительских
+     * папок взята из хранилища.
+     */
+    private @Nullable VcsTree getIndexTree(@NotNull Path directory, @NotNull HashMap<Path, VcsTree> trees,
+                                           @NotNull HashSet<Path> storedTrees) {
+        if (trees.containsKey(directory)) {
+            return storedTrees.contains(directory) ? null : trees.get(directory);
+        }
+
+        VcsTree parentTree = null;
+        if (!directory.toString().isEmpty()) {
+            Path parent = directory.getParent() == null ? Paths.get("") : directory.getParent();
+            parentTree = getIndexTree(parent, trees, storedTrees);
+            if (parentTree == null) {
+                return null;
+            }
+        }
+
+        VcsTree tree;
+        ObjectId treeHash = index.getTreeHash(directory.toString());
+        if (treeHash != null) {
+            String prefix = directory.getFileName() == null || directory.toString().isEmpty()
+                            ? "." : directory.getFileName().toString();
+            tree = VcsTree.fromHash(prefix, treeHash, data);
+            storedTrees.add(directory);
+        } else {
+            tree = new VcsTree(directory.toString().isEmpty() ? directory : directory.getFileName());
+        }
+
+        trees.put(directory, tree);
+        if (parentTree != null) {
+            parentTree.addChild(tree);
+        }
+
+        return storedTrees.contains(directory) ? null : tree;
+    }
+
+    /**
+     * Получение путей всех файлов index без сборки дерева.
+     * @return множество путей к файлам.
+     */
+    public @NotNull HashSet<String> getIndexedFiles() {
+        HashSet<String> files = new HashSet<>();
+        for (ObjectWithName<IndexEntry> entry : index) {
+            files.add(entry.getName());
+        }
+
+        return files;
+    }
+
+    /**
+     * Получение записей index в порядке путей.
+     * @return записи index вместе с путями к файлам.
+     */
+    public @NotNull List<ObjectWithName<IndexEntry>> getIndexEntries() {
+        List<ObjectWithName<IndexEntry>> entries = new ArrayList<>();
+        for (ObjectWithName<IndexEntry> entry : index) {
+            entries.add(entry);
+        }
+
+        return entries;
+    }
+
+    /**
+     * Получение сохраненного в index хеша дерева папки.
+     * @param directory путь к папке, пустая строка -- корень.
+     * @return хеш дерева или null, если он неизвестен или устарел.
+     */
+    public @Nullable ObjectId getIndexTreeHash(@NotNull String directory) {
+        return index.getTreeHash(directory);
+    }
+
+    /**
+     * Обновление записей index для файлов, содержимое которых не изменилось, а изменились только атрибуты.
+     * Index перечитывается под блокировкой и записывается на диск один раз. Запись обновляется, только если
+     * ее хеш в перечитанном index не изменился, так что файлы, добавленные другими процессами, не теряются.
+     * Если index заблокирован другим процессом, обновление пропускается: оно лишь ускоряет следующие проверки.
+     * @param entries новые записи вместе с путями к файлам.
+     * @throws IOException исключение, если возникли проблемы с чтением или записью index.
+     */
+    public void refreshIndexEntries(@NotNull List<ObjectWithName<IndexEntry>> entries) throws IOException {
+        try {
+            beginIndexUpdate();
+        } catch (FileAlreadyExistsException e) {
+            logger.debug("Index is locked, skipping refresh of " + entries.size() + " entries");
+            return;
+        }
+
+        try {
+            for (ObjectWithName<IndexEntry> entry : entries) {
+                Path pathToFile = Paths.get(entry.getName());
+                IndexEntry currentEntry = index.get(pathToFile);
+                if (currentEntry != null && currentEntry.getHash().equals(entry.getContent().getHash())) {
+                    index.put(pathToFile, entry.getContent());
+                }
+            }
+
+            commitIndexUpdate();
+        } catch (IOException e) {
+            abortIndexUpdate();
+            throw e;
+        }
+    }
+
+    /**
+     * Чтение раскодированного содержимого объекта целиком.
+     * @param hash хеш объекта.
+     * @return содержимое объекта.
+     * @throws IOException исключение, если объекта нет или его не удалось прочитать.
+     */
+    public @NotNull byte[] readObjectContent(@NotNull ObjectId hash) throws IOException {
+        try (InputStream input = openObject(hash)) {
+            return IOUtils.toByteArray(input);
+        }
+    }
+
+    /**
+     * Открытие объекта для чтения его раскодированного содержимого по частям.
+     * @param hash хеш объекта.
+     * @return поток с содержимым объекта.
+     * @throws IOException исключение, если объекта нет или его не удалось прочитать.
+     */
+    public @NotNull InputStream openObject(@NotNull ObjectId hash) throws IOException {
+        return data.openObject(hash);
+    }
+
     /**
      * Получение содержимого файла head.
      * @return содержимое файла head.
@@ -164,10 +407,22 @@ public class Repository {
      * @throws NoRepositoryException исключение, если по данному пути нет репозитория.
      */
     public Repository(@NotNull Path path) throws IOException, NoRepositoryException {
-        data = new Filesystem(path);
+        data = new PackedDatastore(path);
         index = data.readIndex();
     }
 
+    /**
+     * Создание репозитория с заданным пулом потоков.
+     * @param path путь к репозиторию
+     * @param pool пул потоков, в котором восстанавливаются файлы при переходе между деревьями.
+     * @throws IOException исключение, если возникли проблемы с чтением файла или файл не оказался директорией.
+     * @throws NoRepositoryException исключение, если по данному пути нет репозитория.
+     */
+    public Repository(@NotNull Path path, @NotNull ForkJoinPool pool) throws IOException, NoRepositoryException {
+        this(path);
+        this.pool = pool;
+    }
+
     /**
      * Удаление ветки.
      * @param branchName ветку с этим именем требуется удалить.
@@ -196,7 +451,7 @@ public class Repository {
      * @throws BranchAlreadyExistsException ветка на самом деле уже была создана.
      * @throws IOException исключение, если возникли проблемы с чтением файла.
      */
-    public void createNewBranch(@NotNull String branchName, @NotNull String commitHash)
+    public void createNewBranch(@NotNull String branchName, @Nullable ObjectId commitHash)
                                 throws BranchAlreadyExistsException, IOException {
 
         data.createNewBranch(branchName, commitHash);
@@ -216,18 +471,50 @@ public class Repository {
      * @param commitHash хеш коммита.
      * @return true, если коммит с таким хешом существует, иначе false.
      */
-    public boolean isCommitExists(@NotNull String commitHash) {
+    public boolean isCommitExists(@NotNull ObjectId commitHash) {
         return data.isCommitExists(commitHash);
     }
 
     /**
-     * Восстановление содержимого файла до состояния коммита.
+     * Восстановление содержимого файла до состояния коммита. Запись файла в index тоже возвращается
+     * к состоянию коммита.
      * @param pathToFile путь к файлу.
      * @param fileHash хеш файла в системе контроля версий.
      * @throws IOException исключение, если возникли проблемы с чтением файлов.
      */
-    public void restoreFile(@NotNull Path pathToFile, @NotNull String fileHash) throws IOException {
+    public void restoreFile(@NotNull Path pathToFile, @NotNull ObjectId fileHash) throws IOException {
+        data.restoreFile(pathToFile, fileHash);
+        addFileToIndex(pathToFile, fileHash);
+    }
+
+    /**
+     * Восстановление содержимого файла без изменения index. Папка для файла должна существовать.
+     * @param pathToFile путь к файлу.
+     * @param fileHash хеш файла в системе контроля версий.
+     * @return запись index для восстановленного файла.
+     * @throws IOException исключение, если возникли проблемы с чтением объекта или записью файла.
+     */
+    public @NotNull IndexEntry restoreFileContent(@NotNull Path pathToFile, @NotNull ObjectId fileHash)
+                                                  throws IOException {
         data.restoreFile(pathToFile, fileHash);
+        return IndexEntry.fromFile(pathToFile, fileHash);
+    }
+
+    /**
+     * Сохранение файла пользователя в VCS за один проход по файлу, без добавления в index. Атрибуты файла
+     * читаются до сохранения, поэтому если файл изменится во время чтения, запись не совпадет с ним.
+     * @param pathToFile путь к файлу.
+     * @return запись index для сохраненного файла.
+     * @throws IOException исключение, если возникли проблемы с чтением файла.
+     * @throws NotRegularFileException исключение, если путь оказался не к файлу.
+     */
+    public @NotNull IndexEntry storeBlob(@NotNull Path pathToFile) throws IOException, NotRegularFileException {
+        if (Files.isDirectory(pathToFile)) {
+            throw new NotRegularFileException();
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(pathToFile, BasicFileAttributes.class);
+        return IndexEntry.fromAttributes(data.storeBlob(pathToFile), attributes);
     }
 
     /**
@@ -249,13 +536,39 @@ public class Repository {
         data.storeObject(object);
     }
 
+    /**
+     * Сохранение коммита и добавление его в граф коммитов.
+     * @param commit коммит, который нужно сохранить.
+     * @throws IOException исключение, если возникли проблемы с записью файлов или с чтением предков коммита.
+     */
+    public void storeCommit(@NotNull Commit commit) throws IOException {
+        data.storeObject(commit);
+        try {
+            data.updateCommitGraph(Collections.singletonList(commit.getHash()));
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Получение графа коммитов, в котором есть данный коммит и все его предки.
+     * @param commitHash хеш коммита.
+     * @return граф коммитов.
+     * @throws IOException исключение, если возникли проблемы с чтением или записью файлов.
+     * @throws ClassNotFoundException исключение, если не удалось интерпретировать данные коммитов.
+     */
+    public @NotNull CommitGraph getCommitGraph(@NotNull ObjectId commitHash) throws IOException, ClassNotFoundException {
+        data.updateCommitGraph(Collections.singletonList(commitHash));
+        return data.getCommitGraph();
+    }
+
     /**
      * Обновление коммита, на который указывает ссылка.
      * @param name имя ссылки, которой нужно обновить хеш коммита.
      * @param commitHash хеш коммита, на который будет указывать ссылка.
      * @throws IOException исключение, если возникли проблемы с чтением файла.
      */
-    public void storeReferenceCommit(@NotNull String name, @NotNull String commitHash) throws IOException {
+    public void storeReferenceCommit(@NotNull String name, @NotNull ObjectId commitHash) throws IOException {
         data.storeReference(name, commitHash);
     }
 
@@ -266,40 +579,384 @@ public class Repository {
      * @throws IOException исключение, если возникли проблемы с чтением файлов.
      * @throws ClassNotFoundException исключение, если не удалось интерпретировать данные(хеш не коммита).
      */
-    public @NotNull Commit getCommit(@NotNull String hash) throws IOException, ClassNotFoundException {
-        return data.getCommitByHash(hash);
+    public @NotNull Commit getCommit(@NotNull ObjectId hash) throws IOException, ClassNotFoundException {
+        Commit commit = cache.get(hash, Commit.class);
+        if (commit == null) {
+            byte[] content = readObjectContent(hash);
+            commit = new Commit(content, hash);
+            cache.put(commit, content.length);
+        }
+
+        return commit;
     }
 
     /**
-     * Получение дерева по его хешу.
+     * Получение дерева по его хешу. Каждый вызов возвращает свою копию, которую можно менять. Поддеревья
+     * копии при первом обращении тоже читаются через кеш.
      * @param hash хеш дерева
      * @return дерево файлов из VCS.
      * @throws IOException исключение, если возникли проблемы с чтением файлов.
      * @throws ClassNotFoundException исключение, если не удалось интерпретировать данные(хеш не дерева).
      */
-    public @NotNull VcsTree getTree(@NotNull String hash) throws IOException, ClassNotFoundException {
-        return data.getTreeByHash(hash);
+    public @NotNull VcsTree getTree(@NotNull ObjectId hash) throws IOException, ClassNotFoundException {
+        VcsTree tree = cache.get(hash, VcsTree.class);
+        if (tree == null) {
+            byte[] content = readObjectContent(hash);
+            tree = new VcsTree(hash, content, this::getTree);
+            cache.put(tree, content.length);
+        }
+
+        return tree.copy();
+    }
+
+    /**
+     * Получение кеша прочитанных коммитов и деревьев.
+     * @return кеш объектов.
+     */
+    public @NotNull ObjectCache getObjectCache() {
+        return cache;
     }
 
     /**
      * Получение коммита, на который указывает ссылка.
      * @param referenceName имя ссылки.
-     * @return хеш коммита, который содержится в ссылке.
+     * @return хеш коммита, который содержится в ссылке, или null, если в ветке еще нет коммитов.
      * @throws IOException исключение, если возникли проблемы с чтением файлов.
      */
-    public @NotNull String getReferenceCommitHash(@NotNull String referenceName) throws IOException {
+    public @Nullable ObjectId getReferenceCommitHash(@NotNull String referenceName) throws IOException {
         return data.getReferenceCommitHash(referenceName);
     }
 
     /**
-     * Восстановление файлов до состояния дерева коммита.
+     * Восстановление файлов до состояния дерева коммита. Все файлы дерева перезаписываются, и index
+     * заполняется только ими.
      * @param tree дерево файлов коммита.
      * @throws IOException исключение, если возникли проблемы с чтением файлов.
+     * @throws ClassNotFoundException исключение, если не удалось интерпретировать данные поддеревьев.
+     */
+    public void restoreTree(@NotNull VcsTree tree) throws IOException, ClassNotFoundException {
+        logger.debug("Restoring tree " + tree.getHash());
+        beginIndexUpdate();
+        try {
+            index.clear();
+            restoreFiles(checkoutChanges(null, tree));
+        } catch (IOException | ClassNotFoundException e) {
+            abortIndexUpdate();
+            throw e;
+        }
+
+        commitIndexUpdate();
+    }
+
+    /**
+     * Переход от одного дерева файлов к другому. Удаляются, создаются и перезаписываются только файлы,
+     * которые в деревьях различаются, а поддеревья с одинаковыми хешами пропускаются целиком. Записи index
+     * меняются только для этих же файлов. Сначала удаляются лишние файлы, затем создаются папки, и после
+     * этого файлы восстанавливаются параллельно.
+     * @param currentTree дерево файлов, которые сейчас находятся в рабочей папке.
+     * @param targetTree дерево файлов, которое нужно восстановить.
+     * @throws IOException исключение, если возникли проблемы с чтением или записью файлов.
+     * @throws ClassNotFoundException исключение, если не удалось интерпретировать данные поддеревьев.
+     */
+    public void checkoutTree(@NotNull VcsTree currentTree, @NotNull VcsTree targetTree)
+                             throws IOException, ClassNotFoundException {
+        logger.debug("Checkout from tree " + currentTree.getHash() + " to " + targetTree.getHash());
+        beginIndexUpdate();
+        try {
+            restoreFiles(checkoutChanges(currentTree, targetTree));
+        } catch (IOException | ClassNotFoundException e) {
+            abortIndexUpdate();
+            throw e;
+        }
+
+        commitIndexUpdate();
+    }
+
+    /**
+     * Переход от одного дерева к другому по их различиям: лишние файлы удаляются сразу, а измененные
+     * и добавленные файлы возвращаются для восстановления. Одинаковые поддеревья не читаются.
+     * @param currentTree текущее дерево или null, если его нет.
+     * @param targetTree восстанавливаемое дерево.
+     * @return восстанавливаемые файлы: хеш содержимого и путь.
+     * @throws IOException исключение, если возникли проблемы с чтением деревьев или удалением файлов.
+     * @throws ClassNotFoundException исключение, если не удалось интерпретировать данные поддеревьев.
+     */
+    private @NotNull List<ObjectWithName<ObjectId>> checkoutChanges(@Nullable VcsTree currentTree,
+                                                                    @NotNull VcsTree targetTree)
+                                                                    throws IOException, ClassNotFoundException {
+        List<ObjectWithName<ObjectId>> restoredFiles = new ArrayList<>();
+        try {
+            for (TreeDiff.Change change : new TreeDiff(currentTree, targetTree)) {
+                if (change.getType() == TreeDiff.ChangeType.DELETED) {
+                    deleteFile(Paths.get(change.getPath()));
+                } else {
+                    restoredFiles.add(new ObjectWithName<>(change.getNewHash(), change.getPath()));
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) e.getCause();
+            }
+
+            throw e;
+        }
+
+        return restoredFiles;
+    }
+
+    /**
+     * Получение различий между двумя деревьями по их хешам.
+     * @param oldTreeHash хеш старого дерева.
+     * @param newTreeHash хеш нового дерева.
+     * @return ленивое сравнение деревьев.
+     * @throws IOException исключение, если возникли проблемы с чтением деревьев.
+     * @throws ClassNotFoundException исключение, если не удалось интерпретировать данные деревьев.
+     */
+    public @NotNull TreeDiff diffTrees(@NotNull ObjectId oldTreeHash, @NotNull ObjectId newTreeHash)
+                                       throws IOException, ClassNotFoundException {
+        return new TreeDiff(getTree(oldTreeHash), getTree(newTreeHash));
+    }
+
+    /**
+     * Восстановление файлов и их записей в index. Сначала создаются все нужные папки, затем содержимое
+     * файлов восстанавливается параллельно в пуле потоков репозитория.
+     * @param files восстанавливаемые файлы: хеш содержимого и путь.
+     * @throws IOException исключение, если возникли проблемы с чтением объектов или записью файлов.
+     */
+    private void restoreFiles(@NotNull List<ObjectWithName<ObjectId>> files) throws IOException {
+        if (files.isEmpty()) {
+            return;
+        }
+
+        HashSet<Path> directories = new HashSet<>();
+        for (ObjectWithName<ObjectId> file : files) {
+            Path directory = Paths.get(file.getName()).getParent();
+            if (directory != null && directories.add(directory)) {
+                Files.createDirectories(directory);
+            }
+        }
+
+        List<ObjectWithName<IndexEntry>> entries;
+        try {
+            entries = pool.invoke(new RestoreFilesTask(files, 0, files.size(), this));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        for (ObjectWithName<IndexEntry> entry : entries) {
+            index.put(Paths.get(entry.getName()), entry.getContent());
+        }
+
+        saveIndex();
+        logger.debug("Restored " + files.size() + " files");
+    }
+
+    /**
+     * Слияние трех деревьев: общего предка и двух веток. Деревья обходятся одновременно в порядке имен.
+     * Если поддерево не менялось в одной из веток или одинаково в обеих, оно берется целиком без чтения,
+     * поэтому читаются только поддеревья, хеши которых различаются во всех трех деревьях.
+     * Новые деревья сохраняются в хранилище, поэтому результат можно сразу записать в коммит.
+     * @param base дерево общего предка, null -- общего предка нет.
+     * @param ours дерево текущей ветки.
+     * @param theirs дерево вливаемой ветки.
+     * @param policy способ разрешения конфликтов в файлах.
+     * @return дерево результата слияния с посчитанным хешом.
+     * @throws IOException исключение, если возникли проблемы с чтением или записью деревьев.
+     * @throws ClassNotFoundException исключение, если не удалось интерпретировать данные поддеревьев.
      */
-    public void restoreTree(@NotNull VcsTree tree) throws IOException {
-        index = new HashMap<>();
-        data.addTree(tree, data.getRootDirectory());
-        data.updateIndex(index);
+    public @NotNull VcsTree mergeTrees(@Nullable VcsTree base, @NotNull VcsTree ours, @NotNull VcsTree theirs,
+                                       @NotNull MergeConflictPolicy policy) throws IOException, ClassNotFoundException {
+        VcsTree merged = mergeSubtrees(base, ours, theirs, policy);
+        if (merged == null) {
+            merged = new VcsTree(Paths.get(ours.getPrefix()));
+            merged.computeHash();
+            storeObject(merged);
+        }
+
+        return merged;
+    }
+
+    /**
+     * Слияние трех версий одного поддерева, любой из которых может не быть.
+     * @param base поддерево общего предка.
+     * @param ours поддерево текущей ветки.
+     * @param theirs поддерево вливаемой ветки.
+     * @param policy способ разрешения конфликтов в файлах.
+     * @return поддерево результата слияния или null, если в нем не осталось файлов.
+     * @throws IOException исключение, если возникли проблемы с чтением или записью деревьев.
+     * @throws ClassNotFoundException исключение, если не удалось интерпретировать данные поддеревьев.
+     */
+    private @Nullable VcsTree mergeSubtrees(@Nullable VcsTree base, @Nullable VcsTree ours, @Nullable VcsTree theirs,
+                                            @NotNull MergeConflictPolicy policy)
+                                            throws IOException, ClassNotFoundException {
+        ObjectId baseHash = base == null ? null : base.getHash();
+        ObjectId ourHash = ours == null ? null : ours.getHash();
+        ObjectId theirHash = theirs == null ? null : theirs.getHash();
+        if (Objects.equals(ourHash, theirHash) || Objects.equals(baseHash, theirHash)) {
+            return ours;
+        }
+
+        if (Objects.equals(baseHash, ourHash)) {
+            return theirs;
+        }
+
+        VcsTree merged = new VcsTree(Paths.get(ours == null ? theirs.getPrefix() : ours.getPrefix()));
+        List<ObjectWithName<Blob>> baseBlobs = base == null ? Collections.emptyList() : base.getSortedBlobFiles();
+        List<ObjectWithName<Blob>> ourBlobs = ours == null ? Collections.emptyList() : ours.getSortedBlobFiles();
+        List<ObjectWithName<Blob>> theirBlobs = theirs == null ? Collections.emptyList()
+                                                               : theirs.getSortedBlobFiles();
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (j < ourBlobs.size() || k < theirBlobs.size()) {
+            String name = j == ourBlobs.size() ? theirBlobs.get(k).getName()
+                          : k == theirBlobs.size() ? ourBlobs.get(j).getName()
+                          : min(ourBlobs.get(j).getName(), theirBlobs.get(k).getName());
+            while (i < baseBlobs.size() && baseBlobs.get(i).getName().compareTo(name) < 0) {
+                i++;
+            }
+
+            ObjectId baseBlob = i < baseBlobs.size() && baseBlobs.get(i).getName().equals(name)
+                                ? baseBlobs.get(i++).getContent().getHash() : null;
+            ObjectId ourBlob = j < ourBlobs.size() && ourBlobs.get(j).getName().equals(name)
+                               ? ourBlobs.get(j++).getContent().getHash() : null;
+            ObjectId theirBlob = k < theirBlobs.size() && theirBlobs.get(k).getName().equals(name)
+                                 ? theirBlobs.get(k++).getContent().getHash() : null;
+
+            ObjectId hash;
+            if (Objects.equals(ourBlob, theirBlob) || Objects.equals(baseBlob, theirBlob)) {
+                hash = ourBlob;
+            } else if (Objects.equals(baseBlob, ourBlob)) {
+                hash = theirBlob;
+            } else {
+                hash = policy.resolve(name, ourBlob, theirBlob);
+            }
+
+            if (hash != null) {
+                merged.addBlob(new Blob(Paths.get(name), hash), name);
+            }
+        }
+
+        List<VcsTree> baseSubtrees = base == null ? Collections.emptyList() : base.getSortedVcsTreeFiles();
+        List<VcsTree> ourSubtrees = ours == null ? Collections.emptyList() : ours.getSortedVcsTreeFiles();
+        List<VcsTree> theirSubtrees = theirs == null ? Collections.emptyList() : theirs.getSortedVcsTreeFiles();
+        i = 0;
+        j = 0;
+        k = 0;
+        while (j < ourSubtrees.size() || k < theirSubtrees.size()) {
+            String prefix = j == ourSubtrees.size() ? theirSubtrees.get(k).getPrefix()
+                            : k == theirSubtrees.size() ? ourSubtrees.get(j).getPrefix()
+                            : min(ourSubtrees.get(j).getPrefix(), theirSubtrees.get(k).getPrefix());
+            while (i < baseSubtrees.size() && baseSubtrees.get(i).getPrefix().compareTo(prefix) < 0) {
+                i++;
+            }
+
+            VcsTree baseSubtree = i < baseSubtrees.size() && baseSubtrees.get(i).getPrefix().equals(prefix)
+                                  ? baseSubtrees.get(i++) : null;
+            VcsTree ourSubtree = j < ourSubtrees.size() && ourSubtrees.get(j).getPrefix().equals(prefix)
+                                 ? ourSubtrees.get(j++) : null;
+            VcsTree theirSubtree = k < theirSubtrees.size() && theirSubtrees.get(k).getPrefix().equals(prefix)
+                                   ? theirSubtrees.get(k++) : null;
+
+            VcsTree subtree = mergeSubtrees(baseSubtree, ourSubtree, theirSubtree, policy);
+            if (subtree != null) {
+                merged.addChild(subtree);
+            }
+        }
+
+        if (merged.getBlobFiles().isEmpty() && merged.getVcsTreeFiles().isEmpty()) {
+            return null;
+        }
+
+        merged.computeHash();
+        storeObject(merged);
+        return merged;
+    }
+
+    /**
+     * Меньшая из двух строк.
+     * @param first первая строка.
+     * @param second вторая строка.
+     * @return строка, которая идет раньше.
+     */
+    private static @NotNull String min(@NotNull String first, @NotNull String second) {
+        return first.compareTo(second) <= 0 ? first : second;
+    }
+
+    /**
+     * Поиск лучшего общего предка двух коммитов. Коммиты обходятся от больших поколений к меньшим:
+     * все потомки коммита имеют большее поколение, поэтому первый коммит, достижимый из обоих начальных,
+     * является общим предком с максимальным поколением и не может быть предком другого общего предка.
+     * Обход останавливается на нем и не доходит до старой истории.
+     * @param first хеш первого коммита.
+     * @param second хеш второго коммита.
+     * @return хеш общего предка или null, если у коммитов нет общих предков.
+     * @throws IOException исключение, если возникли проблемы с чтением или записью графа коммитов.
+     * @throws ClassNotFoundException исключение, если не удалось интерпретировать данные коммитов.
+     */
+    public @Nullable ObjectId findMergeBase(@NotNull ObjectId first, @NotNull ObjectId second)
+                                            throws IOException, ClassNotFoundException {
+        if (first.equals(second)) {
+            return first;
+        }
+
+        data.updateCommitGraph(Arrays.asList(first, second));
+        CommitGraph graph = data.getCommitGraph();
+        Comparator<Integer> byGeneration = Comparator.comparingInt(graph::getGeneration);
+        PriorityQueue<Integer> queue = new PriorityQueue<>(byGeneration.thenComparing(Comparator.naturalOrder())
+                                                                       .reversed());
+        HashMap<Integer, Integer> sides = new HashMap<>();
+        int firstPosition = graph.find(first);
+        int secondPosition = graph.find(second);
+        sides.put(firstPosition, 1);
+        sides.put(secondPosition, 2);
+        queue.add(firstPosition);
+        queue.add(secondPosition);
+
+        while (!queue.isEmpty()) {
+            int position = queue.poll();
+            int side = sides.get(position);
+            if (side == 3) {
+                return graph.getHash(position);
+            }
+
+            for (int parent : graph.getParents(position)) {
+                Integer parentSide = sides.get(parent);
+                if (parentSide == null) {
+                    queue.add(parent);
+                    sides.put(parent, side);
+                } else {
+                    sides.put(parent, parentSide | side);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Удаление файла из рабочей папки и из index. Опустевшие родительские папки тоже удаляются.
+     * @param pathToFile путь к файлу.
+     * @throws IOException исключение, если возникли проблемы с удалением.
+     */
+    private void deleteFile(@NotNull Path pathToFile) throws IOException {
+        Files.deleteIfExists(pathToFile);
+        index.remove(pathToFile);
+        saveIndex();
+
+        Path directory = pathToFile.getParent();
+        while (directory != null && Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                if (files.iterator().hasNext()) {
+                    break;
+                }
+            }
+
+            Files.delete(directory);
+            directory = directory.getParent();
+        }
     }
 
     /**
@@ -312,26 +969,59 @@ public class Repository {
     /**
      * Создание файла index из дерева.
      * @param vcsTree дерево файлов.
+     * @throws IOException исключение, если возникли проблемы с чтением поддеревьев.
+     * @throws ClassNotFoundException исключение, если не удалось интерпретировать данные поддеревьев.
      */
-    public void createIndexFromTree(@NotNull VcsTree vcsTree) {
+    public void createIndexFromTree(@NotNull VcsTree vcsTree) throws IOException, ClassNotFoundException {
         logger.debug("Creating index from tree " + vcsTree.getHash());
         index.clear();
         HashSet<ObjectWithName<Blob>> files = vcsTree.getAllFiles();
         for (ObjectWithName<Blob> file : files) {
             Blob blob = file.getContent();
             String filePath = file.getName();
-            String fileHash = blob.getHash();
-            index.put(Paths.get(filePath), fileHash);
+            ObjectId fileHash = blob.getHash();
+            index.put(Paths.get(filePath), new IndexEntry(fileHash));
         }
     }
 
     /**
-     * Создание дерева файлов.
-     * @param excludeFiles файлы, которые не должны входить в дерево файлов.
-     * @throws NoRootDirectoryExistsException исключение, если не существует корневой директории.
+     * Поиск файлов рабочей папки, не находящихся под контролем системы версий. Папки без отслеживаемых
+     * файлов не обходятся, а выводятся целиком с разделителем на конце.
+     * @param trackedFiles пути отслеживаемых файлов.
+     * @return пути неотслеживаемых файлов и папок в том же виде, что и имена файлов в index.
+     * @throws NoRootDirectoryExistsException исключение, если не существует рабочей папки.
+     * @throws IOException исключение, если возникли проблемы с чтением папок.
      */
-    public @NotNull FilesTree getFilesTree(@NotNull HashSet<String> excludeFiles) throws NoRootDirectoryExistsException {
-        return data.getFilesTree(excludeFiles);
+    public @NotNull List<String> getUntrackedFiles(@NotNull Set<String> trackedFiles)
+                                                   throws NoRootDirectoryExistsException, IOException {
+        Path workingDirectory = data.getRootDirectory().getParent();
+        if (workingDirectory == null) {
+            workingDirectory = Paths.get("");
+        }
+
+        workingDirectory = workingDirectory.normalize();
+
+        if (!Files.isDirectory(workingDirectory.toString().isEmpty() ? Paths.get(".") : workingDirectory)) {
+            throw new NoRootDirectoryExistsException();
+        }
+
+        HashSet<String> files = new HashSet<>();
+        HashSet<String> directories = new HashSet<>();
+        for (String trackedFile : trackedFiles) {
+            Path path = Paths.get(trackedFile).normalize();
+            files.add(path.toString());
+            for (Path directory = path.getParent(); directory != null; directory = directory.getParent()) {
+                if (!directories.add(directory.toString())) {
+                    break;
+                }
+            }
+        }
+
+        try {
+            return pool.invoke(new UntrackedFilesTask(workingDirectory, files, directories));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
     /**
@@ -342,11 +1032,28 @@ public class Repository {
      * @throws NotRegularFileException исключение, если ожидали файл, а получили директорию.
      * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
      */
-    public void clean(@NotNull HashSet<String> untrackedFiles) throws ClassNotFoundException, NotRegularFileException,
+    public void clean(@NotNull List<String> untrackedFiles) throws ClassNotFoundException, NotRegularFileException,
                                                                 NoRootDirectoryExistsException, IOException {
         data.clean(untrackedFiles);
     }
 
+    /**
+     * Выбор способа восстановления файлов репозитория.
+     * @param mode способ восстановления.
+     * @throws IOException исключение, если возникли проблемы с записью настройки.
+     */
+    public void setRestoreMode(@NotNull RestoreMode mode) throws IOException {
+        data.setRestoreMode(mode);
+    }
+
+    /**
+     * Реализация команды repack. Сборка объектов репозитория в pack-файл.
+     * @throws IOException исключение, если возникли проблемы с файлами объектов.
+     */
+    public void repack() throws IOException {
+        data.repack();
+    }
+
     /**
      * Получение текущей ссылки репозитория.
      * @return объект текущей ссылки
@@ -354,12 +1061,12 @@ public class Repository {
      */
     public Reference getReference() throws IOException {
         String name = getCurrentHead();
-        String commitHash;
+        ObjectId commitHash;
 
         if (isBranchExists(name)) {
             commitHash = getReferenceCommitHash(name);
         } else {
-            commitHash = name;
+            commitHash = ObjectId.fromHex(name);
             name = "Commit hash";
         }
 
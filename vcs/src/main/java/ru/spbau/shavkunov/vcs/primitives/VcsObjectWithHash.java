@@ -3,30 +3,72 @@ package ru.spbau.shavkunov.vcs.primitives;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 
 /**
  * Класс, описывающий логику взаимодействия с хешом объекта, если такой у него присутствует.
  */
 public abstract class VcsObjectWithHash implements Serializable {
+    /**
+     * Сериализуемые поля: хеш записывается строкой, как и в прежних версиях.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {new ObjectStreamField("hash", String.class)};
+
     /**
      * Хеш объекта.
      */
-    protected @Nullable String hash;
+    protected transient @Nullable ObjectId hash;
 
     /**
      * Получение хеша у объекта.
      * @return хеш объекта.
      */
-    public @Nullable String getHash() {
+    public @Nullable ObjectId getHash() {
         return hash;
     }
 
+    /**
+     * Запись хеша в виде строки при стандартной сериализации.
+     * @param output поток сериализации.
+     * @throws IOException исключение, если возникли проблемы с записью.
+     */
+    private void writeObject(@NotNull ObjectOutputStream output) throws IOException {
+        ObjectOutputStream.PutField fields = output.putFields();
+        fields.put("hash", hash == null ? null : hash.toHex());
+        output.writeFields();
+    }
+
+    /**
+     * Чтение хеша, записанного строкой, при стандартной десериализации.
+     * @param input поток десериализации.
+     * @throws IOException исключение, если возникли проблемы с чтением.
+     * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
+     */
+    private void readObject(@NotNull ObjectInputStream input) throws IOException, ClassNotFoundException {
+        String hex = (String) input.readFields().get("hash", null);
+        hash = hex == null ? null : ObjectId.fromHex(hex);
+    }
+
     /**
      * Получение содержимого объекта в виде массива байтов.
      * @return содержимого объекта.
      * @throws IOException исключение, если возникли проблемы с чтением файла.
      */
     public abstract @NotNull byte[] getContent() throws IOException;
+
+    /**
+     * Получение содержимого объекта в виде потока. Большие объекты должны переопределять этот метод,
+     * чтобы не держать содержимое в памяти целиком.
+     * @return поток с содержимым объекта.
+     * @throws IOException исключение, если возникли проблемы с чтением файла.
+     */
+    public @NotNull InputStream getContentStream() throws IOException {
+        return new ByteArrayInputStream(getContent());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+package ru.spbau.shavkunov.vcs.trees;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.spbau.shavkunov.vcs.primitives.ObjectId;
+
+/**
+ * Способ разрешения конфликта при слиянии деревьев: файл по-разному изменен в обеих ветках
+ * относительно общего предка либо изменен в одной ветке и удален в другой.
+ */
+public interface MergeConflictPolicy {
+    /**
+     * Оставлять версию файла из текущей ветки.
+     */
+    MergeConflictPolicy OURS = (path, ours, theirs) -> ours;
+
+    /**
+     * Брать версию файла из вливаемой ветки.
+     */
+    MergeConflictPolicy THEIRS = (path, ours, theirs) -> theirs;
+
+    /**
+     * Выбор содержимого файла после слияния.
+     * @param path путь к файлу.
+     * @param ours хеш файла в текущей ветке, null -- файл удален.
+     * @param theirs хеш файла во вливаемой ветке, null -- файл удален.
+     * @return хеш содержимого, которое окажется в результате слияния, null -- файла не будет.
+     */
+    @Nullable ObjectId resolve(@NotNull String path, @Nullable ObjectId ours, @Nullable ObjectId theirs);
+}
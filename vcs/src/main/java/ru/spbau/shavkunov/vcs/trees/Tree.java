@@ -2,6 +2,7 @@ package ru.spbau.shavkunov.vcs.trees;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
 import java.nio.file.Path;
 
 /**
@@ -11,13 +12,17 @@ interface Tree {
     /**
      * Печать дерева на экран.
      * @param spaces начальный отступ корневой папки.
+     * @throws IOException исключение, если возникли проблемы с чтением дерева.
+     * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
      */
-    void printTree(int spaces);
+    void printTree(int spaces) throws IOException, ClassNotFoundException;
 
     /**
      * Проверка существования файла в дереве.
      * @param pathToFile путь к файлу.
      * @return true, если файл присутствует, иначе false.
+     * @throws IOException исключение, если возникли проблемы с чтением дерева.
+     * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
      */
-    boolean isFileExists(@NotNull Path pathToFile);
+    boolean isFileExists(@NotNull Path pathToFile) throws IOException, ClassNotFoundException;
 }
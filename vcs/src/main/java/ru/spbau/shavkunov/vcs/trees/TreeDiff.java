@@ -0,0 +1,238 @@
+package ru.spbau.shavkunov.vcs.trees;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.spbau.shavkunov.vcs.primitives.Blob;
+import ru.spbau.shavkunov.vcs.primitives.ObjectId;
+import ru.spbau.shavkunov.vcs.primitives.ObjectWithName;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Ленивое сравнение двух деревьев: добавленные, измененные и удаленные файлы. Деревья обходятся
+ * одновременно в порядке имен, и поддеревья с одинаковыми хешами пропускаются без чтения, поэтому время
+ * обхода зависит от размера изменений, а не от размера деревьев. Поддерево читается, только когда обход
+ * до него дошел. Внутри папки сначала перечисляются ее файлы, затем изменения вложенных папок.
+ */
+public class TreeDiff implements Iterable<TreeDiff.Change> {
+    /**
+     * Вид изменения файла.
+     */
+    public enum ChangeType {
+        /**
+         * Файл есть только в новом дереве.
+         */
+        ADDED,
+
+        /**
+         * Файл есть в обоих деревьях с разным содержимым.
+         */
+        MODIFIED,
+
+        /**
+         * Файл есть только в старом дереве.
+         */
+        DELETED
+    }
+
+    /**
+     * Изменение одного файла.
+     */
+    public static class Change {
+        /**
+         * Вид изменения.
+         */
+        private final @NotNull ChangeType type;
+
+        /**
+         * Путь к файлу.
+         */
+        private final @NotNull String path;
+
+        /**
+         * Хеш файла в старом дереве.
+         */
+        private final @Nullable ObjectId oldHash;
+
+        /**
+         * Хеш файла в новом дереве.
+         */
+        private final @Nullable ObjectId newHash;
+
+        /**
+         * Создание изменения. Вид изменения определяется тем, какие из хешей есть.
+         * @param path путь к файлу.
+         * @param oldHash хеш файла в старом дереве, null -- файла не было.
+         * @param newHash хеш файла в новом дереве, null -- файл удален.
+         */
+        public Change(@NotNull String path, @Nullable ObjectId oldHash, @Nullable ObjectId newHash) {
+            this.path = path;
+            this.oldHash = oldHash;
+            this.newHash = newHash;
+            type = oldHash == null ? ChangeType.ADDED : newHash == null ? ChangeType.DELETED : ChangeType.MODIFIED;
+        }
+
+        /**
+         * Получение вида изменения.
+         * @return вид изменения.
+         */
+        public @NotNull ChangeType getType() {
+            return type;
+        }
+
+        /**
+         * Получение пути к файлу.
+         * @return путь к файлу.
+         */
+        public @NotNull String getPath() {
+            return path;
+        }
+
+        /**
+         * Получение хеша файла в старом дереве.
+         * @return хеш файла или null, если файл добавлен.
+         */
+        public @Nullable ObjectId getOldHash() {
+            return oldHash;
+        }
+
+        /**
+         * Получение хеша файла в новом дереве.
+         * @return хеш файла или null, если файл удален.
+         */
+        public @Nullable ObjectId getNewHash() {
+            return newHash;
+        }
+    }
+
+    /**
+     * Старое дерево.
+     */
+    private final @Nullable VcsTree oldTree;
+
+    /**
+     * Новое дерево.
+     */
+    private final @Nullable VcsTree newTree;
+
+    /**
+     * Создание сравнения деревьев.
+     * @param oldTree старое дерево, null -- пустое дерево.
+     * @param newTree новое дерево, null -- пустое дерево.
+     */
+    public TreeDiff(@Nullable VcsTree oldTree, @Nullable VcsTree newTree) {
+        this.oldTree = oldTree;
+        this.newTree = newTree;
+    }
+
+    /**
+     * Начало нового обхода.
+     * @return итератор по изменениям файлов.
+     * @throws UncheckedIOException исключение при переходе к следующему изменению, если не удалось
+     * прочитать поддерево.
+     */
+    @Override
+    public @NotNull Iterator<Change> iterator() {
+        ArrayDeque<VcsTree[]> pendingTrees = new ArrayDeque<>();
+        pendingTrees.push(new VcsTree[] {oldTree, newTree});
+
+        return new Iterator<Change>() {
+            private final @NotNull ArrayDeque<Change> changes = new ArrayDeque<>();
+
+            @Override
+            public boolean hasNext() {
+                while (changes.isEmpty() && !pendingTrees.isEmpty()) {
+                    VcsTree[] trees = pendingTrees.pop();
+                    try {
+                        compareTrees(trees[0], trees[1], changes, pendingTrees);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } catch (ClassNotFoundException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+
+                return !changes.isEmpty();
+            }
+
+            @Override
+            public Change next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return changes.poll();
+            }
+        };
+    }
+
+    /**
+     * Сравнение двух версий одной папки: изменения ее файлов добавляются в очередь, а пары различающихся
+     * поддеревьев -- в стек обхода в таком порядке, чтобы они доставались по возрастанию имен.
+     * @param oldTree старая версия папки или null, если ее не было.
+     * @param newTree новая версия папки или null, если ее нет.
+     * @param changes очередь изменений файлов.
+     * @param pendingTrees стек пар поддеревьев, которые еще нужно сравнить.
+     * @throws IOException исключение, если возникли проблемы с чтением деревьев.
+     * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные деревьев.
+     */
+    private static void compareTrees(@Nullable VcsTree oldTree, @Nullable VcsTree newTree,
+                                     @NotNull ArrayDeque<Change> changes, @NotNull ArrayDeque<VcsTree[]> pendingTrees)
+                                     throws IOException, ClassNotFoundException {
+        if (oldTree != null && newTree != null && oldTree.getHash() != null
+            && oldTree.getHash().equals(newTree.getHash())) {
+            return;
+        }
+
+        List<ObjectWithName<Blob>> oldBlobs = oldTree == null ? Collections.emptyList() : oldTree.getSortedBlobFiles();
+        List<ObjectWithName<Blob>> newBlobs = newTree == null ? Collections.emptyList() : newTree.getSortedBlobFiles();
+        int i = 0;
+        int j = 0;
+        while (i < oldBlobs.size() || j < newBlobs.size()) {
+            int comparison = i == oldBlobs.size() ? 1
+                             : j == newBlobs.size() ? -1 : oldBlobs.get(i).compareTo(newBlobs.get(j));
+            if (comparison < 0) {
+                ObjectWithName<Blob> file = oldBlobs.get(i++);
+                changes.add(new Change(file.getName(), file.getContent().getHash(), null));
+            } else if (comparison > 0) {
+                ObjectWithName<Blob> file = newBlobs.get(j++);
+                changes.add(new Change(file.getName(), null, file.getContent().getHash()));
+            } else {
+                ObjectWithName<Blob> oldFile = oldBlobs.get(i++);
+                ObjectId oldHash = oldFile.getContent().getHash();
+                ObjectId newHash = newBlobs.get(j++).getContent().getHash();
+                if (!oldHash.equals(newHash)) {
+                    changes.add(new Change(oldFile.getName(), oldHash, newHash));
+                }
+            }
+        }
+
+        List<VcsTree> oldSubtrees = oldTree == null ? Collections.emptyList() : oldTree.getSortedVcsTreeFiles();
+        List<VcsTree> newSubtrees = newTree == null ? Collections.emptyList() : newTree.getSortedVcsTreeFiles();
+        List<VcsTree[]> subtrees = new ArrayList<>();
+        i = 0;
+        j = 0;
+        while (i < oldSubtrees.size() || j < newSubtrees.size()) {
+            int comparison = i == oldSubtrees.size() ? 1
+                             : j == newSubtrees.size() ? -1 : oldSubtrees.get(i).compareTo(newSubtrees.get(j));
+            if (comparison < 0) {
+                subtrees.add(new VcsTree[] {oldSubtrees.get(i++), null});
+            } else if (comparison > 0) {
+                subtrees.add(new VcsTree[] {null, newSubtrees.get(j++)});
+            } else {
+                subtrees.add(new VcsTree[] {oldSubtrees.get(i++), newSubtrees.get(j++)});
+            }
+        }
+
+        for (int k = subtrees.size() - 1; k >= 0; k--) {
+            pendingTrees.push(subtrees.get(k));
+        }
+    }
+}
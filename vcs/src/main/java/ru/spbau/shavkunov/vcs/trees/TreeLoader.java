@@ -0,0 +1,20 @@
+package ru.spbau.shavkunov.vcs.trees;
+
+import org.jetbrains.annotations.NotNull;
+import ru.spbau.shavkunov.vcs.primitives.ObjectId;
+
+import java.io.IOException;
+
+/**
+ * Источник, из которого дерево подгружает свои поддеревья при первом обращении к ним.
+ */
+public interface TreeLoader {
+    /**
+     * Получение дерева по его хешу.
+     * @param treeHash хеш дерева.
+     * @return дерево, которое вызывающий может менять.
+     * @throws IOException исключение, если возникли проблемы с чтением дерева.
+     * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
+     */
+    @NotNull VcsTree getTreeByHash(@NotNull ObjectId treeHash) throws IOException, ClassNotFoundException;
+}
@@ -1,8 +1,10 @@
 package ru.spbau.shavkunov.vcs.trees;
 
-import org.apache.commons.codec.digest.DigestUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import ru.spbau.shavkunov.vcs.data.BinaryDecoder;
+import ru.spbau.shavkunov.vcs.data.BinaryEncoder;
+import ru.spbau.shavkunov.vcs.primitives.ObjectId;
 import ru.spbau.shavkunov.vcs.primitives.ObjectWithName;
 import ru.spbau.shavkunov.vcs.utils.Utils;
 import ru.spbau.shavkunov.vcs.primitives.VcsObjectWithHash;
@@ -14,21 +16,44 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 
 /**
  * Класс, отвечающий за представление структуры папок и файлов в репозитории.
  */
 public class VcsTree extends VcsObjectWithHash implements Tree, Serializable, Comparable<VcsTree> {
+    /**
+     * Версия двоичного формата дерева.
+     */
+    private static final int FORMAT_VERSION = 1;
+
     /**
      * Список файлов с их именами(т.е. с путями к этим файлам) на текущем уровне.
      */
     private @NotNull ArrayList<ObjectWithName<Blob>> blobFiles;
 
     /**
-     * Список деревьев, располженных уровнями ниже.
+     * Список деревьев, располженных уровнями ниже. Поддеревья, прочитанные из хранилища, загружаются
+     * только при первом обращении к ним.
      */
     private @NotNull ArrayList<VcsTree> vcsTreeFiles;
 
+    /**
+     * Источник, из которого дерево будет загружено при первом обращении, либо null, если
+     * содержимое дерева уже находится в памяти.
+     */
+    private transient @Nullable TreeLoader loader;
+
+    /**
+     * Файлы текущего уровня по их именам без папок. Строится при первом поиске, null -- еще не построено.
+     */
+    private transient @Nullable HashMap<String, Blob> blobsByName;
+
+    /**
+     * Поддеревья текущего уровня по названиям их папок. Строится вместе с blobsByName.
+     */
+    private transient @Nullable HashMap<String, VcsTree> subtreesByPrefix;
+
     /**
      * Название папки, в которой находится текущее дерево.
      */
@@ -63,41 +88,117 @@ public class VcsTree extends VcsObjectWithHash implements Tree, Serializable, Co
     }
 
     /**
-     * Получить дерево по его хешу.
+     * Создание ссылки на поддерево, хранящееся в VCS. Содержимое будет прочитано при первом обращении.
+     * @param prefix название папки поддерева.
+     * @param treeHash хеш поддерева.
+     * @param loader источник, из которого будет прочитано поддерево.
+     */
+    private VcsTree(@NotNull String prefix, @NotNull ObjectId treeHash, @NotNull TreeLoader loader) {
+        this.prefix = prefix;
+        this.loader = loader;
+        hash = treeHash;
+    }
+
+    /**
+     * Создание ссылки на дерево, уже сохраненное в VCS. Содержимое будет прочитано при первом обращении.
+     * @param prefix название папки дерева.
      * @param treeHash хеш дерева.
+     * @param loader источник, из которого будет прочитано дерево.
+     * @return непрочитанное дерево.
+     */
+    public static @NotNull VcsTree fromHash(@NotNull String prefix, @NotNull ObjectId treeHash,
+                                            @NotNull TreeLoader loader) {
+        return new VcsTree(prefix, treeHash, loader);
+    }
+
+    /**
+     * Получить дерево по его хешу. Поддеревья не читаются сразу, а хранятся как пары (имя, хеш).
+     * @param treeHash хеш дерева.
+     * @param content сериализованное содержимое дерева.
+     * @param loader источник, откуда будут подгружаться поддеревья.
      * @throws IOException исключение, если возникли проблемы с чтением файлов.
      * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
      */
-    @SuppressWarnings("unchecked")
-    public VcsTree(@NotNull String treeHash, @NotNull byte[] content) throws IOException, ClassNotFoundException {
-        try (ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(content);
-             ObjectInputStream input = new ObjectInputStream(byteArrayInputStream)) {
+    public VcsTree(@NotNull ObjectId treeHash, @NotNull byte[] content, @NotNull TreeLoader loader)
+                   throws IOException, ClassNotFoundException {
+        BinaryDecoder decoder = new BinaryDecoder(content);
+        decoder.readVersion(FORMAT_VERSION);
+
+        int blobsCount = decoder.readLength();
+        blobFiles = new ArrayList<>(blobsCount);
+        for (int i = 0; i < blobsCount; i++) {
+            String name = decoder.readString();
+            blobFiles.add(new ObjectWithName<>(new Blob(Paths.get(name), decoder.readHash()), name));
+        }
 
-            blobFiles = (ArrayList<ObjectWithName<Blob>>) input.readObject();
-            vcsTreeFiles = (ArrayList<VcsTree>) input.readObject();
-            prefix = (String) input.readObject();
+        int subtreesCount = decoder.readLength();
+        ArrayList<ObjectWithName<ObjectId>> subtrees = new ArrayList<>(subtreesCount);
+        for (int i = 0; i < subtreesCount; i++) {
+            String subtreePrefix = decoder.readString();
+            subtrees.add(new ObjectWithName<>(decoder.readHash(), subtreePrefix));
+        }
+
+        prefix = decoder.readString();
+        decoder.finish();
+
+        vcsTreeFiles = new ArrayList<>(subtrees.size());
+        for (ObjectWithName<ObjectId> subtree : subtrees) {
+            vcsTreeFiles.add(new VcsTree(subtree.getName(), subtree.getContent(), loader));
         }
 
         hash = treeHash;
     }
 
+    /**
+     * Чтение содержимого дерева из хранилища, если оно еще не было загружено.
+     * @throws IOException исключение, если возникли проблемы с чтением файлов.
+     * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
+     */
+    private void load() throws IOException, ClassNotFoundException {
+        if (loader == null) {
+            return;
+        }
+
+        VcsTree tree = loader.getTreeByHash(hash);
+        blobFiles = tree.blobFiles;
+        vcsTreeFiles = tree.vcsTreeFiles;
+        loader = null;
+    }
+
+    /**
+     * Получение содержимого дерева. Поддеревья записываются только как пары (имя, хеш), поэтому
+     * их хеши должны быть уже посчитаны.
+     * @return содержимое дерева.
+     * @throws IOException исключение, если возникли проблемы с чтением файлов.
+     */
     @Override
     public @NotNull byte[] getContent() throws IOException {
-        byte[] content;
+        try {
+            load();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+
         blobFiles.sort(ObjectWithName::compareTo);
         vcsTreeFiles.sort(VcsTree::compareTo);
 
-        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-             ObjectOutputStream output = new ObjectOutputStream(byteArrayOutputStream)) {
+        BinaryEncoder encoder = new BinaryEncoder(FORMAT_VERSION);
+        encoder.writeVarint(blobFiles.size());
+        for (ObjectWithName<Blob> blob : blobFiles) {
+            encoder.writeString(blob.getName()).writeHash(blob.getContent().getHash());
+        }
 
-            output.writeObject(blobFiles);
-            output.writeObject(vcsTreeFiles);
-            output.writeObject(prefix);
-            output.flush();
-            content = byteArrayOutputStream.toByteArray();
+        encoder.writeVarint(vcsTreeFiles.size());
+        for (VcsTree subVcsTree : vcsTreeFiles) {
+            if (subVcsTree.getHash() == null) {
+                subVcsTree.computeHash();
+            }
+
+            encoder.writeString(subVcsTree.getPrefix()).writeHash(subVcsTree.getHash());
         }
 
-        return content;
+        encoder.writeString(prefix);
+        return encoder.toByteArray();
     }
 
     /**
@@ -105,44 +206,74 @@ public class VcsTree extends VcsObjectWithHash implements Tree, Serializable, Co
      * @throws IOException исключение, если возникли проблемы с чтением файлов.
      */
     public void computeHash() throws IOException {
-        byte[] content = getContent();
-        hash = DigestUtils.sha1Hex(content);
+        hash = ObjectId.hashOf(getContent());
     }
 
     /**
-     * Получение хеша файла.
-     * @param rootPath некоторый префикс файла.
-     * @param pathToFile путь к файлу
-     * @return хеш файла, если такой в дереве нашелся, иначе null.
+     * Построение отображений из имен в файлы и поддеревья текущего уровня, если они еще не построены.
+     * @throws IOException исключение, если возникли проблемы с чтением дерева.
+     * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
      */
-    private @Nullable String getFileHash(Path rootPath, Path pathToFile) {
+    private void buildLookup() throws IOException, ClassNotFoundException {
+        load();
+        if (blobsByName != null && subtreesByPrefix != null) {
+            return;
+        }
+
+        HashMap<String, Blob> blobs = new HashMap<>(blobFiles.size() * 2);
         for (ObjectWithName<Blob> blob : blobFiles) {
-            if (blob.getName().equals(pathToFile.toString())) {
-                return blob.getContent().getHash();
-            }
+            blobs.put(Paths.get(blob.getName()).getFileName().toString(), blob.getContent());
         }
 
+        HashMap<String, VcsTree> subtrees = new HashMap<>(vcsTreeFiles.size() * 2);
         for (VcsTree subVcsTree : vcsTreeFiles) {
-            Path subDirectory = rootPath.resolve(subVcsTree.getPrefix());
-            if (pathToFile.toString().startsWith(subDirectory.toString())) {
-                return subVcsTree.getFileHash(subDirectory, pathToFile);
-            }
+            subtrees.put(subVcsTree.getPrefix(), subVcsTree);
         }
 
-        return null;
+        blobsByName = blobs;
+        subtreesByPrefix = subtrees;
+    }
+
+    /**
+     * Сброс отображений из имен после изменения содержимого дерева.
+     */
+    private void resetLookup() {
+        blobsByName = null;
+        subtreesByPrefix = null;
     }
 
     /**
-     * Получение хеша файла.
-     * @param pathToFile путь к хешу.
+     * Получение хеша файла. Путь разбирается по одной папке за раз, и на каждом уровне имя ищется
+     * в отображении, поэтому время поиска не зависит от количества файлов в папках.
+     * @param pathToFile путь к файлу относительно корня дерева.
      * @return null, если файла нет в дереве, иначе его хеш.
+     * @throws IOException исключение, если возникли проблемы с чтением поддеревьев.
+     * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
      */
-    public @Nullable String getFileHash(Path pathToFile) {
-        return getFileHash(Paths.get("."), pathToFile);
+    public @Nullable ObjectId getFileHash(Path pathToFile) throws IOException, ClassNotFoundException {
+        Path normalizedPath = pathToFile.normalize();
+        int count = normalizedPath.getNameCount();
+        if (normalizedPath.toString().isEmpty()) {
+            return null;
+        }
+
+        VcsTree tree = this;
+        for (int i = 0; i < count - 1; i++) {
+            tree.buildLookup();
+            tree = tree.subtreesByPrefix.get(normalizedPath.getName(i).toString());
+            if (tree == null) {
+                return null;
+            }
+        }
+
+        tree.buildLookup();
+        Blob blob = tree.blobsByName.get(normalizedPath.getFileName().toString());
+        return blob == null ? null : blob.getHash();
     }
 
     @Override
-    public void printTree(int spaces) {
+    public void printTree(int spaces) throws IOException, ClassNotFoundException {
+        load();
         String indent = Utils.multiply("-", spaces + 1);
         String directoryIndent = Utils.multiply("-", spaces);
         System.out.println(directoryIndent + prefix);
@@ -160,28 +291,81 @@ public class VcsTree extends VcsObjectWithHash implements Tree, Serializable, Co
      * Поиск файла в дереве
      * @param pathToFile путь искомого файла
      * @return true, если файл присутствует, иначе false
+     * @throws IOException исключение, если возникли проблемы с чтением поддеревьев.
+     * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
      */
     @Override
-    public boolean isFileExists(@NotNull Path pathToFile) {
+    public boolean isFileExists(@NotNull Path pathToFile) throws IOException, ClassNotFoundException {
         return getFileHash(pathToFile) != null;
     }
 
     /**
      * Получение всех blob файлов с их путями в дереве.
      * @return список blob файлов с их путями.
+     * @throws IOException исключение, если возникли проблемы с чтением дерева.
+     * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
      */
-    public @NotNull ArrayList<ObjectWithName<Blob>> getBlobFiles() {
+    public @NotNull ArrayList<ObjectWithName<Blob>> getBlobFiles() throws IOException, ClassNotFoundException {
+        load();
         return blobFiles;
     }
 
     /**
      * Получение всех поддеревьев в текущем дереве.
      * @return список всех поддеревьев.
+     * @throws IOException исключение, если возникли проблемы с чтением дерева.
+     * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
      */
-    public @NotNull ArrayList<VcsTree> getVcsTreeFiles() {
+    public @NotNull ArrayList<VcsTree> getVcsTreeFiles() throws IOException, ClassNotFoundException {
+        load();
         return vcsTreeFiles;
     }
 
+    /**
+     * Получение blob файлов текущего дерева, отсортированных по имени. Список самого дерева не меняется,
+     * поэтому метод можно вызывать и для деревьев, общих для нескольких потоков.
+     * @return отсортированная копия списка blob файлов.
+     * @throws IOException исключение, если возникли проблемы с чтением дерева.
+     * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
+     */
+    public @NotNull List<ObjectWithName<Blob>> getSortedBlobFiles() throws IOException, ClassNotFoundException {
+        List<ObjectWithName<Blob>> blobs = new ArrayList<>(getBlobFiles());
+        blobs.sort(ObjectWithName::compareTo);
+        return blobs;
+    }
+
+    /**
+     * Получение поддеревьев текущего дерева, отсортированных по префиксу. Список самого дерева не меняется.
+     * @return отсортированная копия списка поддеревьев.
+     * @throws IOException исключение, если возникли проблемы с чтением дерева.
+     * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
+     */
+    public @NotNull List<VcsTree> getSortedVcsTreeFiles() throws IOException, ClassNotFoundException {
+        List<VcsTree> subtrees = new ArrayList<>(getVcsTreeFiles());
+        subtrees.sort(VcsTree::compareTo);
+        return subtrees;
+    }
+
+    /**
+     * Создание копии дерева, которую можно менять, не затрагивая исходное. Непрочитанные поддеревья
+     * копируются как ссылки и читаются уже копией.
+     * @return копия дерева.
+     */
+    public @NotNull VcsTree copy() {
+        VcsTree tree = new VcsTree(Paths.get(prefix));
+        tree.prefix = prefix;
+        tree.hash = hash;
+        tree.loader = loader;
+        if (loader == null) {
+            tree.blobFiles.addAll(blobFiles);
+            for (VcsTree subVcsTree : vcsTreeFiles) {
+                tree.vcsTreeFiles.add(subVcsTree.copy());
+            }
+        }
+
+        return tree;
+    }
+
     /**
      * Добавить в список файлов текущей директории еще один.
      * @param blob объект blob.
@@ -189,6 +373,7 @@ public class VcsTree extends VcsObjectWithHash implements Tree, Serializable, Co
      */
     public void addBlob(@NotNull Blob blob, @NotNull String name) {
         blobFiles.add(new ObjectWithName<>(blob, name));
+        resetLookup();
     }
 
     /**
@@ -197,15 +382,18 @@ public class VcsTree extends VcsObjectWithHash implements Tree, Serializable, Co
      */
     public void addChild(@NotNull VcsTree vcsTree) {
         vcsTreeFiles.add(vcsTree);
+        resetLookup();
     }
 
     /**
      * Получение всех файлов, которые находятся в дереве.
      * @return множество всех объектов, содержащихся в дереве.
+     * @throws IOException исключение, если возникли проблемы с чтением поддеревьев.
+     * @throws ClassNotFoundException исключение, если невозможно интерпретировать данные.
      */
-    public @NotNull HashSet<ObjectWithName<Blob>> getAllFiles() {
+    public @NotNull HashSet<ObjectWithName<Blob>> getAllFiles() throws IOException, ClassNotFoundException {
         HashSet<ObjectWithName<Blob>> result = new HashSet<>();
-        result.addAll(blobFiles);
+        result.addAll(getBlobFiles());
 
         for (VcsTree subVcsTree : vcsTreeFiles) {
             result.addAll(subVcsTree.getAllFiles());
@@ -214,30 +402,6 @@ public class VcsTree extends VcsObjectWithHash implements Tree, Serializable, Co
         return result;
     }
 
-    /**
-     * Слияние с другим деревом.
-     * @param vcsTree дерево, которое вливается в текущее.
-     */
-    public void mergeWith(@NotNull VcsTree vcsTree) {
-        for (ObjectWithName<Blob> blob : vcsTree.getBlobFiles()) {
-            blobFiles.add(blob);
-        }
-
-        HashMap<String, VcsTree> prefixWithTree = new HashMap<>();
-        for (VcsTree subVcsTree : vcsTreeFiles) {
-            prefixWithTree.put(subVcsTree.getPrefix(), subVcsTree);
-        }
-
-        for (VcsTree subVcsTree : vcsTree.getVcsTreeFiles()) {
-            if (prefixWithTree.containsKey(subVcsTree.getPrefix())) {
-                VcsTree selectedVcsTree = prefixWithTree.get(subVcsTree.getPrefix());
-                selectedVcsTree.mergeWith(subVcsTree);
-            } else {
-                this.addChild(subVcsTree);
-            }
-        }
-    }
-
     @Override
     public int compareTo(@NotNull VcsTree tree) {
         return prefix.compareTo(tree.getPrefix());
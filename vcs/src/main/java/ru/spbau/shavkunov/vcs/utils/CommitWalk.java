@@ -0,0 +1,113 @@
+package ru.spbau.shavkunov.vcs.utils;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.spbau.shavkunov.vcs.data.CommitGraph;
+import ru.spbau.shavkunov.vcs.primitives.Commit;
+import ru.spbau.shavkunov.vcs.primitives.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Ленивый обход истории от данного коммита к предкам, от новых коммитов к старым. Порядок определяется
+ * временем и поколением коммитов из графа коммитов, поэтому сам коммит читается, только когда до него
+ * дошел обход. Обход останавливается после заданного числа коммитов или на первом коммите старше
+ * заданной даты.
+ */
+public class CommitWalk implements Iterable<Commit> {
+    /**
+     * Репозиторий, откуда читаются коммиты.
+     */
+    private @NotNull Repository repository;
+
+    /**
+     * Граф коммитов, в котором есть начальный коммит и все его предки.
+     */
+    private @NotNull CommitGraph graph;
+
+    /**
+     * Номер начального коммита в графе.
+     */
+    private int start;
+
+    /**
+     * Максимальное количество коммитов.
+     */
+    private int limit;
+
+    /**
+     * Коммиты старше этой даты не выводятся, null -- ограничения нет.
+     */
+    private @Nullable Date since;
+
+    /**
+     * Создание обхода истории.
+     * @param repository репозиторий, откуда читаются коммиты.
+     * @param graph граф коммитов, в котором есть начальный коммит и все его предки.
+     * @param start номер начального коммита в графе.
+     * @param limit максимальное количество коммитов.
+     * @param since коммиты старше этой даты не выводятся, null -- ограничения нет.
+     */
+    public CommitWalk(@NotNull Repository repository, @NotNull CommitGraph graph, int start, int limit,
+                      @Nullable Date since) {
+        this.repository = repository;
+        this.graph = graph;
+        this.start = start;
+        this.limit = limit;
+        this.since = since;
+    }
+
+    /**
+     * Начало нового обхода.
+     * @return итератор по коммитам от новых к старым.
+     * @throws UncheckedIOException исключение при переходе к следующему коммиту, если его не удалось прочитать.
+     */
+    @Override
+    public @NotNull Iterator<Commit> iterator() {
+        Comparator<Integer> byTime = Comparator.comparingLong(graph::getTime);
+        PriorityQueue<Integer> queue = new PriorityQueue<>(byTime.thenComparingInt(graph::getGeneration).reversed());
+        HashSet<Integer> seen = new HashSet<>();
+        queue.add(start);
+        seen.add(start);
+
+        return new Iterator<Commit>() {
+            private int count = 0;
+
+            @Override
+            public boolean hasNext() {
+                return count < limit && !queue.isEmpty()
+                       && (since == null || graph.getTime(queue.peek()) >= since.getTime());
+            }
+
+            @Override
+            public Commit next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                int position = queue.poll();
+                for (int parent : graph.getParents(position)) {
+                    if (seen.add(parent)) {
+                        queue.add(parent);
+                    }
+                }
+
+                count++;
+                try {
+                    return repository.getCommit(graph.getHash(position));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+}
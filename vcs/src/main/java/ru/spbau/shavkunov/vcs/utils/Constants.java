@@ -9,6 +9,65 @@ public class Constants {
      */
     public static final String OBJECTS_FOLDER = "objects";
 
+    /**
+     * Количество первых символов хеша, по которым объекты раскладываются в папки.
+     */
+    public static final int FANOUT_LENGTH = 2;
+
+    /**
+     * Файл с версией формата репозитория.
+     */
+    public static final String VERSION_FILE = "version";
+
+    /**
+     * Текущая версия формата репозитория. Версия 1 -- объекты без байта способа кодирования в одной папке,
+     * коммиты и деревья сохранены стандартной сериализацией Java. Версия 2 -- те же объекты, разложенные
+     * по папкам первых байт хеша. Версия 3 -- объекты с байтом способа кодирования, коммиты и деревья
+     * в двоичном формате с 20-байтовыми хешами.
+     */
+    public static final int REPOSITORY_VERSION = 3;
+
+    /**
+     * Папка pack-файлов репозитория.
+     */
+    public static final String PACKS_FOLDER = "packs";
+
+    /**
+     * Файл графа коммитов репозитория.
+     */
+    public static final String COMMIT_GRAPH_FILE = "commit-graph";
+
+    /**
+     * Журнал коммитов, добавленных в граф после записи его файла.
+     */
+    public static final String COMMIT_GRAPH_LOG_FILE = "commit-graph-log";
+
+    /**
+     * Файл со способом восстановления файлов репозитория.
+     */
+    public static final String RESTORE_MODE_FILE = "restore-mode";
+
+    /**
+     * Папка раскодированных копий объектов, на которые ссылаются файлы рабочей папки.
+     */
+    public static final String RAW_OBJECTS_FOLDER = "raw";
+
+    /**
+     * Максимальный суммарный размер коммитов и деревьев, которые репозиторий держит в памяти, в байтах.
+     */
+    public static final long OBJECT_CACHE_SIZE = 32 * 1024 * 1024;
+
+    /**
+     * Количество неизмененных строк, которые выводятся вокруг различий файлов.
+     */
+    public static final int DIFF_CONTEXT_LINES = 3;
+
+    /**
+     * Наибольший размер файла в байтах, для которого выводятся построчные различия. Для файлов больше
+     * выводится только то, что они различаются.
+     */
+    public static final long DIFF_MAX_FILE_SIZE = 16 * 1024 * 1024;
+
     /**
      * Папка ссылок репозитория.
      */
@@ -34,6 +93,16 @@ public class Constants {
      */
     public static final String INDEX_FILE = "index";
 
+    /**
+     * Файл-блокировка index, в который записывается новая версия index до ее фиксации.
+     */
+    public static final String INDEX_LOCK_FILE = "index.lock";
+
+    /**
+     * Обозначение в файле index отсутствующего идентификатора файла.
+     */
+    public static final String NO_FILE_KEY = "-";
+
     /**
      * Имя пользователя.
      */
@@ -68,4 +137,9 @@ public class Constants {
      * Сообщение перед выводом удаленных файлов.
      */
     public static final String DELETED_MESSAGE = "Deleted files: ";
+
+    /**
+     * Сообщение перед выводом файлов, которые есть в index, но пропали из рабочей папки.
+     */
+    public static final String MISSING_MESSAGE = "Missing files: ";
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package ru.spbau.shavkunov.vcs.utils;
+
+import org.jetbrains.annotations.NotNull;
+import ru.spbau.shavkunov.vcs.exceptions.NotRegularFileException;
+import ru.spbau.shavkunov.vcs.primitives.Blob;
+import ru.spbau.shavkunov.vcs.primitives.IndexEntry;
+import ru.spbau.shavkunov.vcs.primitives.ObjectWithName;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Задача для ForkJoinPool, которая хеширует файлы рабочей папки, записанные в index. Список файлов делится
+ * пополам, пока части не станут достаточно маленькими, и части хешируются параллельно. Атрибуты файла
+ * читаются до хеширования, поэтому если файл изменится во время чтения, новая запись не совпадет с ним
+ * и при следующей проверке файл снова будет прочитан. Файлы, которых нет, пропускаются. Index задача
+ * не меняет: это делает вызывающий код.
+ */
+public class HashFilesTask extends RecursiveTask<List<ObjectWithName<IndexEntry>>> {
+    /**
+     * Сколько файлов хешируется одной задачей без деления.
+     */
+    private static final int THRESHOLD = 16;
+
+    /**
+     * Все хешируемые файлы с их записями в index.
+     */
+    private @NotNull List<ObjectWithName<IndexEntry>> files;
+
+    /**
+     * Начало части списка, которую хеширует задача.
+     */
+    private int from;
+
+    /**
+     * Конец части списка, не включая его.
+     */
+    private int to;
+
+    /**
+     * Создание задачи.
+     * @param files все хешируемые файлы с их записями в index.
+     * @param from начало части списка, которую хеширует задача.
+     * @param to конец части списка, не включая его.
+     */
+    public HashFilesTask(@NotNull List<ObjectWithName<IndexEntry>> files, int from, int to) {
+        this.files = files;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Хеширование части списка файлов.
+     * @return записи index для текущего состояния файлов, которые удалось найти.
+     * @throws UncheckedIOException исключение, если возникли проблемы с чтением файлов.
+     */
+    @Override
+    protected List<ObjectWithName<IndexEntry>> compute() {
+        if (to - from > THRESHOLD) {
+            int middle = (from + to) >>> 1;
+            HashFilesTask left = new HashFilesTask(files, from, middle);
+            HashFilesTask right = new HashFilesTask(files, middle, to);
+            invokeAll(left, right);
+
+            List<ObjectWithName<IndexEntry>> entries = left.join();
+            entries.addAll(right.join());
+            return entries;
+        }
+
+        List<ObjectWithName<IndexEntry>> entries = new ArrayList<>(to - from);
+        for (ObjectWithName<IndexEntry> file : files.subList(from, to)) {
+            Path pathToFile = Paths.get(file.getName());
+            try {
+                IndexEntry attributes = IndexEntry.fromFile(pathToFile, file.getContent().getHash());
+                Blob blob = new Blob(pathToFile);
+                IndexEntry entry = new IndexEntry(blob.getHash(), attributes.getSize(),
+                                                  attributes.getModificationTime(), attributes.getFileKey());
+                entries.add(new ObjectWithName<>(entry, file.getName()));
+            } catch (NoSuchFileException | NotRegularFileException e) {
+                continue;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        return entries;
+    }
+}
@@ -0,0 +1,94 @@
+package ru.spbau.shavkunov.vcs.utils;
+
+import org.jetbrains.annotations.NotNull;
+import ru.spbau.shavkunov.vcs.primitives.IndexEntry;
+import ru.spbau.shavkunov.vcs.primitives.ObjectId;
+import ru.spbau.shavkunov.vcs.primitives.ObjectWithName;
+import ru.spbau.shavkunov.vcs.primitives.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Задача для ForkJoinPool, которая восстанавливает содержимое файлов из репозитория. Список файлов делится
+ * пополам, пока части не станут достаточно маленькими, и части восстанавливаются параллельно. Папки
+ * для файлов должны быть созданы заранее. Index задача не меняет: это делает вызывающий код.
+ */
+public class RestoreFilesTask extends RecursiveTask<List<ObjectWithName<IndexEntry>>> {
+    /**
+     * Сколько файлов восстанавливается одной задачей без деления.
+     */
+    private static final int THRESHOLD = 16;
+
+    /**
+     * Все восстанавливаемые файлы: хеш содержимого и путь к файлу.
+     */
+    private @NotNull List<ObjectWithName<ObjectId>> files;
+
+    /**
+     * Начало части списка, которую восстанавливает задача.
+     */
+    private int from;
+
+    /**
+     * Конец части списка, не включая его.
+     */
+    private int to;
+
+    /**
+     * Репозиторий, откуда восстанавливаются файлы.
+     */
+    private @NotNull Repository repository;
+
+    /**
+     * Создание задачи.
+     * @param files все восстанавливаемые файлы: хеш содержимого и путь к файлу.
+     * @param from начало части списка, которую восстанавливает задача.
+     * @param to конец части списка, не включая его.
+     * @param repository репозиторий, откуда восстанавливаются файлы.
+     */
+    public RestoreFilesTask(@NotNull List<ObjectWithName<ObjectId>> files, int from, int to,
+                            @NotNull Repository repository) {
+        this.files = files;
+        this.from = from;
+        this.to = to;
+        this.repository = repository;
+    }
+
+    /**
+     * Восстановление части списка файлов.
+     * @return записи index для восстановленных файлов.
+     * @throws UncheckedIOException исключение, если возникли проблемы с чтением объектов или записью файлов.
+     */
+    @Override
+    protected List<ObjectWithName<IndexEntry>> compute() {
+        if (to - from > THRESHOLD) {
+            int middle = (from + to) >>> 1;
+            RestoreFilesTask left = new RestoreFilesTask(files, from, middle, repository);
+            RestoreFilesTask right = new RestoreFilesTask(files, middle, to, repository);
+            invokeAll(left, right);
+
+            List<ObjectWithName<IndexEntry>> entries = left.join();
+            entries.addAll(right.join());
+            return entries;
+        }
+
+        List<ObjectWithName<IndexEntry>> entries = new ArrayList<>(to - from);
+        try {
+            for (ObjectWithName<ObjectId> file : files.subList(from, to)) {
+                Path pathToFile = Paths.get(file.getName());
+                IndexEntry entry = repository.restoreFileContent(pathToFile, file.getContent());
+                entries.add(new ObjectWithName<>(entry, file.getName()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return entries;
+    }
+}
@@ -0,0 +1,83 @@
+package ru.spbau.shavkunov.vcs.utils;
+
+import org.jetbrains.annotations.NotNull;
+import ru.spbau.shavkunov.vcs.exceptions.NotRegularFileException;
+import ru.spbau.shavkunov.vcs.primitives.IndexEntry;
+import ru.spbau.shavkunov.vcs.primitives.ObjectWithName;
+import ru.spbau.shavkunov.vcs.primitives.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+import static ru.spbau.shavkunov.vcs.utils.Constants.VCS_FOLDER;
+
+/**
+ * Задача для ForkJoinPool, которая обходит директорию, хеширует и сохраняет в репозиторий все файлы в ней.
+ * Поддиректории и файлы обрабатываются параллельно. Символические ссылки на директории пропускаются,
+ * ссылки на файлы сохраняются как содержимое файла. Index задача не меняет: это делает вызывающий код.
+ */
+public class StoreFilesTask extends RecursiveTask<List<ObjectWithName<IndexEntry>>> {
+    /**
+     * Файл или директория, которую нужно сохранить.
+     */
+    private @NotNull Path path;
+
+    /**
+     * Репозиторий, куда сохраняются файлы.
+     */
+    private @NotNull Repository repository;
+
+    /**
+     * Создание задачи.
+     * @param path файл или директория, которую нужно сохранить.
+     * @param repository репозиторий, куда сохраняются файлы.
+     */
+    public StoreFilesTask(@NotNull Path path, @NotNull Repository repository) {
+        this.path = path;
+        this.repository = repository;
+    }
+
+    /**
+     * Сохранение файла или всех файлов директории.
+     * @return записи index сохраненных файлов с их путями.
+     * @throws UncheckedIOException исключение, если возникли проблемы с чтением или записью файлов, или если
+     * сохраняемый путь оказался не файлом, например ссылкой на директорию.
+     */
+    @Override
+    protected List<ObjectWithName<IndexEntry>> compute() {
+        List<ObjectWithName<IndexEntry>> entries = new ArrayList<>();
+        try {
+            if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                entries.add(new ObjectWithName<>(repository.storeBlob(path), path.toString()));
+                return entries;
+            }
+
+            List<StoreFilesTask> subtasks = new ArrayList<>();
+            try (DirectoryStream<Path> directory = Files.newDirectoryStream(path)) {
+                for (Path child : directory) {
+                    if (!child.getFileName().toString().equals(VCS_FOLDER) && !Utils.isDirectoryLink(child)) {
+                        subtasks.add(new StoreFilesTask(child, repository));
+                    }
+                }
+            }
+
+            for (StoreFilesTask subtask : invokeAll(subtasks)) {
+                entries.addAll(subtask.join());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NotRegularFileException e) {
+            throw new UncheckedIOException(new FileSystemException(path.toString(), null, "Not a regular file"));
+        }
+
+        return entries;
+    }
+}
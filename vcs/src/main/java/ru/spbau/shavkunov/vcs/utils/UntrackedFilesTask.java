@@ -0,0 +1,109 @@
+package ru.spbau.shavkunov.vcs.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RecursiveTask;
+
+import static ru.spbau.shavkunov.vcs.utils.Constants.VCS_FOLDER;
+
+/**
+ * Задача для ForkJoinPool, которая ищет в рабочей папке файлы, не находящиеся под контролем системы версий.
+ * Папка репозитория пропускается без чтения. Внутрь папки задача заходит, только если в ней есть
+ * отслеживаемые файлы, иначе папка целиком считается неотслеживаемой и выводится с разделителем на конце.
+ * Символические ссылки на директории пропускаются, так же как при добавлении директории.
+ * Подпапки обходятся параллельно. Пути выводятся в том же виде, что и имена файлов в index.
+ */
+public class UntrackedFilesTask extends RecursiveTask<List<String>> {
+    /**
+     * Папка, которую обходит задача.
+     */
+    private @NotNull Path directory;
+
+    /**
+     * Пути отслеживаемых файлов.
+     */
+    private @NotNull Set<String> trackedFiles;
+
+    /**
+     * Пути папок, в которых есть отслеживаемые файлы.
+     */
+    private @NotNull Set<String> trackedDirectories;
+
+    /**
+     * Создание задачи.
+     * @param directory папка, которую обходит задача.
+     * @param trackedFiles пути отслеживаемых файлов.
+     * @param trackedDirectories пути папок, в которых есть отслеживаемые файлы.
+     */
+    public UntrackedFilesTask(@NotNull Path directory, @NotNull Set<String> trackedFiles,
+                              @NotNull Set<String> trackedDirectories) {
+        this.directory = directory;
+        this.trackedFiles = trackedFiles;
+        this.trackedDirectories = trackedDirectories;
+    }
+
+    /**
+     * Обход папки.
+     * @return пути неотслеживаемых файлов и папок.
+     * @throws UncheckedIOException исключение, если возникли проблемы с чтением папок.
+     */
+    @Override
+    protected List<String> compute() {
+        List<String> untrackedFiles = new ArrayList<>();
+        List<UntrackedFilesTask> subtasks = new ArrayList<>();
+
+        Path listedDirectory = directory.toString().isEmpty() ? Paths.get(".") : directory;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(listedDirectory)) {
+            for (Path entry : stream) {
+                String fileName = entry.getFileName().toString();
+                String path = directory.resolve(fileName).toString();
+
+                if (Utils.isDirectoryLink(entry)) {
+                    continue;
+                }
+
+                if (!Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    if (!trackedFiles.contains(path)) {
+                        untrackedFiles.add(path);
+                    }
+                } else if (trackedDirectories.contains(path)) {
+                    subtasks.add(new UntrackedFilesTask(directory.resolve(fileName), trackedFiles, trackedDirectories));
+                } else if (!fileName.equals(VCS_FOLDER) && !isEmpty(entry)) {
+                    untrackedFiles.add(path + File.separator);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        invokeAll(subtasks);
+        for (UntrackedFilesTask subtask : subtasks) {
+            untrackedFiles.addAll(subtask.join());
+        }
+
+        return untrackedFiles;
+    }
+
+    /**
+     * Проверка, что в папке нет ни одного файла. Читается только первая запись папки.
+     * @param directory путь к папке.
+     * @return true, если папка пуста, иначе false.
+     * @throws IOException исключение, если не удалось прочитать папку.
+     */
+    private static boolean isEmpty(@NotNull Path directory) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            return !stream.iterator().hasNext();
+        }
+    }
+}
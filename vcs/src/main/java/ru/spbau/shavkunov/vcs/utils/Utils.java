@@ -5,6 +5,7 @@ import org.jetbrains.annotations.NotNull;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 /**
@@ -42,4 +43,15 @@ public class Utils {
 
         return line;
     }
+
+    /**
+     * Проверка, является ли путь символической ссылкой на директорию. Такие ссылки не хранятся в системе
+     * версий: add не заходит в них, а поиск неотслеживаемых файлов их не выводит. Иначе ссылка на одну из
+     * родительских директорий приводила бы к бесконечному обходу.
+     * @param path проверяемый путь.
+     * @return true, если путь -- символическая ссылка на существующую директорию, иначе false.
+     */
+    public static boolean isDirectoryLink(@NotNull Path path) {
+        return Files.isSymbolicLink(path) && Files.isDirectory(path);
+    }
 }
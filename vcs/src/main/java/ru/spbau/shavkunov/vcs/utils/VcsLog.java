@@ -4,24 +4,26 @@ import org.jetbrains.annotations.NotNull;
 import ru.spbau.shavkunov.vcs.primitives.Commit;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 
 /**
  * Класс, отвечающий за логику вывода сообщений коммитов.
  */
 public class VcsLog {
     /**
-     * Список коммитов, сообщение о которых нужно вывести.
+     * Коммиты, сообщение о которых нужно вывести, от новых к старым. Коммиты могут читаться по мере вывода.
      */
-    private @NotNull ArrayList<Commit> commits;
+    private @NotNull Iterable<Commit> commits;
 
-    public VcsLog(@NotNull ArrayList<Commit> commits) {
-        commits.sort(Comparator.comparing(Commit::getDate));
+    /**
+     * Создание лога.
+     * @param commits коммиты, сообщение о которых нужно вывести, от новых к старым.
+     */
+    public VcsLog(@NotNull Iterable<Commit> commits) {
         this.commits = commits;
     }
 
     /**
-     * Печать лога коммитов.
+     * Печать лога коммитов. Каждый коммит печатается сразу, как только он прочитан.
      */
     public void printLog() {
         for (Commit commit : commits) {
@@ -44,9 +46,14 @@ public class VcsLog {
 
     /**
      * Получение коммитов, которые нужно вывести.
-     * @return список коммитов.
+     * @return список коммитов от новых к старым.
      */
     public @NotNull ArrayList<Commit> getCommits() {
-        return commits;
+        ArrayList<Commit> list = new ArrayList<>();
+        for (Commit commit : commits) {
+            list.add(commit);
+        }
+
+        return list;
     }
 }
\ No newline at end of file
@@ -0,0 +1,122 @@
+package ru.spbau.shavkunov.vcs.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+
+import static ru.spbau.shavkunov.vcs.utils.Constants.*;
+
+/**
+ * Состояние рабочей папки и index относительно текущего коммита. Все списки отсортированы.
+ */
+public class VcsStatus {
+    /**
+     * Файлы, которые добавлены в index или изменены в нем по сравнению с коммитом.
+     */
+    private @NotNull ArrayList<String> stagedFiles;
+
+    /**
+     * Файлы коммита, удаленные из index.
+     */
+    private @NotNull ArrayList<String> deletedFiles;
+
+    /**
+     * Файлы index, содержимое которых в рабочей папке отличается от index.
+     */
+    private @NotNull ArrayList<String> modifiedFiles;
+
+    /**
+     * Файлы index, которых нет в рабочей папке.
+     */
+    private @NotNull ArrayList<String> missingFiles;
+
+    /**
+     * Файлы рабочей папки, которых нет ни в index, ни в коммите.
+     */
+    private @NotNull ArrayList<String> untrackedFiles;
+
+    /**
+     * Создание состояния.
+     * @param stagedFiles файлы, которые добавлены в index или изменены в нем по сравнению с коммитом.
+     * @param deletedFiles файлы коммита, удаленные из index.
+     * @param modifiedFiles файлы index, содержимое которых в рабочей папке отличается от index.
+     * @param missingFiles файлы index, которых нет в рабочей папке.
+     * @param untrackedFiles файлы рабочей папки, которых нет ни в index, ни в коммите.
+     */
+    public VcsStatus(@NotNull ArrayList<String> stagedFiles, @NotNull ArrayList<String> deletedFiles,
+                     @NotNull ArrayList<String> modifiedFiles, @NotNull ArrayList<String> missingFiles,
+                     @NotNull ArrayList<String> untrackedFiles) {
+        this.stagedFiles = stagedFiles;
+        this.deletedFiles = deletedFiles;
+        this.modifiedFiles = modifiedFiles;
+        this.missingFiles = missingFiles;
+        this.untrackedFiles = untrackedFiles;
+    }
+
+    /**
+     * Печать состояния. Пустые списки не печатаются.
+     */
+    public void printStatus() {
+        printList(UNTRACKED_MESSAGE, untrackedFiles);
+        printList(MODIFIED_MESSAGE, modifiedFiles);
+        printList(MISSING_MESSAGE, missingFiles);
+        printList(STAGED_MESSAGE, stagedFiles);
+        printList(DELETED_MESSAGE, deletedFiles);
+    }
+
+    /**
+     * Вывод на экран списка с сообщением.
+     * @param message сообщение перед выводом списка.
+     * @param list список, который нужно вывести(каждый элемент на новой строке)
+     */
+    private void printList(@NotNull String message, @NotNull ArrayList<String> list) {
+        if (list.size() > 0) {
+            System.out.println(message);
+            for (String item : list) {
+                System.out.println(item);
+            }
+
+            System.out.println();
+        }
+    }
+
+    /**
+     * Получение файлов, которые добавлены в index или изменены в нем по сравнению с коммитом.
+     * @return список путей к файлам.
+     */
+    public @NotNull ArrayList<String> getStagedFiles() {
+        return stagedFiles;
+    }
+
+    /**
+     * Получение файлов коммита, удаленных из index.
+     * @return список путей к файлам.
+     */
+    public @NotNull ArrayList<String> getDeletedFiles() {
+        return deletedFiles;
+    }
+
+    /**
+     * Получение файлов, содержимое которых в рабочей папке отличается от index.
+     * @return список путей к файлам.
+     */
+    public @NotNull ArrayList<String> getModifiedFiles() {
+        return modifiedFiles;
+    }
+
+    /**
+     * Получение файлов index, которых нет в рабочей папке.
+     * @return список путей к файлам.
+     */
+    public @NotNull ArrayList<String> getMissingFiles() {
+        return missingFiles;
+    }
+
+    /**
+     * Получение файлов, которые не находятся под контролем системы версий.
+     * @return список путей к файлам.
+     */
+    public @NotNull ArrayList<String> getUntrackedFiles() {
+        return untrackedFiles;
+    }
+}
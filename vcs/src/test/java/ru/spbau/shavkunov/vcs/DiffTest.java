@@ -0,0 +1,142 @@
+package ru.spbau.shavkunov.vcs;
+
+import org.junit.Test;
+import ru.spbau.shavkunov.vcs.diff.DiffAlgorithm;
+import ru.spbau.shavkunov.vcs.diff.DiffFormatter;
+import ru.spbau.shavkunov.vcs.diff.Edit;
+import ru.spbau.shavkunov.vcs.diff.LineText;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DiffTest {
+    @Test
+    public void randomSequencesTest() {
+        Random random = new Random(42);
+        for (int test = 0; test < 500; test++) {
+            int[] a = randomSequence(random);
+            int[] b = randomSequence(random);
+            for (DiffAlgorithm algorithm : DiffAlgorithm.values()) {
+                List<Edit> edits = algorithm.diff(a, b);
+                assertArrayEquals(b, apply(a, b, edits));
+                if (algorithm == DiffAlgorithm.MYERS) {
+                    assertEquals(a.length + b.length - 2 * longestCommonSubsequence(a, b), changedLines(edits));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void histogramAlignsUniqueLinesTest() {
+        int[] a = {1, 2, 9, 3, 1, 2, 9};
+        int[] b = {1, 2, 9, 1, 2, 9};
+        assertEquals(Arrays.asList(new Edit(3, 4, 3, 3)), DiffAlgorithm.HISTOGRAM.diff(a, b));
+    }
+
+    @Test
+    public void formatTest() throws IOException {
+        LineText oldText = new LineText("a\nb\nc\nd\ne\nf\ng\nh\ni\nj".getBytes());
+        LineText newText = new LineText("a\nB\nc\nd\ne\nf\ng\nh\ni\nj\n".getBytes());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new DiffFormatter(output, DiffAlgorithm.MYERS, 3).format("file", oldText, newText);
+
+        assertEquals("diff --vcs a/file b/file\n"
+                     + "--- a/file\n"
+                     + "+++ b/file\n"
+                     + "@@ -1,5 +1,5 @@\n"
+                     + " a\n"
+                     + "-b\n"
+                     + "+B\n"
+                     + " c\n"
+                     + " d\n"
+                     + " e\n"
+                     + "@@ -7,4 +7,4 @@\n"
+                     + " g\n"
+                     + " h\n"
+                     + " i\n"
+                     + "-j\n"
+                     + "\\ No newline at end of file\n"
+                     + "+j\n", output.toString());
+
+        output.reset();
+        new DiffFormatter(output, DiffAlgorithm.MYERS, 3).format("file", null, new LineText("x\n".getBytes()));
+        assertTrue(output.toString().endsWith("--- /dev/null\n+++ b/file\n@@ -0,0 +1 @@\n+x\n"));
+    }
+
+    @Test
+    public void largeFileTest() throws IOException {
+        LineText smallText = LineText.read(new ByteArrayInputStream("a\nb\n".getBytes()), 4);
+        assertFalse(smallText.isTooLarge());
+        assertEquals(2, smallText.size());
+
+        LineText largeText = LineText.read(new ByteArrayInputStream("a\nb\nc\n".getBytes()), 4);
+        assertTrue(largeText.isTooLarge());
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new DiffFormatter(output, DiffAlgorithm.MYERS, 3).format("file", smallText, largeText);
+        assertEquals("diff --vcs a/file b/file\nFiles a/file and b/file differ\n", output.toString());
+    }
+
+    private int[] randomSequence(Random random) {
+        int[] sequence = new int[random.nextInt(30)];
+        for (int i = 0; i < sequence.length; i++) {
+            sequence[i] = random.nextInt(5);
+        }
+
+        return sequence;
+    }
+
+    private int[] apply(int[] a, int[] b, List<Edit> edits) {
+        List<Integer> result = new ArrayList<>();
+        int position = 0;
+        for (Edit edit : edits) {
+            assertTrue(edit.getBeginA() >= position);
+            for (; position < edit.getBeginA(); position++) {
+                result.add(a[position]);
+            }
+
+            for (int i = edit.getBeginB(); i < edit.getEndB(); i++) {
+                result.add(b[i]);
+            }
+
+            position = edit.getEndA();
+        }
+
+        for (; position < a.length; position++) {
+            result.add(a[position]);
+        }
+
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private int changedLines(List<Edit> edits) {
+        int count = 0;
+        for (Edit edit : edits) {
+            count += edit.getEndA() - edit.getBeginA() + edit.getEndB() - edit.getBeginB();
+        }
+
+        return count;
+    }
+
+    private int longestCommonSubsequence(int[] a, int[] b) {
+        int[][] lengths = new int[a.length + 1][b.length + 1];
+        for (int i = 1; i <= a.length; i++) {
+            for (int j = 1; j <= b.length; j++) {
+                lengths[i][j] = a[i - 1] == b[j - 1] ? lengths[i - 1][j - 1] + 1
+                                                     : Math.max(lengths[i - 1][j], lengths[i][j - 1]);
+            }
+        }
+
+        return lengths[a.length][b.length];
+    }
+}
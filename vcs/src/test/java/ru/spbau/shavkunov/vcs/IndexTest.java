@@ -0,0 +1,133 @@
+package ru.spbau.shavkunov.vcs;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ru.spbau.shavkunov.vcs.data.IndexFile;
+import ru.spbau.shavkunov.vcs.primitives.Index;
+import ru.spbau.shavkunov.vcs.primitives.IndexEntry;
+import ru.spbau.shavkunov.vcs.primitives.ObjectId;
+import ru.spbau.shavkunov.vcs.primitives.ObjectWithName;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static ru.spbau.shavkunov.vcs.TestConstants.rootPath;
+
+public class IndexTest {
+    private static final ObjectId firstHash = ObjectId.fromHex("0123456789abcdef0123456789abcdef01234567");
+    private static final ObjectId secondHash = ObjectId.fromHex("89abcdef0123456789abcdef0123456789abcdef");
+    private Path pathToIndex = rootPath.resolve("test_index");
+
+    @Before
+    public void setUp() throws IOException {
+        Index index = new Index();
+        index.put(Paths.get("b"), new IndexEntry(firstHash, 5, 100, "(dev=1,ino=2)"));
+        index.put(Paths.get("a b"), new IndexEntry(secondHash));
+        index.put(Paths.get("dir/c"), new IndexEntry(firstHash));
+        IndexFile.write(pathToIndex, index);
+    }
+
+    @Test
+    public void readWrittenIndexTest() throws IOException {
+        Index index = new Index(IndexFile.open(pathToIndex));
+
+        IndexEntry entry = index.get(Paths.get("b"));
+        assertNotNull(entry);
+        assertEquals(firstHash, entry.getHash());
+        assertEquals(5, entry.getSize());
+        assertEquals(100, entry.getModificationTime());
+        assertEquals("(dev=1,ino=2)", entry.getFileKey());
+
+        assertEquals(secondHash, index.get(Paths.get("a b")).getHash());
+        assertNull(index.get(Paths.get("dir")));
+        assertEquals(Arrays.asList("a b", "b", "dir/c"), getPaths(index));
+    }
+
+    @Test
+    public void changesOverIndexFileTest() throws IOException {
+        Index index = new Index(IndexFile.open(pathToIndex));
+        index.remove(Paths.get("b"));
+        index.put(Paths.get("c"), new IndexEntry(secondHash));
+        index.put(Paths.get("dir/c"), new IndexEntry(secondHash));
+
+        assertFalse(index.contains(Paths.get("b")));
+        assertEquals(Arrays.asList("a b", "c", "dir/c"), getPaths(index));
+        assertEquals(secondHash, index.get(Paths.get("dir/c")).getHash());
+
+        IndexFile.write(pathToIndex, index);
+        assertEquals(Arrays.asList("a b", "c", "dir/c"), getPaths(new Index(IndexFile.open(pathToIndex))));
+    }
+
+    @Test
+    public void treeHashesTest() throws IOException {
+        Index index = new Index(IndexFile.open(pathToIndex));
+        index.putTreeHash("", firstHash);
+        index.putTreeHash("dir", secondHash);
+        index.putTreeHash("other", secondHash);
+        IndexFile.write(pathToIndex, index, index.getTreeHashes());
+
+        index = new Index(IndexFile.open(pathToIndex));
+        assertEquals(Arrays.asList("a b", "b", "dir/c"), getPaths(index));
+        assertEquals(firstHash, index.getTreeHash(""));
+        assertEquals(secondHash, index.getTreeHash("dir"));
+
+        index.put(Paths.get("dir/c"), new IndexEntry(firstHash, 1, 1, null));
+        assertEquals(secondHash, index.getTreeHash("dir"));
+
+        index.put(Paths.get("dir/c"), new IndexEntry(secondHash));
+        assertNull(index.getTreeHash(""));
+        assertNull(index.getTreeHash("dir"));
+        assertEquals(secondHash, index.getTreeHash("other"));
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptedIndexTest() throws IOException {
+        byte[] content = Files.readAllBytes(pathToIndex);
+        content[content.length - 1] ^= 1;
+        Files.write(pathToIndex, content);
+
+        IndexFile.open(pathToIndex);
+    }
+
+    @Test(expected = IOException.class)
+    public void tooLongPathTest() throws IOException {
+        StringBuilder path = new StringBuilder();
+        for (int i = 0; i < 0x10000; i++) {
+            path.append('a');
+        }
+
+        Index index = new Index(IndexFile.open(pathToIndex));
+        index.put(Paths.get(path.toString()), new IndexEntry(firstHash));
+        IndexFile.write(pathToIndex, index);
+    }
+
+    @Test
+    public void objectIdTest() {
+        assertEquals("0123456789abcdef0123456789abcdef01234567", firstHash.toHex());
+        assertEquals(firstHash, ObjectId.fromBytes(firstHash.toBytes()));
+        assertEquals(firstHash.hashCode(), ObjectId.fromHex(firstHash.toHex()).hashCode());
+        assertTrue(firstHash.compareTo(secondHash) < 0);
+        assertTrue(ObjectId.fromHex("ff23456789abcdef0123456789abcdef01234567").compareTo(secondHash) > 0);
+        assertFalse(ObjectId.isHex("0123"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(pathToIndex);
+    }
+
+    private ArrayList<String> getPaths(Index index) {
+        ArrayList<String> paths = new ArrayList<>();
+        for (ObjectWithName<IndexEntry> entry : index) {
+            paths.add(entry.getName());
+        }
+
+        return paths;
+    }
+}
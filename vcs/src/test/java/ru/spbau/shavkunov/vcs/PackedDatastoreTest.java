@@ -0,0 +1,96 @@
+package ru.spbau.shavkunov.vcs;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ru.spbau.shavkunov.vcs.data.Delta;
+import ru.spbau.shavkunov.vcs.data.PackedDatastore;
+import ru.spbau.shavkunov.vcs.primitives.ObjectId;
+import ru.spbau.shavkunov.vcs.primitives.Repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static ru.spbau.shavkunov.vcs.TestConstants.rootPath;
+
+public class PackedDatastoreTest {
+    private Path pathToConfig = rootPath.resolve("test").resolve("config");
+    private PackedDatastore datastore;
+
+    @Before
+    public void setUp() throws Exception {
+        new VcsManagerTest().deleteTmpFiles();
+        Repository.initResources(rootPath);
+        new VcsManagerTest().createTempDirectories();
+        datastore = new PackedDatastore(rootPath);
+    }
+
+    @Test
+    public void deltaTest() throws IOException {
+        byte[] base = "first line of the file\nsecond line of the file\nthird line of the file\n".getBytes();
+        byte[] target = "first line of the file\nchanged line\nthird line of the file\nfourth line\n".getBytes();
+
+        byte[] delta = Delta.create(base, target, target.length);
+        assertNotNull(delta);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        assertNull(Delta.create(base, "completely different content".getBytes(), 10));
+    }
+
+    @Test
+    public void repackTest() throws Exception {
+        List<ObjectId> hashes = new ArrayList<>();
+        List<byte[]> contents = new ArrayList<>();
+        long looseSize = 0;
+        String[] options = new String[500];
+        for (int i = 0; i < options.length; i++) {
+            options[i] = "option" + i + " = " + (i * 7919 % 1000003);
+        }
+
+        for (int version = 0; version < 50; version++) {
+            options[version * 37 % options.length] = "changed in version " + version;
+            byte[] content = String.join("\n", options).getBytes();
+            Files.write(pathToConfig, content);
+
+            ObjectId hash = datastore.storeBlob(pathToConfig);
+            hashes.add(hash);
+            contents.add(content);
+            looseSize += Files.size(datastore.getObjectPath(hash));
+        }
+
+        datastore.repack();
+        assertTrue(FileUtils.listFiles(datastore.getObjectsPath().toFile(), null, true).isEmpty());
+        File[] packFiles = datastore.getPacksPath().toFile().listFiles();
+        assertEquals(2, packFiles.length);
+
+        long packedSize = 0;
+        for (File file : packFiles) {
+            packedSize += file.length();
+        }
+        assertTrue(packedSize * 10 < looseSize);
+
+        PackedDatastore reopened = new PackedDatastore(rootPath);
+        for (int i = 0; i < hashes.size(); i++) {
+            assertTrue(reopened.isCommitExists(hashes.get(i)));
+            assertArrayEquals(contents.get(i), IOUtils.toByteArray(reopened.openObject(hashes.get(i))));
+        }
+
+        Files.write(pathToConfig, "new version".getBytes());
+        ObjectId newHash = reopened.storeBlob(pathToConfig);
+        reopened.repack();
+        assertEquals(2, reopened.getPacksPath().toFile().listFiles().length);
+        assertArrayEquals("new version".getBytes(), IOUtils.toByteArray(reopened.openObject(newHash)));
+        assertArrayEquals(contents.get(0), IOUtils.toByteArray(reopened.openObject(hashes.get(0))));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        new VcsManagerTest().deleteTmpFiles();
+    }
+}
@@ -1,18 +1,37 @@
 package ru.spbau.shavkunov.vcs;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import ru.spbau.shavkunov.vcs.data.CommitGraph;
+import ru.spbau.shavkunov.vcs.data.Filesystem;
+import ru.spbau.shavkunov.vcs.data.ObjectCache;
 import ru.spbau.shavkunov.vcs.exceptions.*;
+import ru.spbau.shavkunov.vcs.primitives.Commit;
+import ru.spbau.shavkunov.vcs.primitives.ObjectId;
 import ru.spbau.shavkunov.vcs.primitives.Repository;
+import ru.spbau.shavkunov.vcs.trees.VcsTree;
+import ru.spbau.shavkunov.vcs.utils.Utils;
+import ru.spbau.shavkunov.vcs.utils.VcsStatus;
 
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.*;
 import static ru.spbau.shavkunov.vcs.utils.Constants.DEFAULT_BRANCH_NAME;
+import static ru.spbau.shavkunov.vcs.utils.Constants.REPOSITORY_VERSION;
 import static ru.spbau.shavkunov.vcs.utils.Constants.VCS_FOLDER;
+import static ru.spbau.shavkunov.vcs.utils.Constants.VERSION_FILE;
 import static ru.spbau.shavkunov.vcs.TestConstants.pathToFile;
 import static ru.spbau.shavkunov.vcs.TestConstants.rootPath;
 
@@ -28,11 +47,83 @@ public class RepositoryTest {
         Repository.initResources(rootPath);
         Repository repository = new Repository(rootPath);
         assertThat(repository.getRootDirectory(), is(rootPath.resolve(VCS_FOLDER)));
-        assertEquals(4, repository.getRootDirectory().toFile().listFiles().length);
+        assertEquals(5, repository.getRootDirectory().toFile().listFiles().length);
 
         assertEquals("master", repository.getReference().getName());
     }
 
+    @Test
+    public void upgradeRepositoryTest() throws Exception {
+        Repository.initResources(rootPath);
+        Filesystem filesystem = new Filesystem(rootPath);
+        ObjectId hash = filesystem.storeBlob(pathToFile);
+        Files.move(filesystem.getObjectPath(hash), filesystem.getObjectsPath().resolve(hash.toHex()));
+        Files.delete(filesystem.getRootDirectory().resolve(VERSION_FILE));
+
+        filesystem = new Filesystem(rootPath);
+        assertTrue(Files.isRegularFile(filesystem.getObjectPath(hash)));
+        assertFalse(Files.exists(filesystem.getObjectsPath().resolve(hash.toHex())));
+        assertTrue(Files.exists(filesystem.getRootDirectory().resolve(VERSION_FILE)));
+        assertTrue(filesystem.isCommitExists(hash));
+    }
+
+    @Test
+    public void upgradeFanOutLegacyObjectsTest() throws Exception {
+        Repository.initResources(rootPath);
+        Filesystem filesystem = new Filesystem(rootPath);
+        ObjectId hash = ObjectId.hashOf("text1".getBytes());
+        Files.createDirectories(filesystem.getObjectPath(hash).getParent());
+        Files.write(filesystem.getObjectPath(hash), "text1".getBytes());
+        Files.write(filesystem.getRootDirectory().resolve(VERSION_FILE), "2".getBytes());
+
+        filesystem = new Filesystem(rootPath);
+        assertArrayEquals("text1".getBytes(), IOUtils.toByteArray(filesystem.openObject(hash)));
+        assertEquals(String.valueOf(REPOSITORY_VERSION),
+                     Utils.getFirstLine(filesystem.getRootDirectory().resolve(VERSION_FILE)));
+    }
+
+    @Test
+    public void upgradeLegacyRepositoryTest() throws Exception, NotRegularFileException,
+                                                   NoRevisionExistsException {
+        try (ZipInputStream zip = new ZipInputStream(getClass().getResourceAsStream("/legacy-repository.zip"))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                Path pathToFile = rootPath.resolve(entry.getName());
+                Files.createDirectories(pathToFile.getParent());
+                Files.copy(zip, pathToFile);
+            }
+        }
+
+        VcsManager manager = new VcsManager(rootPath);
+        Filesystem filesystem = new Filesystem(rootPath);
+        Repository repository = new Repository(filesystem);
+        assertEquals("feature", repository.getReference().getName());
+
+        Commit featureCommit = repository.getCommit(repository.getReference().getCommitHash());
+        assertEquals("feature commit", featureCommit.getMessage());
+        assertEquals(1, featureCommit.getParentCommits().size());
+        Commit masterCommit = repository.getCommit(featureCommit.getParentCommits().get(0));
+        assertEquals("master first commit", masterCommit.getMessage());
+        assertEquals(filesystem.getReferenceCommitHash(DEFAULT_BRANCH_NAME), masterCommit.getHash());
+
+        VcsTree tree = repository.getTree(featureCommit.getTreeHash());
+        assertEquals(ObjectId.hashOf("test3".getBytes()), tree.getFileHash(rootPath.resolve("test").resolve("test3")));
+        ObjectId fileHash = tree.getFileHash(rootPath.resolve("test2"));
+        assertArrayEquals("text2".getBytes(), IOUtils.toByteArray(filesystem.openObject(fileHash)));
+        assertNull(repository.getTree(masterCommit.getTreeHash()).getFileHash(rootPath.resolve("test2")));
+
+        VcsStatus status = manager.getStatus();
+        assertTrue(status.getStagedFiles().isEmpty());
+        assertTrue(status.getModifiedFiles().isEmpty());
+        try (DirectoryStream<Path> objects = Files.newDirectoryStream(filesystem.getObjectsPath())) {
+            for (Path object : objects) {
+                assertTrue(Files.isDirectory(object));
+            }
+        }
+
+        manager.checkout(DEFAULT_BRANCH_NAME);
+        assertFalse(Files.exists(rootPath.resolve("test2")));
+    }
+
     @Test(expected = RepositoryAlreadyExistsException.class)
     public void initRepositoryAgainTest() throws IOException, RepositoryAlreadyExistsException {
         Repository.initResources(rootPath);
@@ -58,6 +149,152 @@ public class RepositoryTest {
         assertFalse(repository.isBranchExists(DEFAULT_BRANCH_NAME));
     }
 
+    @Test
+    public void indexStatCacheTest() throws Exception, NotRegularFileException {
+        Repository.initResources(rootPath);
+        VcsManager manager = new VcsManager(rootPath);
+        ObjectId hash = manager.addFile(pathToFile);
+
+        Repository repository = new Repository(rootPath);
+        assertEquals(hash, repository.createTreeFromIndex().getFileHash(pathToFile));
+
+        Files.write(pathToFile, "changed text".getBytes());
+        assertEquals(hash, repository.createTreeFromIndex().getFileHash(pathToFile));
+    }
+
+    @Test
+    public void indexUpdateRereadsIndexTest() throws Exception, NotRegularFileException {
+        Repository.initResources(rootPath);
+        Repository repository = new Repository(rootPath);
+        new VcsManager(rootPath).addFile(rootPath.resolve("test2"));
+
+        repository.beginIndexUpdate();
+        repository.addFileToIndex(pathToFile, ObjectId.hashOf("text1".getBytes()));
+        repository.commitIndexUpdate();
+
+        assertEquals(new HashSet<>(Arrays.asList("test1", "test2")), new Repository(rootPath).getIndexedFiles());
+    }
+
+    @Test
+    public void unstagedChangesNotCommittedTest() throws Exception, NotRegularFileException {
+        Repository.initResources(rootPath);
+        VcsManager manager = new VcsManager(rootPath);
+        ObjectId hash = manager.addFile(rootPath.resolve("test2"));
+        manager.addFile(pathToFile);
+        Files.write(rootPath.resolve("test2"), "unstaged text".getBytes());
+        manager.commitChanges("me", "commit with unstaged changes");
+
+        Filesystem filesystem = new Filesystem(rootPath);
+        Repository repository = new Repository(filesystem);
+        Commit commit = repository.getCommit(repository.getReference().getCommitHash());
+        ObjectId committedHash = repository.getTree(commit.getTreeHash()).getFileHash(rootPath.resolve("test2"));
+        assertEquals(hash, committedHash);
+        assertTrue(Files.exists(filesystem.getObjectPath(committedHash)));
+    }
+
+    @Test
+    public void objectCacheTest() throws Exception, NotRegularFileException {
+        Repository.initResources(rootPath);
+        VcsManager manager = new VcsManager(rootPath);
+        manager.addFile(pathToFile);
+        manager.addFile(rootPath.resolve("test").resolve("test3"));
+        manager.commitChanges("me", "test commit");
+
+        Repository repository = new Repository(rootPath);
+        ObjectId commitHash = repository.getReference().getCommitHash();
+        Commit commit = repository.getCommit(commitHash);
+        assertSame(commit, repository.getCommit(commitHash));
+        VcsTree tree = repository.getTree(commit.getTreeHash());
+        VcsTree otherTree = repository.getTree(commit.getTreeHash());
+        assertNotSame(tree, otherTree);
+        assertEquals(2, repository.getObjectCache().getMisses());
+        assertEquals(2, repository.getObjectCache().getHits());
+
+        Path pathToSubtreeFile = rootPath.resolve("test").resolve("test3");
+        assertNotNull(tree.getFileHash(pathToSubtreeFile));
+        assertEquals(3, repository.getObjectCache().getMisses());
+        assertNotNull(otherTree.getFileHash(pathToSubtreeFile));
+        assertEquals(3, repository.getObjectCache().getHits());
+
+        tree.getBlobFiles().clear();
+        assertNotNull(repository.getTree(commit.getTreeHash()).getFileHash(pathToFile));
+        ObjectId subtreeHash = tree.getVcsTreeFiles().get(0).getHash();
+        long contentSize = 0;
+        for (ObjectId hash : Arrays.asList(commitHash, commit.getTreeHash(), subtreeHash)) {
+            contentSize += repository.readObjectContent(hash).length;
+        }
+        assertEquals(contentSize, repository.getObjectCache().getSize());
+
+        ObjectCache cache = new ObjectCache(commit.getContent().length);
+        cache.put(commit, commit.getContent().length);
+        cache.put(repository.getTree(commit.getTreeHash()), 1);
+        assertNull(cache.get(commitHash, Commit.class));
+        assertNotNull(cache.get(commit.getTreeHash(), VcsTree.class));
+        assertTrue(cache.getSize() <= commit.getContent().length);
+    }
+
+    @Test
+    public void commitGraphTest() throws Exception, NotRegularFileException {
+        Repository.initResources(rootPath);
+        VcsManager manager = new VcsManager(rootPath);
+        manager.addFile(pathToFile);
+        manager.commitChanges("me", "first commit");
+        Files.write(pathToFile, "changed text".getBytes());
+        manager.addFile(pathToFile);
+        manager.commitChanges("me", "second commit");
+
+        Filesystem filesystem = new Filesystem(rootPath);
+        assertTrue(Files.isRegularFile(filesystem.getCommitGraphPath()));
+        Files.delete(filesystem.getCommitGraphPath());
+
+        Repository repository = new Repository(rootPath);
+        ObjectId commitHash = repository.getReference().getCommitHash();
+        CommitGraph graph = repository.getCommitGraph(commitHash);
+        assertEquals(2, graph.size());
+
+        int position = graph.find(commitHash);
+        assertEquals(2, graph.getGeneration(position));
+        assertEquals(repository.getCommit(commitHash).getTreeHash(), graph.getTreeHash(position));
+        assertEquals(1, graph.getParents(position).length);
+
+        int parent = graph.getParents(position)[0];
+        assertEquals(repository.getCommit(commitHash).getParentCommits().get(0), graph.getHash(parent));
+        assertEquals(1, graph.getGeneration(parent));
+        assertEquals(0, graph.getParents(parent).length);
+        assertEquals(2, manager.getLog().getCommits().size());
+    }
+
+    @Test
+    public void commitGraphLogTest() throws Exception, NotRegularFileException {
+        Repository.initResources(rootPath);
+        VcsManager manager = new VcsManager(rootPath);
+        for (int i = 0; i < 4; i++) {
+            Files.write(pathToFile, ("text " + i).getBytes());
+            manager.addFile(pathToFile);
+            manager.commitChanges("me", "commit " + i);
+        }
+
+        Filesystem filesystem = new Filesystem(rootPath);
+        byte[] graphContent = Files.readAllBytes(filesystem.getCommitGraphPath());
+        Files.write(pathToFile, "last text".getBytes());
+        manager.addFile(pathToFile);
+        manager.commitChanges("me", "last commit");
+        assertArrayEquals(graphContent, Files.readAllBytes(filesystem.getCommitGraphPath()));
+        assertTrue(Files.isRegularFile(filesystem.getCommitGraphLogPath()));
+
+        Files.write(filesystem.getCommitGraphLogPath(), new byte[10], StandardOpenOption.APPEND);
+        Repository repository = new Repository(rootPath);
+        ObjectId commitHash = repository.getReference().getCommitHash();
+        CommitGraph graph = repository.getCommitGraph(commitHash);
+        assertEquals(5, graph.size());
+
+        int position = graph.find(commitHash);
+        assertEquals(5, graph.getGeneration(position));
+        assertEquals(repository.getCommit(commitHash).getParentCommits().get(0),
+                     graph.getHash(graph.getParents(position)[0]));
+        assertEquals(5, manager.getLog().getCommits().size());
+    }
+
     @After
     public void tearDown() throws IOException {
         FileUtils.deleteDirectory(rootPath.resolve(VCS_FOLDER).toFile());
@@ -1,26 +1,40 @@
 package ru.spbau.shavkunov.vcs;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import ru.spbau.shavkunov.vcs.data.Filesystem;
+import ru.spbau.shavkunov.vcs.data.IdentityCodec;
+import ru.spbau.shavkunov.vcs.data.RestoreMode;
+import ru.spbau.shavkunov.vcs.diff.DiffAlgorithm;
 import ru.spbau.shavkunov.vcs.exceptions.*;
+import ru.spbau.shavkunov.vcs.trees.MergeConflictPolicy;
 import ru.spbau.shavkunov.vcs.trees.VcsTree;
 import ru.spbau.shavkunov.vcs.utils.Utils;
 import ru.spbau.shavkunov.vcs.utils.VcsLog;
+import ru.spbau.shavkunov.vcs.utils.VcsStatus;
 import ru.spbau.shavkunov.vcs.primitives.Commit;
+import ru.spbau.shavkunov.vcs.primitives.IndexEntry;
+import ru.spbau.shavkunov.vcs.primitives.ObjectId;
+import ru.spbau.shavkunov.vcs.primitives.ObjectWithName;
 import ru.spbau.shavkunov.vcs.primitives.Reference;
 import ru.spbau.shavkunov.vcs.primitives.Repository;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
@@ -48,31 +62,115 @@ public class VcsManagerTest {
 
     @Test
     public void addFileTest() throws Exception, NotRegularFileException {
-        String hash = manager.addFile(pathToFile);
-        Path pathToFileInVcs = rootPath.resolve(VCS_FOLDER).resolve(OBJECTS_FOLDER).resolve(hash);
+        ObjectId hash = manager.addFile(pathToFile);
+        Path pathToFileInVcs = filesystem.getObjectPath(hash);
         assertTrue(pathToFileInVcs.toFile().exists());
         assertEquals(Arrays.toString(Files.readAllBytes(pathToFile)),
-                     Arrays.toString(Files.readAllBytes(pathToFileInVcs)));
+                     Arrays.toString(IOUtils.toByteArray(filesystem.openObject(hash))));
 
-        String firstIndexLine = Utils.getFirstLine(filesystem.getIndexPath());
-        String pathWithHash[] = firstIndexLine.split(" ");
-        Path pathToFileInIndex = Paths.get(pathWithHash[0]);
-        String hashFileInIndex = pathWithHash[1];
+        ObjectWithName<IndexEntry> firstIndexEntry = filesystem.readIndex().iterator().next();
+        Path pathToFileInIndex = Paths.get(firstIndexEntry.getName());
+        ObjectId hashFileInIndex = firstIndexEntry.getContent().getHash();
         assertEquals(hash, hashFileInIndex);
         assertEquals(pathToFile, pathToFileInIndex);
     }
 
+    @Test
+    public void objectCodecTest() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append("compressible line\n");
+        }
+
+        byte[] content = builder.toString().getBytes();
+        Path pathToLargeFile = rootPath.resolve("test").resolve("large");
+        Files.write(pathToLargeFile, content);
+
+        ObjectId hash = filesystem.storeBlob(pathToLargeFile);
+        assertTrue(Files.size(filesystem.getObjectPath(hash)) < content.length / 10);
+        assertArrayEquals(content, IOUtils.toByteArray(filesystem.openObject(hash)));
+
+        Filesystem identityFilesystem = new Filesystem(rootPath, new IdentityCodec());
+        Files.delete(filesystem.getObjectPath(hash));
+        assertEquals(hash, identityFilesystem.storeBlob(pathToLargeFile));
+        assertEquals(content.length + 1, Files.size(filesystem.getObjectPath(hash)));
+        assertArrayEquals(content, IOUtils.toByteArray(filesystem.openObject(hash)));
+    }
+
     @Test(expected = NotRegularFileException.class)
     public void addNotFileTest() throws IOException, NotRegularFileException {
         manager.addFile(rootPath.resolve("test"));
     }
 
+    @Test
+    public void addFilesTest() throws Exception, NotRegularFileException {
+        manager.addFiles(Arrays.asList(rootPath.resolve("test1"), rootPath.resolve("test2"),
+                                       rootPath.resolve("test").resolve("test3")));
+
+        int entries = 0;
+        for (ObjectWithName<IndexEntry> ignored : filesystem.readIndex()) {
+            entries++;
+        }
+
+        assertEquals(3, entries);
+        assertFalse(rootPath.resolve(VCS_FOLDER).resolve(INDEX_LOCK_FILE).toFile().exists());
+    }
+
+    @Test
+    public void addDirectoryTest() throws Exception {
+        manager.addFiles(Arrays.asList(rootPath.resolve("test1"), rootPath.resolve("test")));
+
+        HashSet<String> paths = new HashSet<>();
+        for (ObjectWithName<IndexEntry> entry : filesystem.readIndex()) {
+            paths.add(entry.getName());
+            assertTrue(filesystem.getObjectPath(entry.getContent().getHash()).toFile().exists());
+        }
+
+        assertEquals(new HashSet<>(Arrays.asList("test1", "test/test3", "test/test4", "test/test5")), paths);
+    }
+
+    @Test
+    public void abortAddFilesTest() throws Exception {
+        try {
+            manager.addFiles(Arrays.asList(rootPath.resolve("test1"), rootPath.resolve("no_such_file")));
+            fail();
+        } catch (IOException e) {
+            assertFalse(filesystem.readIndex().iterator().hasNext());
+            assertFalse(rootPath.resolve(VCS_FOLDER).resolve(INDEX_LOCK_FILE).toFile().exists());
+        }
+    }
+
+    @Test
+    public void addDirectoryWithLinkTest() throws Exception, NotRegularFileException {
+        Path link = rootPath.resolve("test").resolve("loop");
+        Files.createSymbolicLink(link, Paths.get(".."));
+        try {
+            manager.addFiles(Collections.singletonList(rootPath.resolve("test")));
+            HashSet<String> paths = new HashSet<>();
+            for (ObjectWithName<IndexEntry> entry : filesystem.readIndex()) {
+                paths.add(entry.getName());
+            }
+
+            assertEquals(new HashSet<>(Arrays.asList("test/test3", "test/test4", "test/test5")), paths);
+            assertFalse(manager.getUntrackedFiles().contains(link.toString()));
+
+            try {
+                manager.addFiles(Arrays.asList(rootPath.resolve("test1"), link));
+                fail();
+            } catch (IOException e) {
+                assertFalse(new Repository(rootPath).getIndexEntries().stream()
+                                                    .anyMatch(entry -> entry.getName().equals("test1")));
+            }
+        } finally {
+            Files.delete(link);
+        }
+    }
+
     @Test
     public void removeFileTest() throws Exception, NotRegularFileException {
         addFileTest();
         manager.removeFile(pathToFile);
-        String firstIndexLine = Utils.getFirstLine(filesystem.getIndexPath());
-        assertEquals("", firstIndexLine);
+        assertFalse(filesystem.readIndex().iterator().hasNext());
     }
 
     @Test
@@ -83,8 +181,8 @@ public class VcsManagerTest {
         String message = "test commit";
         manager.commitChanges(author, message);
 
-        String commitHash = Utils.getFirstLine(filesystem.getReferencesPath().resolve("master"));
-        assertTrue(filesystem.getObjectsPath().resolve(commitHash).toFile().exists());
+        ObjectId commitHash = ObjectId.fromHex(Utils.getFirstLine(filesystem.getReferencesPath().resolve("master")));
+        assertTrue(filesystem.getObjectPath(commitHash).toFile().exists());
         Commit commit = repository.getCommit(commitHash);
 
         assertEquals(author, commit.getAuthor());
@@ -149,6 +247,125 @@ public class VcsManagerTest {
         assertEquals(testVcsTree.getHash(), secondTestTree.getHash());
     }
 
+    @Test
+    public void diffCheckoutTest() throws Exception, NotRegularFileException, NoRevisionExistsException {
+        Path unchangedFile = rootPath.resolve("test1");
+        Path changedFile = rootPath.resolve("test2");
+        Path newFile = rootPath.resolve("test").resolve("test3");
+        manager.addFile(unchangedFile);
+        manager.addFile(changedFile);
+        manager.commitChanges("me", "master 1 commit");
+
+        manager.checkoutToNewBranch("feature");
+        Files.write(changedFile, "feature text".getBytes());
+        manager.addFile(changedFile);
+        manager.addFile(newFile);
+        manager.commitChanges("me", "feature 1 commit");
+
+        FileTime modificationTime = FileTime.fromMillis(1000000000000L);
+        Files.setLastModifiedTime(unchangedFile, modificationTime);
+        manager.checkout("master");
+        assertEquals(modificationTime, Files.getLastModifiedTime(unchangedFile));
+        assertEquals("text2", new String(Files.readAllBytes(changedFile)));
+        assertFalse(Files.exists(newFile));
+
+        manager.checkout("feature");
+        assertEquals(modificationTime, Files.getLastModifiedTime(unchangedFile));
+        assertEquals("feature text", new String(Files.readAllBytes(changedFile)));
+        assertEquals("test3", new String(Files.readAllBytes(newFile)));
+        assertEquals(repository.getCommit(repository.getReference().getCommitHash()).getTreeHash(),
+                     new Repository(rootPath).createTreeFromIndex().getHash());
+    }
+
+    @Test
+    public void restoreTreeTest() throws Exception, NotRegularFileException {
+        Path directory = rootPath.resolve("test").resolve("many");
+        Files.createDirectories(directory);
+        for (int i = 0; i < 40; i++) {
+            Files.write(directory.resolve("file" + i), ("content " + i).getBytes());
+        }
+
+        Path identityFile = rootPath.resolve("test1");
+        manager.addFiles(Arrays.asList(identityFile, directory));
+        manager.commitChanges("me", "master 1 commit");
+        ObjectId identityHash = filesystem.storeBlob(identityFile);
+        Files.delete(filesystem.getObjectPath(identityHash));
+        new Filesystem(rootPath, new IdentityCodec()).storeBlob(identityFile);
+        assertEquals(Files.size(identityFile) + 1, Files.size(filesystem.getObjectPath(identityHash)));
+
+        VcsTree tree = repository.getTree(repository.getCommit(repository.getReference().getCommitHash()).getTreeHash());
+        FileUtils.deleteDirectory(directory.toFile());
+        Files.write(identityFile, "changed".getBytes());
+
+        new Repository(rootPath).restoreTree(tree);
+        assertEquals("text1", new String(Files.readAllBytes(identityFile)));
+        for (int i = 0; i < 40; i++) {
+            assertEquals("content " + i, new String(Files.readAllBytes(directory.resolve("file" + i))));
+        }
+
+        assertEquals(tree.getHash(), new Repository(rootPath).createTreeFromIndex().getHash());
+    }
+
+    @Test
+    public void cachedTreeTest() throws Exception, NotRegularFileException {
+        Path changedFile = rootPath.resolve("test").resolve("test3");
+        manager.addFiles(Arrays.asList(rootPath.resolve("test1"), rootPath.resolve("test")));
+        ObjectId treeHash = new Repository(rootPath).createTreeFromIndex().getHash();
+        assertEquals(treeHash, new Repository(rootPath).createTreeFromIndex().getHash());
+
+        Files.write(changedFile, "changed".getBytes());
+        assertEquals(treeHash, new Repository(rootPath).createTreeFromIndex().getHash());
+        manager.addFile(changedFile);
+        assertNotEquals(treeHash, new Repository(rootPath).createTreeFromIndex().getHash());
+
+        Files.write(changedFile, "test3".getBytes());
+        manager.addFile(changedFile);
+        assertEquals(treeHash, new Repository(rootPath).createTreeFromIndex().getHash());
+    }
+
+    @Test
+    public void linkRestoreTest() throws Exception, NotRegularFileException, NoRevisionExistsException {
+        Path changedFile = rootPath.resolve("test2");
+        Path sameContentFile = rootPath.resolve("test").resolve("test3");
+        Files.write(sameContentFile, "text2".getBytes());
+        manager.setRestoreMode(RestoreMode.LINK);
+        manager.addFiles(Arrays.asList(changedFile, sameContentFile));
+        manager.commitChanges("me", "master 1 commit");
+        ObjectId hash = filesystem.storeBlob(changedFile);
+
+        manager.checkoutToNewBranch("feature");
+        Files.write(changedFile, "feature text".getBytes());
+        Files.delete(sameContentFile);
+        manager.addFile(changedFile);
+        manager.removeFile(sameContentFile);
+        manager.commitChanges("me", "feature 1 commit");
+
+        manager.checkout("master");
+        Path pathToRawObject = filesystem.getRawObjectPath(hash);
+        assertFalse(Files.isSameFile(changedFile, sameContentFile));
+        assertNotEquals(Files.isSameFile(pathToRawObject, changedFile),
+                        Files.isSameFile(pathToRawObject, sameContentFile));
+        assertEquals("text2", new String(Files.readAllBytes(changedFile)));
+        assertTrue(Files.isWritable(changedFile));
+        assertTrue(Files.getLastModifiedTime(changedFile).toMillis() > 0);
+
+        Path linkedFile = Files.isSameFile(pathToRawObject, changedFile) ? changedFile : sameContentFile;
+        Path copiedFile = linkedFile.equals(changedFile) ? sameContentFile : changedFile;
+        Files.write(linkedFile, " edited".getBytes(), StandardOpenOption.APPEND);
+        assertEquals("text2", new String(Files.readAllBytes(copiedFile)));
+
+        Files.delete(linkedFile);
+        Filesystem linkFilesystem = new Filesystem(rootPath);
+        assertEquals(RestoreMode.LINK, linkFilesystem.getRestoreMode());
+        linkFilesystem.restoreFile(linkedFile, hash);
+        assertEquals("text2", new String(Files.readAllBytes(linkedFile)));
+        assertTrue(Files.isSameFile(pathToRawObject, linkedFile));
+
+        manager.checkout("feature");
+        assertEquals("feature text", new String(Files.readAllBytes(changedFile)));
+        assertEquals("text2", new String(Files.readAllBytes(pathToRawObject)));
+    }
+
     @Test(expected = BranchAlreadyExistsException.class)
     public void createNewBranchTest() throws IOException, BranchAlreadyExistsException {
         manager.checkoutToNewBranch("new_branch_name");
@@ -197,8 +414,13 @@ public class VcsManagerTest {
 
         VcsLog log = manager.getLog();
         assertEquals(2, log.getCommits().size());
-        assertEquals(log.getCommits().get(0).getMessage(), "master 1 commit");
-        assertEquals(log.getCommits().get(1).getMessage(), "master 2 commit");
+        assertEquals(log.getCommits().get(0).getMessage(), "master 2 commit");
+        assertEquals(log.getCommits().get(1).getMessage(), "master 1 commit");
+
+        List<Commit> lastCommits = manager.getLog(1, null).getCommits();
+        assertEquals(1, lastCommits.size());
+        assertEquals("master 2 commit", lastCommits.get(0).getMessage());
+        assertTrue(manager.getLog(10, new Date(System.currentTimeMillis() + 60000)).getCommits().isEmpty());
     }
 
     @Test
@@ -215,7 +437,112 @@ public class VcsManagerTest {
         manager.merge("feature");
 
         VcsLog log = manager.getLog();
-        assertEquals(MERGE_MESSAGE + featureCommitHash, log.getCommits().get(1).getMessage());
+        assertEquals(MERGE_MESSAGE + featureCommitHash, log.getCommits().get(0).getMessage());
+    }
+
+    @Test
+    public void mergeTreesTest() throws Exception, NotRegularFileException, NoRevisionExistsException {
+        Path nestedFile = rootPath.resolve("test").resolve("test3");
+        manager.addFile(rootPath.resolve("test1"));
+        manager.commitChanges("me", "master 1 commit");
+        manager.checkoutToNewBranch("feature");
+        Files.write(rootPath.resolve("test1"), "feature text".getBytes());
+        manager.addFile(rootPath.resolve("test1"));
+        manager.addFile(rootPath.resolve("test2"));
+        manager.commitChanges("me", "implemented feature");
+        manager.checkout("master");
+        Files.write(nestedFile, "master text".getBytes());
+        manager.addFile(nestedFile);
+        manager.commitChanges("me", "master 2 commit");
+
+        Repository repository = new Repository(rootPath);
+        VcsTree ours = repository.getTree(repository.getCommit(repository.getReference().getCommitHash()).getTreeHash());
+        String featureCommitHash = Utils.getFirstLine(filesystem.getReferencesPath().resolve("feature"));
+        VcsTree theirs = repository.getTree(repository.getCommit(ObjectId.fromHex(featureCommitHash)).getTreeHash());
+
+        VcsTree keepOurs = repository.mergeTrees(null, ours, theirs, MergeConflictPolicy.OURS);
+        assertEquals(ObjectId.hashOf("text1".getBytes()), keepOurs.getFileHash(rootPath.resolve("test1")));
+        assertSame(ours.getVcsTreeFiles().get(0), keepOurs.getVcsTreeFiles().get(0));
+        assertSame(ours, repository.mergeTrees(null, ours, ours, MergeConflictPolicy.THEIRS));
+
+        manager.merge("feature");
+        assertEquals("feature text", new String(Files.readAllBytes(rootPath.resolve("test1"))));
+        assertEquals("master text", new String(Files.readAllBytes(nestedFile)));
+        assertTrue(Files.exists(rootPath.resolve("test2")));
+        assertTrue(manager.getDeletedFiles().isEmpty());
+        assertTrue(manager.getStagedFiles().isEmpty());
+    }
+
+    @Test
+    public void threeWayMergeTest() throws Exception, NotRegularFileException, NoRevisionExistsException {
+        Path nestedFile = rootPath.resolve("test").resolve("test3");
+        manager.addFile(rootPath.resolve("test1"));
+        manager.addFile(nestedFile);
+        manager.commitChanges("me", "master 1 commit");
+        Repository repository = new Repository(rootPath);
+        ObjectId baseCommitHash = repository.getReference().getCommitHash();
+        manager.checkoutToNewBranch("feature");
+        Files.write(rootPath.resolve("test1"), "feature text".getBytes());
+        manager.addFile(rootPath.resolve("test1"));
+        manager.commitChanges("me", "implemented feature");
+        manager.checkout("master");
+        Files.write(nestedFile, "master text".getBytes());
+        manager.addFile(nestedFile);
+        manager.commitChanges("me", "master 2 commit");
+
+        repository = new Repository(rootPath);
+        ObjectId masterCommitHash = repository.getReference().getCommitHash();
+        ObjectId featureCommitHash = repository.getReferenceCommitHash("feature");
+        assertEquals(baseCommitHash, repository.findMergeBase(masterCommitHash, featureCommitHash));
+
+        manager.merge("feature");
+        assertEquals("feature text", new String(Files.readAllBytes(rootPath.resolve("test1"))));
+        assertEquals("master text", new String(Files.readAllBytes(nestedFile)));
+        repository = new Repository(rootPath);
+        ObjectId mergeCommitHash = repository.getReference().getCommitHash();
+        assertEquals(Arrays.asList(masterCommitHash, featureCommitHash),
+                     repository.getCommit(mergeCommitHash).getParentCommits());
+        assertEquals(featureCommitHash, repository.findMergeBase(mergeCommitHash, featureCommitHash));
+
+        manager.merge("feature");
+        assertEquals(mergeCommitHash, new Repository(rootPath).getReference().getCommitHash());
+    }
+
+    @Test
+    public void diffTest() throws Exception, NotRegularFileException, NoRevisionExistsException {
+        manager.addFile(rootPath.resolve("test1"));
+        manager.addFile(rootPath.resolve("test2"));
+        manager.commitChanges("me", "master 1 commit");
+        String firstCommitHash = new Repository(rootPath).getReference().getCommitHash().toHex();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        manager.diffWorkingTree(output, DiffAlgorithm.MYERS);
+        assertEquals("", output.toString());
+
+        Files.write(rootPath.resolve("test1"), "changed\n".getBytes());
+        manager.diffWorkingTree(output, DiffAlgorithm.MYERS);
+        assertTrue(output.toString().contains("diff --vcs a/test1 b/test1\n"));
+        assertTrue(output.toString().contains("-text1\n\\ No newline at end of file\n+changed\n"));
+        assertFalse(output.toString().contains("test2"));
+
+        output.reset();
+        manager.addFile(rootPath.resolve("test1"));
+        manager.diffWorkingTree(output, DiffAlgorithm.HISTOGRAM);
+        assertEquals("", output.toString());
+        manager.diffIndex(output, DiffAlgorithm.HISTOGRAM);
+        assertTrue(output.toString().contains("+changed\n"));
+        assertFalse(output.toString().contains("test2"));
+
+        output.reset();
+        manager.removeFile(rootPath.resolve("test2"));
+        manager.commitChanges("me", "master 2 commit");
+        manager.diffCommits(firstCommitHash, "master", output, DiffAlgorithm.MYERS);
+        assertTrue(output.toString().contains("+changed\n"));
+        assertTrue(output.toString().contains("deleted file\n--- a/test2\n+++ /dev/null\n"));
+
+        output.reset();
+        manager.diffIndex(output, DiffAlgorithm.MYERS);
+        assertEquals("", output.toString());
     }
 
     @Test
@@ -234,6 +561,70 @@ public class VcsManagerTest {
         assertEquals("test1", manager.getDeletedFiles().get(0));
     }
 
+    @Test
+    public void structuredStatusTest() throws Exception, NotRegularFileException {
+        Path nestedFile = rootPath.resolve("test").resolve("test3");
+        manager.addFile(rootPath.resolve("test1"));
+        manager.addFile(rootPath.resolve("test2"));
+        manager.addFile(nestedFile);
+        manager.commitChanges("me", "master 1 commit");
+
+        VcsStatus status = manager.getStatus();
+        assertTrue(status.getStagedFiles().isEmpty());
+        assertTrue(status.getDeletedFiles().isEmpty());
+        assertTrue(status.getModifiedFiles().isEmpty());
+        assertTrue(status.getMissingFiles().isEmpty());
+
+        Files.setLastModifiedTime(rootPath.resolve("test2"), FileTime.fromMillis(0));
+        Files.write(nestedFile, "changed".getBytes());
+        Files.write(rootPath.resolve("test1"), "staged".getBytes());
+        manager.addFile(rootPath.resolve("test1"));
+        status = manager.getStatus();
+        assertEquals(Arrays.asList("test1"), status.getStagedFiles());
+        assertEquals(Arrays.asList(nestedFile.toString()), status.getModifiedFiles());
+        assertTrue(status.getUntrackedFiles().stream().anyMatch(file -> file.endsWith("test4")));
+        IndexEntry refreshedEntry = new Repository(rootPath).getIndexEntries().stream()
+                                                            .filter(entry -> entry.getName().equals("test2"))
+                                                            .findFirst().get().getContent();
+        assertTrue(refreshedEntry.isUpToDate(rootPath.resolve("test2")));
+
+        Files.delete(rootPath.resolve("test2"));
+        manager.removeFile(rootPath.resolve("test1"));
+        status = manager.getStatus();
+        assertEquals(Arrays.asList("test2"), status.getMissingFiles());
+        assertEquals(Arrays.asList("test1"), status.getDeletedFiles());
+        assertTrue(status.getStagedFiles().isEmpty());
+    }
+
+    @Test
+    public void statusRefreshKeepsConcurrentChangesTest() throws Exception, NotRegularFileException {
+        manager.addFile(rootPath.resolve("test1"));
+        manager.addFile(rootPath.resolve("test2"));
+        manager.commitChanges("me", "master 1 commit");
+        manager = new VcsManager(rootPath);
+
+        Files.setLastModifiedTime(rootPath.resolve("test2"), FileTime.fromMillis(0));
+        Files.write(rootPath.resolve("test1"), "staged".getBytes());
+        new VcsManager(rootPath).addFile(rootPath.resolve("test1"));
+
+        Path lockPath = rootPath.resolve(VCS_FOLDER).resolve(INDEX_LOCK_FILE);
+        Files.createFile(lockPath);
+        try {
+            manager.getStatus();
+            assertTrue(lockPath.toFile().exists());
+        } finally {
+            Files.delete(lockPath);
+        }
+
+        manager.getStatus();
+        Repository repository = new Repository(rootPath);
+        for (ObjectWithName<IndexEntry> entry : repository.getIndexEntries()) {
+            assertTrue(entry.getName(), entry.getContent().isUpToDate(rootPath.resolve(entry.getName())));
+        }
+
+        assertEquals(Arrays.asList("test1"), new VcsManager(rootPath).getStagedFiles());
+    }
+
     @Test
     public void resetTest() throws IOException, NotRegularFileException, ClassNotFoundException {
         Path pathToTest = rootPath.resolve("test1");
@@ -265,6 +656,53 @@ public class VcsManagerTest {
         assertFalse(newRootPath.resolve("test5").toFile().exists());
     }
 
+    @Test
+    public void untrackedFilesTest() throws Exception, NotRegularFileException {
+        FileUtils.deleteDirectory(rootPath.resolve(VCS_FOLDER).toFile());
+        Path newRootPath = rootPath.resolve("test");
+        Repository.initResources(newRootPath);
+        manager = new VcsManager(newRootPath);
+
+        Path sourceDirectory = newRootPath.resolve("src");
+        Files.createDirectories(sourceDirectory);
+        Files.write(sourceDirectory.resolve("A"), "A".getBytes());
+        Files.write(sourceDirectory.resolve("B"), "B".getBytes());
+        Path buildDirectory = newRootPath.resolve("build").resolve("classes");
+        Files.createDirectories(buildDirectory);
+        Files.write(buildDirectory.resolve("Main.class"), "class".getBytes());
+        Files.createDirectories(newRootPath.resolve("empty"));
+
+        manager.addFile(newRootPath.resolve("test3"));
+        manager.addFile(sourceDirectory.resolve("A"));
+        manager.commitChanges("me", "master first commit");
+
+        assertEquals(Arrays.asList(newRootPath.resolve("build") + File.separator,
+                                   sourceDirectory.resolve("B").toString(),
+                                   newRootPath.resolve("test4").toString(),
+                                   newRootPath.resolve("test5").toString()), manager.getUntrackedFiles());
+
+        manager.clean();
+        assertFalse(Files.exists(newRootPath.resolve("build")));
+        assertFalse(Files.exists(sourceDirectory.resolve("B")));
+        assertTrue(Files.exists(sourceDirectory.resolve("A")));
+        assertTrue(Files.exists(newRootPath.resolve("test3")));
+        assertTrue(Files.exists(newRootPath.resolve(VCS_FOLDER)));
+    }
+
+    @Test
+    public void untrackedFilesDotRootTest() throws Exception, NotRegularFileException {
+        manager.addFile(rootPath.resolve("test1"));
+        manager.addFile(rootPath.resolve("test").resolve("test3"));
+        manager.commitChanges("me", "master first commit");
+
+        List<String> untrackedFiles = new VcsManager(Paths.get(".")).getUntrackedFiles();
+        assertFalse(untrackedFiles.contains("test1"));
+        assertFalse(untrackedFiles.contains("test" + File.separator));
+        assertTrue(untrackedFiles.contains("test2"));
+        assertTrue(untrackedFiles.contains(Paths.get("test", "test4").toString()));
+        assertFalse(untrackedFiles.stream().anyMatch(file -> file.startsWith("." + File.separator)));
+    }
+
     @After
     public void tearDown() throws IOException {
         //deleteTmpFiles();
@@ -288,12 +726,9 @@ public class VcsManagerTest {
     }
 
     private void printIndexFile() {
-        File index = Paths.get(".").resolve(VCS_FOLDER).resolve("index").toFile();
-
-        try (BufferedReader br = new BufferedReader(new FileReader(index))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                System.out.println(line);
+        try {
+            for (ObjectWithName<IndexEntry> entry : filesystem.readIndex()) {
+                System.out.println(entry.getName() + " " + entry.getContent().getHash());
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -4,15 +4,26 @@ package ru.spbau.shavkunov.vcs;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import ru.spbau.shavkunov.vcs.data.Filesystem;
 import ru.spbau.shavkunov.vcs.exceptions.NotRegularFileException;
+import ru.spbau.shavkunov.vcs.trees.TreeDiff;
 import ru.spbau.shavkunov.vcs.trees.VcsTree;
+import ru.spbau.shavkunov.vcs.primitives.Blob;
+import ru.spbau.shavkunov.vcs.primitives.ObjectId;
 import ru.spbau.shavkunov.vcs.primitives.ObjectWithName;
 import ru.spbau.shavkunov.vcs.primitives.Repository;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.stream.Collectors;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static ru.spbau.shavkunov.vcs.TestConstants.pathToFile;
 import static ru.spbau.shavkunov.vcs.TestConstants.rootPath;
@@ -38,7 +49,7 @@ public class VcsTreeTest {
     }
 
     @Test
-    public void checkFileInTree() throws IOException, NotRegularFileException {
+    public void checkFileInTree() throws IOException, NotRegularFileException, ClassNotFoundException {
         VcsTree vcsTree = repository.createTreeFromIndex();
         assertTrue(vcsTree.isFileExists(pathToFile));
         assertTrue(vcsTree.getAllFiles()
@@ -48,6 +59,68 @@ public class VcsTreeTest {
                           .contains(pathToFile.toString()));
     }
 
+    @Test
+    public void checkSubtreeLoadedByHash() throws Exception, NotRegularFileException {
+        Path nestedFile = rootPath.resolve("test").resolve("test3");
+        manager.addFile(nestedFile);
+        repository = new Repository(rootPath);
+        VcsTree createdTree = repository.createTreeFromIndex();
+
+        VcsTree storedTree = new Repository(rootPath).getTree(createdTree.getHash());
+        assertEquals(createdTree.getHash(), storedTree.getHash());
+        assertNotNull(createdTree.getFileHash(nestedFile));
+        assertEquals(createdTree.getFileHash(nestedFile), storedTree.getFileHash(nestedFile));
+        assertEquals(createdTree.getVcsTreeFiles().get(0).getHash(), storedTree.getVcsTreeFiles().get(0).getHash());
+    }
+
+    @Test
+    public void checkNestedFileLookup() throws Exception, NotRegularFileException {
+        Path nestedFile = rootPath.resolve("test").resolve("test3");
+        manager.addFile(nestedFile);
+        VcsTree vcsTree = new Repository(rootPath).createTreeFromIndex();
+
+        assertEquals(ObjectId.hashOf("test3".getBytes()), vcsTree.getFileHash(nestedFile));
+        assertEquals(ObjectId.hashOf("test3".getBytes()), vcsTree.getFileHash(Paths.get("./test/test3")));
+        assertEquals(ObjectId.hashOf("text1".getBytes()), vcsTree.getFileHash(pathToFile));
+        assertNull(vcsTree.getFileHash(rootPath.resolve("test").resolve("test4")));
+        assertNull(vcsTree.getFileHash(rootPath.resolve("tes").resolve("test3")));
+        assertNull(vcsTree.getFileHash(pathToFile.resolve("test3")));
+    }
+
+    @Test(expected = IOException.class)
+    public void checkNegativeLengthRejected() throws Exception {
+        byte[] content = {1, 1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 1};
+        new VcsTree(ObjectId.hashOf(content), content, new Filesystem(rootPath));
+    }
+
+    @Test
+    public void checkTreeDiff() throws Exception {
+        ObjectId missingTreeHash = ObjectId.hashOf("no such tree".getBytes());
+        Filesystem filesystem = new Filesystem(rootPath);
+
+        VcsTree oldTree = new VcsTree(rootPath);
+        oldTree.addBlob(new Blob(pathToFile, ObjectId.hashOf("old".getBytes())), pathToFile.toString());
+        oldTree.addBlob(new Blob(Paths.get("kept"), ObjectId.hashOf("kept".getBytes())), "kept");
+        oldTree.addChild(VcsTree.fromHash("same", missingTreeHash, filesystem));
+        VcsTree goneTree = new VcsTree(Paths.get("gone"));
+        goneTree.addBlob(new Blob(Paths.get("gone/file"), ObjectId.hashOf("gone".getBytes())), "gone/file");
+        oldTree.addChild(goneTree);
+
+        VcsTree newTree = new VcsTree(rootPath);
+        newTree.addBlob(new Blob(pathToFile, ObjectId.hashOf("new".getBytes())), pathToFile.toString());
+        newTree.addBlob(new Blob(Paths.get("kept"), ObjectId.hashOf("kept".getBytes())), "kept");
+        newTree.addBlob(new Blob(Paths.get("added"), ObjectId.hashOf("added".getBytes())), "added");
+        newTree.addChild(VcsTree.fromHash("same", missingTreeHash, filesystem));
+
+        ArrayList<String> changes = new ArrayList<>();
+        for (TreeDiff.Change change : new TreeDiff(oldTree, newTree)) {
+            changes.add(change.getType() + " " + change.getPath());
+        }
+
+        assertEquals(Arrays.asList("ADDED added", "MODIFIED " + pathToFile, "DELETED gone/file"), changes);
+        assertFalse(new TreeDiff(newTree, newTree).iterator().hasNext());
+    }
+
     @After
     public void tearDown() throws IOException {
         test.tearDown();